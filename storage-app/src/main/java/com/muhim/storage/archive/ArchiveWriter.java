@@ -0,0 +1,33 @@
+package com.muhim.storage.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Writes an archive entry by entry to a stream, nothing but the entry being copied is held in memory
+ *
+ * @author muhim
+ */
+public interface ArchiveWriter extends Closeable {
+
+    /**
+     * Append a file to the archive
+     *
+     * @param name         name of the entry
+     * @param size         size of the content
+     * @param lastModified last modified time in milliseconds
+     * @param content      content of the entry, consumed but not closed
+     * @throws IOException if writing fails or the content does not match the size
+     */
+    void putEntry(String name, long size, long lastModified, InputStream content) throws IOException;
+
+    /**
+     * Write the end of the archive and flush it, the underlying stream stays open.
+     * Only called once all entries are written, an aborted archive is left incomplete
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,135 @@
+package com.muhim.storage.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * POSIX (pax) tar archive writer
+ * Names which do not fit the ustar header or are not ASCII, and sizes of 8 GiB and more,
+ * are written as a pax extended header in front of the entry
+ *
+ * @author muhim
+ */
+public class TarArchiveWriter implements ArchiveWriter {
+
+    static final int BLOCK_SIZE = 512;
+
+    private static final int NAME_LENGTH = 100;
+
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private static final byte REGULAR_FILE = '0';
+
+    private static final byte PAX_HEADER = 'x';
+
+    private final OutputStream outputStream;
+
+    private final byte[] padding = new byte[BLOCK_SIZE];
+
+    public TarArchiveWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void putEntry(String name, long size, long lastModified, InputStream content) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean asciiName = nameBytes.length == name.length();
+        long modificationTime = lastModified / 1000;
+        if (nameBytes.length > NAME_LENGTH || !asciiName || size > MAX_OCTAL_SIZE) {
+            byte[] paxRecords = (paxRecord("path", name) + paxRecord("size", String.valueOf(size)))
+                    .getBytes(StandardCharsets.UTF_8);
+            writeHeader(asciiPrefix(name), paxRecords.length, modificationTime, PAX_HEADER);
+            outputStream.write(paxRecords);
+            writePadding(paxRecords.length);
+        }
+        writeHeader(asciiPrefix(name), Math.min(size, MAX_OCTAL_SIZE), modificationTime, REGULAR_FILE);
+
+        long copied = content.transferTo(outputStream);
+        if (copied != size) {
+            throw new IOException("Content of " + name + " has " + copied + " bytes instead of " + size);
+        }
+        writePadding(size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // end of archive
+        outputStream.write(padding);
+        outputStream.write(padding);
+        outputStream.flush();
+    }
+
+    private void writeHeader(String name, long size, long modificationTime, byte type) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        putString(header, 0, NAME_LENGTH, name);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modificationTime);
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+
+        // the checksum is computed with its own field filled with spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        outputStream.write(header);
+    }
+
+    private void writePadding(long size) throws IOException {
+        int remainder = (int) (size % BLOCK_SIZE);
+        if (remainder > 0) {
+            outputStream.write(padding, 0, BLOCK_SIZE - remainder);
+        }
+    }
+
+    /**
+     * @return pax record "length key=value\n", the length counts its own digits
+     */
+    private static String paxRecord(String key, String value) {
+        int length = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int totalLength = length + String.valueOf(length).length();
+        if (String.valueOf(totalLength).length() > String.valueOf(length).length()) {
+            totalLength++;
+        }
+        return totalLength + " " + key + "=" + value + "\n";
+    }
+
+    /**
+     * Readers without pax support extract the entry under this name
+     */
+    private static String asciiPrefix(String name) {
+        StringBuilder asciiName = new StringBuilder(NAME_LENGTH);
+        for (int i = 0; i < name.length() && asciiName.length() < NAME_LENGTH; i++) {
+            char c = name.charAt(i);
+            asciiName.append(c < 0x80 ? c : '_');
+        }
+        return asciiName.toString();
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    /**
+     * Zero padded octal number followed by a NUL
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            header[offset + i] = (byte) (index >= 0 ? octal.charAt(index) : '0');
+        }
+        header[offset + digits] = 0;
+    }
+}
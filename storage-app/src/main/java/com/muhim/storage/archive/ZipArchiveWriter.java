@@ -0,0 +1,41 @@
+package com.muhim.storage.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP archive writer, entries are deflated with the fastest level since most stored content is already compressed.
+ * ZIP64 records are written as needed for large entries and archives
+ *
+ * @author muhim
+ */
+public class ZipArchiveWriter implements ArchiveWriter {
+
+    private final ZipOutputStream zipOutputStream;
+
+    public ZipArchiveWriter(OutputStream outputStream) {
+        this.zipOutputStream = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        this.zipOutputStream.setLevel(Deflater.BEST_SPEED);
+    }
+
+    @Override
+    public void putEntry(String name, long size, long lastModified, InputStream content) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setSize(size);
+        zipEntry.setTime(lastModified);
+        zipOutputStream.putNextEntry(zipEntry);
+        content.transferTo(zipOutputStream);
+        zipOutputStream.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+}
@@ -0,0 +1,242 @@
+package com.muhim.storage.cache;
+
+import com.muhim.storage.dto.CacheStatsDTO;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileMetadata;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of the content of small public files, kept off-heap in direct buffers
+ * Blobs are evicted in least recently used order once the memory cap is reached.
+ * Concurrent misses for the same blob share a single read from the blob store.
+ * Its counters are published under the same `cache.*` names as the metadata caches
+ *
+ * @author muhim
+ */
+@Component
+public class BlobContentCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "blobContent";
+
+    private final long maxFileSize;
+
+    private final long maxMemory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Access ordered, so iteration starts at the least recently used blob. Guarded by lock
+     */
+    private final LinkedHashMap<ObjectId, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ConcurrentHashMap<ObjectId, CompletableFuture<ByteBuffer>> loads = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private long usedMemory;
+
+    @Autowired
+    public BlobContentCache(@Value("${storage.blob-cache.max-file-size:256KB}") DataSize maxFileSize,
+                            @Value("${storage.blob-cache.max-memory:64MB}") DataSize maxMemory) {
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxMemory = maxMemory.toBytes();
+    }
+
+    /**
+     * @param fileMetadata the file to be downloaded
+     * @return true if the content of the file should be served from the cache
+     */
+    public boolean isCacheable(FileMetadata fileMetadata) {
+        return fileMetadata.getVisibility() == FileVisibility.PUBLIC &&
+                fileMetadata.getFileSize() <= maxFileSize &&
+                fileMetadata.getFileSize() <= maxMemory;
+    }
+
+    /**
+     * @param blobId id of the blob in the blob store
+     * @param size   size of the blob in bytes
+     * @param loader opens the blob on a cache miss
+     * @return read-only buffer with the content of the blob, owned by the caller
+     * @throws IOException if the blob could not be read
+     */
+    public ByteBuffer get(ObjectId blobId, long size, Supplier<InputStream> loader) throws IOException {
+        ByteBuffer buffer = lookup(blobId);
+        if (buffer != null) {
+            hitCount.increment();
+            return buffer.duplicate();
+        }
+        missCount.increment();
+
+        CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> inFlightLoad = loads.putIfAbsent(blobId, load);
+        if (inFlightLoad != null) {
+            try {
+                return inFlightLoad.join().duplicate();
+            } catch (CompletionException e) {
+                throw new IOException("Failed to read blob " + blobId.toHexString(), e.getCause());
+            }
+        }
+
+        try {
+            // the blob may have been cached between the lookup and registering the load
+            buffer = lookup(blobId);
+            if (buffer == null) {
+                buffer = read(loader, size);
+                put(blobId, buffer);
+            }
+            load.complete(buffer);
+            return buffer.duplicate();
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(blobId, load);
+        }
+    }
+
+    /**
+     * Drop the blob from the cache, e.g. once it has been deleted
+     *
+     * @param blobId id of the blob in the blob store
+     */
+    public void evict(ObjectId blobId) {
+        lock.lock();
+        try {
+            ByteBuffer buffer = entries.remove(blobId);
+            if (buffer != null) {
+                usedMemory -= buffer.capacity();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return hit and miss counters of the cache
+     */
+    public CacheStatsDTO getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        lock.lock();
+        try {
+            return CacheStatsDTO.builder()
+                    .cacheName(CACHE_NAME)
+                    .size(entries.size())
+                    .hitCount(hits)
+                    .missCount(misses)
+                    .hitRate(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses))
+                    .evictionCount(evictionCount.sum())
+                    .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hitCount, LongAdder::sum)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .description("the number of times cache lookup methods have returned a cached value")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", missCount, LongAdder::sum)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .description("the number of times cache lookup methods have returned an uncached value")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictionCount, LongAdder::sum)
+                .tags("cache", CACHE_NAME)
+                .description("cache evictions")
+                .register(registry);
+        Gauge.builder("cache.size", this, cache -> cache.getStats().getSize())
+                .tags("cache", CACHE_NAME)
+                .description("The number of entries in this cache")
+                .register(registry);
+        Gauge.builder("storage.blob-cache.memory", this, BlobContentCache::getUsedMemory)
+                .description("Direct memory held by cached blobs")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * @return bytes of direct memory currently held by cached blobs
+     */
+    public long getUsedMemory() {
+        lock.lock();
+        try {
+            return usedMemory;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer lookup(ObjectId blobId) {
+        lock.lock();
+        try {
+            return entries.get(blobId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evicted buffers are released by the garbage collector once no download reads them any more
+     */
+    private void put(ObjectId blobId, ByteBuffer buffer) {
+        lock.lock();
+        try {
+            if (entries.containsKey(blobId)) {
+                return;
+            }
+            Iterator<Map.Entry<ObjectId, ByteBuffer>> iterator = entries.entrySet().iterator();
+            while (usedMemory + buffer.capacity() > maxMemory && iterator.hasNext()) {
+                usedMemory -= iterator.next().getValue().capacity();
+                iterator.remove();
+                evictionCount.increment();
+            }
+            entries.put(blobId, buffer);
+            usedMemory += buffer.capacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer read(Supplier<InputStream> loader, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (ReadableByteChannel channel = Channels.newChannel(loader.get())) {
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading until the buffer is full
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Blob is shorter than its recorded size of " + size + " bytes");
+        }
+        return buffer.flip().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,40 @@
+package com.muhim.storage.cache;
+
+import com.muhim.storage.clients.BlobResource;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.utils.ByteBufferInputStream;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Blob resource which is read from the blob content cache, the blob store is only read on a cache miss
+ *
+ * @author muhim
+ */
+public class CachedBlobResource extends BlobResource {
+
+    private final BlobContentCache blobContentCache;
+    private final BlobStore blobStore;
+    private final ObjectId storageId;
+
+    public CachedBlobResource(BlobContentCache blobContentCache,
+                              BlobStore blobStore,
+                              ObjectId storageId,
+                              String filename,
+                              long contentLength,
+                              long lastModified) {
+        super(blobStore, storageId, filename, contentLength, lastModified);
+        this.blobContentCache = blobContentCache;
+        this.blobStore = blobStore;
+        this.storageId = storageId;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new ByteBufferInputStream(blobContentCache.get(storageId,
+                contentLength(),
+                () -> blobStore.openDownloadStream(storageId)));
+    }
+}
@@ -0,0 +1,175 @@
+package com.muhim.storage.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.muhim.storage.dto.CacheStatsDTO;
+import com.muhim.storage.model.FileMetadata;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * In-process cache of file metadata by fileId and by user and filename.
+ * Writes only use an entry to address the file, they match its id and filename in the database,
+ * so a stale entry is never written back and cannot decide about a delete.
+ * Only existing files are cached, so a new upload is visible immediately.
+ * Entries expire after the configured TTL, which bounds staleness between application instances.
+ * A miss is loaded on the calling thread outside of the cache's locks, so a virtual thread waiting for the database
+ * does not pin its carrier, and concurrent misses for the same key share the load.
+ * Hits, misses and evictions of both caches are published as `cache.*` metrics
+ *
+ * @author muhim
+ */
+@Component
+public class FileMetadataCache implements MeterBinder {
+
+    private final AsyncCache<ObjectId, FileMetadata> fileIdCache;
+
+    private final AsyncCache<UserFilenameKey, FileMetadata> userFilenameCache;
+
+    @Autowired
+    public FileMetadataCache(@Value("${storage.metadata-cache.maximum-size:10000}") long maximumSize,
+                             @Value("${storage.metadata-cache.ttl:PT5M}") Duration ttl) {
+        this.fileIdCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        this.userFilenameCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * @param fileId public file id
+     * @param loader queries the database on a cache miss
+     * @return cached or loaded metadata, null if the file does not exist
+     */
+    public FileMetadata getByFileId(ObjectId fileId, Function<ObjectId, FileMetadata> loader) {
+        return get(fileIdCache, fileId, loader);
+    }
+
+    /**
+     * @param user     the file belongs to the user
+     * @param filename name of the file
+     * @param loader   queries the database on a cache miss
+     * @return cached or loaded metadata, null if the file does not exist
+     */
+    public FileMetadata getByUserAndFilename(String user,
+                                             String filename,
+                                             BiFunction<String, String, FileMetadata> loader) {
+        return get(userFilenameCache, new UserFilenameKey(user, filename),
+                key -> loader.apply(key.user(), key.filename()));
+    }
+
+    /**
+     * Never queries the database, for callers that have a single query covering the miss
+     *
+     * @param user     the file belongs to the user
+     * @param filename name of the file
+     * @return cached metadata, null if not cached or still loading
+     */
+    public FileMetadata getIfPresent(String user, String filename) {
+        CompletableFuture<FileMetadata> cached = userFilenameCache.getIfPresent(new UserFilenameKey(user, filename));
+        return cached != null && cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+    }
+
+    /**
+     * Drop all cached entries of the file, must be called whenever the file is modified or deleted
+     *
+     * @param fileMetadata the file as it was cached
+     */
+    public void invalidate(FileMetadata fileMetadata) {
+        invalidate(fileMetadata.getFileId());
+        invalidate(fileMetadata.getUser(), fileMetadata.getFilename());
+    }
+
+    /**
+     * Drop the cached entry of the file
+     *
+     * @param fileId public file id, may be null
+     */
+    public void invalidate(ObjectId fileId) {
+        if (fileId != null) {
+            fileIdCache.synchronous().invalidate(fileId);
+        }
+    }
+
+    /**
+     * Drop the cached entry for user and filename
+     *
+     * @param user     the file belongs to the user
+     * @param filename name of the file
+     */
+    public void invalidate(String user, String filename) {
+        userFilenameCache.synchronous().invalidate(new UserFilenameKey(user, filename));
+    }
+
+    /**
+     * @return hit and miss counters of both caches
+     */
+    public List<CacheStatsDTO> getStats() {
+        return List.of(convertToCacheStatsDTO("metadataByFileId", fileIdCache),
+                convertToCacheStatsDTO("metadataByUserAndFilename", userFilenameCache));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, fileIdCache, "metadataByFileId");
+        CaffeineCacheMetrics.monitor(registry, userFilenameCache, "metadataByUserAndFilename");
+    }
+
+    /**
+     * The mapping function only registers an incomplete future, the load itself runs afterwards on this thread.
+     * A null or failed load removes the entry again, so missing files are not cached
+     */
+    private static <K> FileMetadata get(AsyncCache<K, FileMetadata> cache, K key, Function<K, FileMetadata> loader) {
+        CompletableFuture<FileMetadata> load = new CompletableFuture<>();
+        CompletableFuture<FileMetadata> cached = cache.get(key, (k, executor) -> load);
+        if (cached == load) {
+            try {
+                load.complete(loader.apply(key));
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return cached.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private CacheStatsDTO convertToCacheStatsDTO(String cacheName, AsyncCache<?, ?> cache) {
+        CacheStats cacheStats = cache.synchronous().stats();
+        return CacheStatsDTO.builder()
+                .cacheName(cacheName)
+                .size(cache.synchronous().estimatedSize())
+                .hitCount(cacheStats.hitCount())
+                .missCount(cacheStats.missCount())
+                .hitRate(cacheStats.hitRate())
+                .evictionCount(cacheStats.evictionCount())
+                .build();
+    }
+
+    private record UserFilenameKey(String user, String filename) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.muhim.storage.clients;
+
+import org.bson.types.ObjectId;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Resource backed by a stored blob
+ * Every call to getInputStream opens a new download stream, so the resource can be read
+ * once per requested byte range, and skipping on the stream seeks to the offset
+ *
+ * @author muhim
+ */
+public class BlobResource extends AbstractResource {
+
+    private final BlobStore blobStore;
+    private final ObjectId storageId;
+    private final String filename;
+    private final long contentLength;
+    private final long lastModified;
+
+    public BlobResource(BlobStore blobStore,
+                        ObjectId storageId,
+                        String filename,
+                        long contentLength,
+                        long lastModified) {
+        this.blobStore = blobStore;
+        this.storageId = storageId;
+        this.filename = filename;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return blobStore.openDownloadStream(storageId);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Blob [" + storageId.toHexString() + "]";
+    }
+}
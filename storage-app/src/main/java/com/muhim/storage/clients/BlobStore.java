@@ -0,0 +1,90 @@
+package com.muhim.storage.clients;
+
+import org.bson.types.ObjectId;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage backend for file content
+ * The backend is selected with `storage.blob-store.type`, file metadata always stays in MongoDB
+ *
+ * @author muhim
+ */
+public interface BlobStore {
+
+    /**
+     * Store the content by consuming the stream, the stream is not closed
+     *
+     * @param inputStream   content to store
+     * @param fileName      original filename
+     * @param contentType   content type of the file
+     * @param contentLength expected size of the content, -1 if unknown, lets the backend choose its layout
+     * @return id of the stored blob
+     */
+    ObjectId store(InputStream inputStream, String fileName, String contentType, long contentLength);
+
+    /**
+     * Create a blob whose content is the content of the parts in order, without copying the content.
+     * The parts stay blobs of their own, deleting a part keeps the content of the composed blob
+     * and deleting the composed blob keeps the parts. Parts must be blobs created by {@link #store},
+     * a part belongs to the blob it was composed into last
+     *
+     * @param partIds     ids of the parts in order
+     * @param fileName    original filename
+     * @param contentType content type of the file
+     * @return id of the composed blob
+     */
+    ObjectId compose(List<ObjectId> partIds, String fileName, String contentType);
+
+    /**
+     * Delete the blob
+     *
+     * @param blobId id of the blob
+     */
+    void delete(ObjectId blobId);
+
+    /**
+     * Delete the blobs, backends override this to delete them in a single round trip
+     *
+     * @param blobIds ids of the blobs
+     */
+    default void deleteAll(Collection<ObjectId> blobIds) {
+        blobIds.forEach(this::delete);
+    }
+
+    /**
+     * Ids of stored blobs in ascending order, used to find blobs which are no longer referenced.
+     * Blob ids are ObjectIds created when storing, so the range also bounds the creation time
+     *
+     * @param after  exclusive lower bound, null to start with the first blob
+     * @param before exclusive upper bound
+     * @param limit  maximum number of ids
+     * @return blob ids
+     */
+    List<ObjectId> listBlobIds(ObjectId after, ObjectId before, int limit);
+
+    /**
+     * Open a new stream over the blob content, skipping on the stream
+     * seeks to the offset without reading the skipped content
+     *
+     * @param blobId id of the blob
+     * @return inputStream
+     */
+    InputStream openDownloadStream(ObjectId blobId);
+
+    /**
+     * Resource over the blob which opens a new download stream for every read
+     *
+     * @param blobId        id of the blob
+     * @param filename      original filename
+     * @param contentLength size of the blob
+     * @param lastModified  last modified time in milliseconds
+     * @return lazily opened resource
+     */
+    default Resource openResource(ObjectId blobId, String filename, long contentLength, long lastModified) {
+        return new BlobResource(this, blobId, filename, contentLength, lastModified);
+    }
+}
@@ -0,0 +1,244 @@
+package com.muhim.storage.clients;
+
+import com.muhim.storage.utils.ByteBufferInputStream;
+import com.muhim.storage.utils.PartsInputStream;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Blob store keeping file content on the local filesystem
+ * Content is written through a FileChannel into a temporary file which is moved in place once complete,
+ * large blobs are read through memory mappings of at most {@value #MAX_SEGMENT_SIZE} bytes each
+ * instead of copying them in small chunks.
+ * A composed blob is a directory of hard links to its parts named by their position,
+ * so the parts share their content with it and can be deleted independently
+ *
+ * @author muhim
+ */
+@Component
+@ConditionalOnProperty(name = "storage.blob-store.type", havingValue = "filesystem")
+public class FileSystemBlobStore implements BlobStore {
+
+    /**
+     * Bytes handed to the channel per transfer while storing
+     */
+    private static final long TRANSFER_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * Blobs smaller than this are read through the channel, mapping them costs more than it saves
+     */
+    private static final long MEMORY_MAP_THRESHOLD = 1024L * 1024;
+
+    /**
+     * A mapping is limited to 2GB, larger blobs are mapped in segments one after another while they are read
+     */
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private static final String TEMPORARY_SUFFIX = ".part";
+
+    private final Path rootDirectory;
+
+    private final long segmentSize;
+
+    @Autowired
+    public FileSystemBlobStore(@Value("${storage.blob-store.filesystem.root}") Path rootDirectory) throws IOException {
+        this(rootDirectory, MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize bytes mapped at once, smaller in tests so blobs of several segments stay small
+     */
+    FileSystemBlobStore(Path rootDirectory, long segmentSize) throws IOException {
+        this.rootDirectory = Files.createDirectories(rootDirectory);
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public ObjectId store(InputStream inputStream, String fileName, String contentType, long contentLength) {
+        ObjectId blobId = new ObjectId();
+        Path blobPath = resolve(blobId);
+        Path temporaryPath = blobPath.resolveSibling(blobPath.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            Files.createDirectories(blobPath.getParent());
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ReadableByteChannel source = Channels.newChannel(inputStream);
+                long position = 0;
+                long transferred;
+                // a blocking source only transfers 0 bytes at end of stream
+                while ((transferred = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                    position += transferred;
+                }
+            }
+            Files.move(temporaryPath, blobPath, StandardCopyOption.ATOMIC_MOVE);
+            return blobId;
+        } catch (IOException e) {
+            deleteQuietly(temporaryPath);
+            throw new UncheckedIOException("Couldn't store file " + fileName, e);
+        }
+    }
+
+    @Override
+    public ObjectId compose(List<ObjectId> partIds, String fileName, String contentType) {
+        ObjectId blobId = new ObjectId();
+        Path blobPath = resolve(blobId);
+        Path temporaryPath = blobPath.resolveSibling(blobPath.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            Files.createDirectories(temporaryPath);
+            for (int part = 0; part < partIds.size(); part++) {
+                Files.createLink(temporaryPath.resolve(String.valueOf(part)), resolve(partIds.get(part)));
+            }
+            Files.move(temporaryPath, blobPath, StandardCopyOption.ATOMIC_MOVE);
+            return blobId;
+        } catch (IOException e) {
+            deleteQuietly(temporaryPath);
+            throw new UncheckedIOException("Couldn't compose file " + fileName, e);
+        }
+    }
+
+    @Override
+    public void delete(ObjectId blobId) {
+        try {
+            delete(resolve(blobId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Blobs are not stored in id order, only the smallest ids in range are kept while the tree is walked,
+     * so memory is bounded by the limit instead of the number of blobs
+     */
+    @Override
+    public List<ObjectId> listBlobIds(ObjectId after, ObjectId before, int limit) {
+        if (limit < 1) {
+            return List.of();
+        }
+        // the largest kept id is at the head and the first to give way to a smaller one
+        PriorityQueue<ObjectId> smallestBlobIds = new PriorityQueue<>(limit, Comparator.reverseOrder());
+        // temporary files of stores in progress are not valid ids and are skipped
+        try (Stream<Path> paths = Files.walk(rootDirectory, 3)) {
+            paths.map(path -> path.getFileName().toString())
+                    .filter(ObjectId::isValid)
+                    .map(ObjectId::new)
+                    .filter(blobId -> (after == null || blobId.compareTo(after) > 0) && blobId.compareTo(before) < 0)
+                    .forEach(blobId -> {
+                        if (smallestBlobIds.size() < limit) {
+                            smallestBlobIds.add(blobId);
+                        } else if (blobId.compareTo(smallestBlobIds.peek()) < 0) {
+                            smallestBlobIds.poll();
+                            smallestBlobIds.add(blobId);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return smallestBlobIds.stream().sorted().toList();
+    }
+
+    @Override
+    public InputStream openDownloadStream(ObjectId blobId) {
+        Path blobPath = resolve(blobId);
+        if (Files.isDirectory(blobPath)) {
+            try (Stream<Path> parts = Files.list(blobPath)) {
+                return new PartsInputStream(IntStream.range(0, (int) parts.count())
+                        .<Supplier<InputStream>>mapToObj(part -> () -> open(blobPath.resolve(String.valueOf(part))))
+                        .toList());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't open blob " + blobId.toHexString(), e);
+            }
+        }
+        return open(blobPath);
+    }
+
+    private InputStream open(Path blobPath) {
+        try {
+            FileChannel channel = FileChannel.open(blobPath, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size < MEMORY_MAP_THRESHOLD) {
+                // skipping on a channel stream moves the channel position
+                return Channels.newInputStream(channel);
+            }
+            // the mapping stays valid after the channel is closed
+            try (channel) {
+                if (size <= segmentSize) {
+                    return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                }
+            }
+            // each segment is only mapped once the previous one is read, skipped segments are never mapped
+            return new PartsInputStream(LongStream.iterate(0, position -> position < size,
+                            position -> position + segmentSize)
+                    .<Supplier<InputStream>>mapToObj(position -> () ->
+                            map(blobPath, position, Math.min(segmentSize, size - position)))
+                    .toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open blob " + blobPath.getFileName(), e);
+        }
+    }
+
+    private InputStream map(Path blobPath, long position, long size) {
+        try (FileChannel channel = FileChannel.open(blobPath, StandardOpenOption.READ)) {
+            MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            return new ByteBufferInputStream(mappedByteBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open blob " + blobPath.getFileName(), e);
+        }
+    }
+
+    /**
+     * Blobs are spread over sub directories by the last characters of the id,
+     * the leading characters are a timestamp and would put all recent blobs in one directory
+     */
+    private Path resolve(ObjectId blobId) {
+        String hex = blobId.toHexString();
+        return rootDirectory
+                .resolve(hex.substring(hex.length() - 2))
+                .resolve(hex.substring(hex.length() - 4, hex.length() - 2))
+                .resolve(hex);
+    }
+
+    /**
+     * The links of a composed blob are deleted before its directory, the parts keep their content
+     */
+    private void delete(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> parts = Files.list(path)) {
+                for (Path part : parts.toList()) {
+                    Files.deleteIfExists(part);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            delete(path);
+        } catch (IOException ignored) {
+            // nothing left to clean up
+        }
+    }
+}
@@ -1,43 +1,277 @@
 package com.muhim.storage.clients;
 
+import com.muhim.storage.config.DownloadExecutorConfig;
+import com.muhim.storage.utils.BufferPool;
+import com.muhim.storage.utils.PartsInputStream;
+import com.muhim.storage.utils.ReadAheadInputStream;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
 import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import io.micrometer.observation.annotation.Observed;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.mongodb.MongoDatabaseFactory;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.gridfs.GridFsUpload;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 /**
  * GridFsClient to mediate the communication between service and database
  * It uses GrdFsTemplate and GridFsBucket to enable database operations for files
+ * This is the default blob store
+ * Large files are stored in larger chunks, so they take fewer documents and round trips to download,
+ * and downloads larger than the read-ahead size fetch the next chunks while the current ones are written.
+ * A composed blob is a file document without chunks which lists its parts in the metadata.
+ * Its parts are marked as composed, deleting such a part only releases it and the composed blob
+ * deletes the released parts with itself
  *
  * @author muhim
  */
 @Component
-public class GridFsClient {
+@ConditionalOnProperty(name = "storage.blob-store.type", havingValue = "gridfs", matchIfMissing = true)
+@Observed
+public class GridFsClient implements BlobStore {
+
+    private static final String FILES_COLLECTION = "fs.files";
+    private static final String CHUNKS_COLLECTION = "fs.chunks";
+
+    /**
+     * Metadata of a composed blob, ids of its parts in order
+     */
+    public static final String PARTS = "parts";
+
+    /**
+     * Metadata of a part, id of the composed blob it belongs to
+     */
+    private static final String COMPOSED_INTO = "composedInto";
+
+    /**
+     * Metadata of a part, set once the part itself was deleted while it was composed
+     */
+    private static final String RELEASED = "released";
+
+    private static final String METADATA = "metadata";
+
+    /**
+     * A chunk is one document and has to stay below the 16MB document limit
+     */
+    private static final long MAX_CHUNK_SIZE = DataSize.ofMegabytes(15).toBytes();
+
+    /**
+     * Chunk size of the driver, recorded on composed blobs which have no chunks of their own
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 255 * 1024;
 
     private final GridFsTemplate gridFsTemplate;
     private final GridFSBucket gridFSBucket;
+    private final MongoDatabase mongoDatabase;
+
+    /**
+     * Chunks fetched per round trip of a download, which are held in memory until the client has read them
+     */
+    private final int downloadBatchSize;
+
+    /**
+     * Chunk size by the smallest file size it is used for
+     */
+    private final NavigableMap<Long, Integer> chunkSizes;
+
+    /**
+     * Read-ahead buffers of all downloads, two per download
+     */
+    private final BufferPool readAheadBuffers;
+
+    private final ExecutorService downloadExecutor;
 
     @Autowired
-    public GridFsClient(MongoDatabaseFactory mongoDbFactory, GridFsTemplate gridFsTemplate) {
-        this.gridFSBucket = GridFSBuckets.create(mongoDbFactory.getMongoDatabase());
+    public GridFsClient(MongoDatabaseFactory mongoDbFactory,
+                        GridFsTemplate gridFsTemplate,
+                        @Value("${storage.blob-store.gridfs.download-batch-size:2}") int downloadBatchSize,
+                        @Value("${storage.blob-store.gridfs.chunk-sizes:64MB=1MB,1GB=4MB}") String chunkSizes,
+                        @Value("${storage.blob-store.gridfs.read-ahead-size:1MB}") DataSize readAheadSize,
+                        @Value("${storage.blob-store.gridfs.read-ahead-max-memory:64MB}") DataSize readAheadMaxMemory,
+                        @Qualifier(DownloadExecutorConfig.DOWNLOAD_EXECUTOR) ExecutorService downloadExecutor) {
+        this.mongoDatabase = mongoDbFactory.getMongoDatabase();
+        this.gridFSBucket = GridFSBuckets.create(mongoDatabase);
         this.gridFsTemplate = gridFsTemplate;
+        this.downloadBatchSize = downloadBatchSize;
+        this.chunkSizes = parseChunkSizes(chunkSizes);
+        this.readAheadBuffers = readAheadSize.toBytes() > 0 ?
+                new BufferPool(Math.toIntExact(readAheadSize.toBytes()),
+                        (int) (readAheadMaxMemory.toBytes() / readAheadSize.toBytes())) : null;
+        this.downloadExecutor = downloadExecutor;
     }
 
-    public ObjectId store(InputStream inputStream, String fileName, String contentType) {
-        return gridFsTemplate.store(inputStream, fileName, contentType);
+    @Override
+    public ObjectId store(InputStream inputStream, String fileName, String contentType, long contentLength) {
+        Map.Entry<Long, Integer> chunkSize = contentLength < 0 ? null : chunkSizes.floorEntry(contentLength);
+        if (chunkSize == null) {
+            return gridFsTemplate.store(inputStream, fileName, contentType);
+        }
+        return gridFsTemplate.store(GridFsUpload.fromStream(inputStream)
+                .filename(fileName)
+                .contentType(contentType)
+                .chunkSize(chunkSize.getValue())
+                .build());
     }
 
 
+    /**
+     * The composed blob is inserted before its parts are marked, so an interrupted compose
+     * leaves an unreferenced blob for the orphan sweep rather than marked parts without a blob
+     */
+    @Override
+    public ObjectId compose(List<ObjectId> partIds, String fileName, String contentType) {
+        MongoCollection<Document> files = mongoDatabase.getCollection(FILES_COLLECTION);
+        Map<ObjectId, Long> partLengths = new HashMap<>();
+        files.find(Filters.and(Filters.in("_id", partIds), Filters.exists(METADATA + "." + PARTS, false)))
+                .projection(Projections.include("length"))
+                .forEach(part -> partLengths.put(part.getObjectId("_id"), part.get("length", Number.class).longValue()));
+        if (!partLengths.keySet().containsAll(partIds)) {
+            throw new IllegalArgumentException("Parts of " + fileName + " do not exist");
+        }
+
+        ObjectId blobId = new ObjectId();
+        files.insertOne(new Document("_id", blobId)
+                .append("filename", fileName)
+                .append("length", partIds.stream().mapToLong(partLengths::get).sum())
+                .append("chunkSize", DEFAULT_CHUNK_SIZE)
+                .append("uploadDate", new Date())
+                .append(METADATA, new Document("_contentType", contentType).append(PARTS, partIds)));
+        files.updateMany(Filters.in("_id", partIds), Updates.combine(Updates.set(METADATA + "." + COMPOSED_INTO, blobId),
+                Updates.unset(METADATA + "." + RELEASED)));
+        return blobId;
+    }
+
+    @Override
     public void delete(ObjectId gridFsObjectId) {
-        gridFSBucket.delete(gridFsObjectId);
+        deleteAll(List.of(gridFsObjectId));
+    }
+
+    /**
+     * Composed parts are only released, the content stays with their composed blob.
+     * The released parts of deleted composed blobs go first and the others are unmarked,
+     * so an interrupted delete is retried with the composed blob
+     */
+    @Override
+    public void deleteAll(Collection<ObjectId> blobIds) {
+        if (blobIds.isEmpty()) {
+            return;
+        }
+        MongoCollection<Document> files = mongoDatabase.getCollection(FILES_COLLECTION);
+        Set<ObjectId> composedPartIds = files.find(Filters.and(Filters.in("_id", blobIds),
+                        Filters.exists(METADATA + "." + COMPOSED_INTO)))
+                .projection(Projections.include("_id"))
+                .map(document -> document.getObjectId("_id"))
+                .into(new HashSet<>());
+        if (!composedPartIds.isEmpty()) {
+            files.updateMany(Filters.in("_id", composedPartIds), Updates.set(METADATA + "." + RELEASED, true));
+        }
+
+        deleteFiles(files.find(Filters.and(Filters.in(METADATA + "." + COMPOSED_INTO, blobIds),
+                        Filters.eq(METADATA + "." + RELEASED, true)))
+                .projection(Projections.include("_id"))
+                .map(document -> document.getObjectId("_id"))
+                .into(new ArrayList<>()));
+        files.updateMany(Filters.in(METADATA + "." + COMPOSED_INTO, blobIds),
+                Updates.combine(Updates.unset(METADATA + "." + COMPOSED_INTO), Updates.unset(METADATA + "." + RELEASED)));
+
+        deleteFiles(blobIds.stream()
+                .filter(blobId -> !composedPartIds.contains(blobId))
+                .toList());
     }
 
+    @Override
+    public List<ObjectId> listBlobIds(ObjectId after, ObjectId before, int limit) {
+        Bson range = after == null ? Filters.lt("_id", before) :
+                Filters.and(Filters.gt("_id", after), Filters.lt("_id", before));
+        // composed parts are kept by their composed blob
+        Bson filter = Filters.and(range, Filters.exists(METADATA + "." + COMPOSED_INTO, false));
+        return mongoDatabase.getCollection(FILES_COLLECTION)
+                .find(filter)
+                .projection(Projections.include("_id"))
+                .sort(Sorts.ascending("_id"))
+                .limit(limit)
+                .map(document -> document.getObjectId("_id"))
+                .into(new ArrayList<>());
+    }
+
+    @Override
     public InputStream openDownloadStream(ObjectId objectId) {
-        return gridFSBucket.openDownloadStream(objectId);
+        // without a batch size the first batch holds up to 16MB of chunks for as long as a slow client reads it
+        GridFSDownloadStream downloadStream = gridFSBucket.openDownloadStream(objectId).batchSize(downloadBatchSize);
+        Document metadata = downloadStream.getGridFSFile().getMetadata();
+        if (metadata != null && metadata.containsKey(PARTS)) {
+            downloadStream.close();
+            return new PartsInputStream(metadata.getList(PARTS, ObjectId.class).stream()
+                    .<Supplier<InputStream>>map(partId -> () -> openDownloadStream(partId))
+                    .toList());
+        }
+        if (readAheadBuffers == null ||
+                downloadStream.getGridFSFile().getLength() <= readAheadBuffers.getBufferSize()) {
+            return downloadStream;
+        }
+        return ReadAheadInputStream.readAhead(downloadStream, readAheadBuffers, downloadExecutor);
+    }
+
+    /**
+     * Like {@link GridFSBucket#delete} the file documents go first,
+     * so an interrupted delete leaves unreachable chunks rather than truncated files
+     */
+    private void deleteFiles(List<ObjectId> blobIds) {
+        if (blobIds.isEmpty()) {
+            return;
+        }
+        mongoDatabase.getCollection(FILES_COLLECTION).deleteMany(Filters.in("_id", blobIds));
+        mongoDatabase.getCollection(CHUNKS_COLLECTION).deleteMany(Filters.in("files_id", blobIds));
+    }
+
+    /**
+     * Parses size classes like `64MB=1MB,1GB=4MB`, files of at least 64MB are stored in 1MB chunks
+     * and files of at least 1GB in 4MB chunks. Smaller files and files of unknown size get the driver default of 255KB
+     */
+    static NavigableMap<Long, Integer> parseChunkSizes(String chunkSizes) {
+        NavigableMap<Long, Integer> parsedChunkSizes = new TreeMap<>();
+        for (String sizeClass : chunkSizes.split(",")) {
+            if (sizeClass.isBlank()) {
+                continue;
+            }
+            String[] fileAndChunkSize = sizeClass.split("=");
+            if (fileAndChunkSize.length != 2) {
+                throw new IllegalArgumentException("Invalid chunk size class " + sizeClass);
+            }
+            long chunkSize = DataSize.parse(fileAndChunkSize[1].trim()).toBytes();
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("Chunk size of " + sizeClass + " must be between 1B and 15MB");
+            }
+            parsedChunkSizes.put(DataSize.parse(fileAndChunkSize[0].trim()).toBytes(), (int) chunkSize);
+        }
+        return parsedChunkSizes;
     }
 }
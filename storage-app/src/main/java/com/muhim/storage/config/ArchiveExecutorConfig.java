@@ -0,0 +1,26 @@
+package com.muhim.storage.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor reading ahead the content of the next archive entry while the current one is written
+ *
+ * @author muhim
+ */
+@Configuration
+public class ArchiveExecutorConfig {
+
+    public static final String ARCHIVE_EXECUTOR = "archiveExecutor";
+
+    @Bean(name = ARCHIVE_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService archiveExecutor(@Value("${storage.archive.prefetch-parallelism:4}") int parallelism,
+                                           Environment environment) {
+        return Executors.newFixedThreadPool(parallelism, ThreadFactories.named("archive-", environment));
+    }
+}
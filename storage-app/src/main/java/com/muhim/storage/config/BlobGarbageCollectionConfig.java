@@ -0,0 +1,58 @@
+package com.muhim.storage.config;
+
+import com.mongodb.MongoException;
+import com.muhim.storage.service.BlobGarbageCollector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Runs the {@link BlobGarbageCollector} in the background, failed runs are logged and retried with the next run
+ *
+ * @author muhim
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "storage.blob-gc.enabled", havingValue = "true", matchIfMissing = true)
+public class BlobGarbageCollectionConfig {
+
+    private final BlobGarbageCollector blobGarbageCollector;
+
+    @Autowired
+    public BlobGarbageCollectionConfig(BlobGarbageCollector blobGarbageCollector) {
+        this.blobGarbageCollector = blobGarbageCollector;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.blob-gc.reclaim-interval:PT10S}",
+            initialDelayString = "${storage.blob-gc.reclaim-interval:PT10S}")
+    public void reclaim() {
+        try {
+            int reclaimedCount = blobGarbageCollector.reclaim();
+            if (reclaimedCount > 0) {
+                log.info("Reclaimed {} deleted blobs", reclaimedCount);
+            }
+        } catch (DataAccessException | MongoException | UncheckedIOException e) {
+            log.warn("Reclaiming deleted blobs failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.blob-gc.sweep-interval:PT1H}",
+            initialDelayString = "${storage.blob-gc.sweep-interval:PT1H}")
+    public void sweepOrphans() {
+        try {
+            int orphanCount = blobGarbageCollector.sweepOrphans();
+            if (orphanCount > 0) {
+                log.info("Marked {} orphaned blobs for deletion", orphanCount);
+            }
+        } catch (DataAccessException | MongoException | UncheckedIOException e) {
+            log.warn("Sweeping orphaned blobs failed: {}", e.getMessage());
+        }
+    }
+}
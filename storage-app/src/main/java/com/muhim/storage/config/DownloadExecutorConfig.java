@@ -0,0 +1,27 @@
+package com.muhim.storage.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor reading ahead the next chunks of large downloads while the current ones are written
+ *
+ * @author muhim
+ */
+@Configuration
+public class DownloadExecutorConfig {
+
+    public static final String DOWNLOAD_EXECUTOR = "downloadExecutor";
+
+    @Bean(name = DOWNLOAD_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService downloadExecutor(
+            @Value("${storage.blob-store.gridfs.read-ahead-parallelism:8}") int parallelism,
+            Environment environment) {
+        return Executors.newFixedThreadPool(parallelism, ThreadFactories.named("download-", environment));
+    }
+}
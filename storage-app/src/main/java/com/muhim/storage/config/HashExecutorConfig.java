@@ -0,0 +1,27 @@
+package com.muhim.storage.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor hashing the leaves of `sha-256-tree` hashes, shared by all uploads so hashing
+ * cannot take more cores than configured. Hashing never blocks, so it runs on platform threads
+ * even when virtual threads are enabled, they are only started once a file larger than one leaf is hashed
+ *
+ * @author muhim
+ */
+@Configuration
+public class HashExecutorConfig {
+
+    public static final String HASH_EXECUTOR = "hashExecutor";
+
+    @Bean(name = HASH_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService hashExecutor(@Value("${storage.hashing.parallelism:4}") int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("hash-"));
+    }
+}
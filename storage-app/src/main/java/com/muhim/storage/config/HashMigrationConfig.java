@@ -0,0 +1,43 @@
+package com.muhim.storage.config;
+
+import com.mongodb.MongoException;
+import com.muhim.storage.service.FileHashMigration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Runs the {@link FileHashMigration} in the background, failed runs are logged and retried with the next run
+ *
+ * @author muhim
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "storage.hashing.migration.enabled", havingValue = "true", matchIfMissing = true)
+public class HashMigrationConfig {
+
+    private final FileHashMigration fileHashMigration;
+
+    @Autowired
+    public HashMigrationConfig(FileHashMigration fileHashMigration) {
+        this.fileHashMigration = fileHashMigration;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.hashing.migration.interval:PT1M}",
+            initialDelayString = "${storage.hashing.migration.interval:PT1M}")
+    public void migrate() {
+        try {
+            int migratedCount = fileHashMigration.migrate();
+            if (migratedCount > 0) {
+                log.info("Rehashed {} files", migratedCount);
+            }
+        } catch (DataAccessException | MongoException e) {
+            log.warn("Rehashing files failed: {}", e.getMessage());
+        }
+    }
+}
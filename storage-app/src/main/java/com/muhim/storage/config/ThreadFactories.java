@@ -0,0 +1,34 @@
+package com.muhim.storage.config;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories of the application's own executors
+ *
+ * @author muhim
+ */
+final class ThreadFactories {
+
+    private ThreadFactories() {
+    }
+
+    /**
+     * Virtual threads when `spring.threads.virtual.enabled` is set on Java 21, platform threads otherwise.
+     * The executors stay bounded either way, the bound protects the database and not the memory of the threads
+     *
+     * @param threadNamePrefix prefix of the thread names
+     * @param environment      to check the threading mode
+     * @return thread factory for the executor
+     */
+    static ThreadFactory named(String threadNamePrefix, Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory();
+        }
+        return new CustomizableThreadFactory(threadNamePrefix);
+    }
+}
@@ -0,0 +1,27 @@
+package com.muhim.storage.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor ingesting the files of batch uploads, bounded so a large batch cannot exhaust
+ * database connections or blob store bandwidth
+ *
+ * @author muhim
+ */
+@Configuration
+public class UploadExecutorConfig {
+
+    public static final String UPLOAD_EXECUTOR = "uploadExecutor";
+
+    @Bean(name = UPLOAD_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService uploadExecutor(@Value("${storage.batch-upload.parallelism:4}") int parallelism,
+                                          Environment environment) {
+        return Executors.newFixedThreadPool(parallelism, ThreadFactories.named("upload-", environment));
+    }
+}
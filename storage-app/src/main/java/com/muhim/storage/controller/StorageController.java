@@ -1,16 +1,33 @@
 package com.muhim.storage.controller;
 
+import com.muhim.storage.cache.BlobContentCache;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.dto.BatchUploadResultDTO;
+import com.muhim.storage.dto.BulkOperationResultDTO;
+import com.muhim.storage.dto.CacheStatsDTO;
+import com.muhim.storage.dto.FileDownloadDTO;
+import com.muhim.storage.dto.FileListDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.ArchiveFormat;
+import com.muhim.storage.enums.FileFieldSet;
 import com.muhim.storage.enums.FileVisibility;
 import com.muhim.storage.service.StorageAccessService;
+import com.muhim.storage.service.StorageArchiveService;
 import com.muhim.storage.service.StorageDownloadService;
 import com.muhim.storage.service.StorageModificationService;
 import com.muhim.storage.service.StorageUploadService;
+import com.muhim.storage.service.StorageUploadSessionService;
+import io.micrometer.observation.annotation.Observed;
 import jakarta.servlet.http.HttpServletRequest;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -18,41 +35,71 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller for storage solution
  * Provides REST API endpoints for file management
+ * The reactive stack serves its endpoints through {@link StorageRouter} instead
  *
  * @author muhim
  */
 @RestController
+@Observed
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("api/storage/v1")
 public class StorageController {
 
     private static final String FILENAME = "filename;";
 
+    /**
+     * Optional request header carrying the hex hash of the uploaded file with `storage.hashing.algorithm`,
+     * e.g. the 64 hex digits of its SHA-256 with the default algorithm
+     */
+    private static final String FILE_DIGEST_HEADER = "X-File-Digest";
+
+    private static final String SUMMARY_FIELDS = "summary";
+
     private final StorageUploadService storageUploadService;
     private final StorageDownloadService storageDownloadService;
     private final StorageModificationService storageModificationService;
     private final StorageAccessService storageAccessService;
+    private final StorageUploadSessionService storageUploadSessionService;
+    private final StorageArchiveService storageArchiveService;
+    private final FileMetadataCache fileMetadataCache;
+    private final BlobContentCache blobContentCache;
 
     @Autowired
     public StorageController(StorageUploadService storageUploadService,
                              StorageDownloadService storageDownloadService,
                              StorageModificationService storageModificationService,
-                             StorageAccessService storageAccessService) {
+                             StorageAccessService storageAccessService,
+                             StorageUploadSessionService storageUploadSessionService,
+                             StorageArchiveService storageArchiveService,
+                             FileMetadataCache fileMetadataCache,
+                             BlobContentCache blobContentCache) {
         this.storageUploadService = storageUploadService;
         this.storageDownloadService = storageDownloadService;
         this.storageModificationService = storageModificationService;
         this.storageAccessService = storageAccessService;
+        this.storageUploadSessionService = storageUploadSessionService;
+        this.storageArchiveService = storageArchiveService;
+        this.fileMetadataCache = fileMetadataCache;
+        this.blobContentCache = blobContentCache;
     }
 
 
@@ -62,34 +109,209 @@ public class StorageController {
             @RequestParam("file") MultipartFile file,
             @RequestParam("visibility") FileVisibility visibility,
             @RequestParam("tags") List<String> tags,
+            @RequestHeader(value = FILE_DIGEST_HEADER, required = false) String fileDigest,
+            HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok()
+                    .body(storageUploadService.saveFile(user,
+                            file,
+                            visibility,
+                            tags,
+                            fileDigest,
+                            getBaseUrl(request)));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/files/upload/batch")
+    public ResponseEntity<?> uploadFiles(
+            @RequestParam("user") String user,
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam("visibility") FileVisibility visibility,
+            @RequestParam("tags") List<String> tags,
+            HttpServletRequest request) {
+
+        try {
+            List<BatchUploadResultDTO> results = storageUploadService.saveFiles(user,
+                    files,
+                    visibility,
+                    tags,
+                    getBaseUrl(request));
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Streaming upload, the raw request body is the file content and is piped straight
+     * to the blob store while it is received. Unlike the multipart upload nothing is spooled
+     * to a temporary file, blocking reads on the request stream throttle the client
+     */
+    @PostMapping("/files/upload/stream")
+    public ResponseEntity<?> uploadFileStream(
+            @RequestParam("user") String user,
+            @RequestParam("filename") String filename,
+            @RequestParam("visibility") FileVisibility visibility,
+            @RequestParam("tags") List<String> tags,
+            @RequestHeader(value = FILE_DIGEST_HEADER, required = false) String fileDigest,
+            HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok()
+                    .body(storageUploadService.saveFile(user,
+                            filename,
+                            getDeclaredContentType(request),
+                            request.getInputStream(),
+                            request.getContentLengthLong(),
+                            visibility,
+                            tags,
+                            fileDigest,
+                            getBaseUrl(request)));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/files/uploads")
+    public ResponseEntity<?> createUploadSession(
+            @RequestParam("user") String user,
+            @RequestParam("filename") String filename,
+            @RequestParam("visibility") FileVisibility visibility,
+            @RequestParam("tags") List<String> tags,
+            @RequestParam(value = "totalChunks", required = false) Integer totalChunks,
+            @RequestParam(value = "contentType", required = false) String contentType) {
+        try {
+            return ResponseEntity.ok()
+                    .body(storageUploadSessionService.createSession(user,
+                            filename,
+                            contentType,
+                            visibility,
+                            tags,
+                            totalChunks));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(e.getMessage());
+        }
+    }
+
+    /**
+     * The chunk is the raw request body, it is streamed to the blob store without multipart parsing
+     */
+    @PutMapping("/files/uploads/{sessionId}/chunks/{chunkIndex}")
+    public ResponseEntity<?> uploadChunk(
+            @PathVariable String sessionId,
+            @PathVariable int chunkIndex,
+            InputStream inputStream) {
+        try {
+            return ResponseEntity.ok()
+                    .body(storageUploadSessionService.putChunk(sessionId, chunkIndex, inputStream));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/files/uploads/{sessionId}")
+    public ResponseEntity<?> getUploadSession(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok()
+                    .body(storageUploadSessionService.getSession(sessionId));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/files/uploads/{sessionId}/commit")
+    public ResponseEntity<?> commitUploadSession(
+            @PathVariable String sessionId,
+            @RequestHeader(value = FILE_DIGEST_HEADER, required = false) String fileDigest,
             HttpServletRequest request) {
         try {
             return ResponseEntity.ok()
-                    .body(storageUploadService.saveFile(user, file, visibility, tags, getBaseUrl(request)));
+                    .body(storageUploadSessionService.commitSession(sessionId, fileDigest, getBaseUrl(request)));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(e.getMessage());
         }
     }
 
+    @DeleteMapping("/files/uploads/{sessionId}")
+    public ResponseEntity<String> abortUploadSession(@PathVariable String sessionId) {
+        try {
+            storageUploadSessionService.abortSession(sessionId);
+            return ResponseEntity.ok("Upload session aborted successfully");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Failed to abort upload session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the file, single and multiple byte ranges are answered with 206 by spring
+     * as the body is a resource with known length. With ETag and Last-Modified set on the entity,
+     * spring answers If-None-Match/If-Modified-Since with 304 before the resource is ever opened
+     */
     @GetMapping("/files/{id}/download")
-    public ResponseEntity<InputStreamResource> downloadFile(@PathVariable String id) {
+    public ResponseEntity<Resource> downloadFile(@PathVariable String id) {
         try {
-            InputStream inputStream = storageDownloadService.downloadFileStream(id);
-            String originalFilename = storageDownloadService.getOriginalFilename(id);
+            FileDownloadDTO fileDownload = storageDownloadService.getFileDownload(id);
 
             // Set Content-Disposition header to prompt download
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentDispositionFormData("attachment", originalFilename);
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDisposition(ContentDisposition.attachment()
+                    .filename(fileDownload.getFilename(), StandardCharsets.UTF_8)
+                    .build());
+            headers.setContentType(getMediaType(fileDownload.getContentType()));
 
+            // Content-Length is taken from the resource, or from the range for partial responses
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(new InputStreamResource(inputStream));
+                    .eTag(fileDownload.getFileRollingHash())
+                    .lastModified(fileDownload.getResource().lastModified())
+                    .body(fileDownload.getResource());
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Declared with the streaming body type, spring only streams the body asynchronously when it can tell from it
+     */
+    @GetMapping("/files/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(
+            @RequestParam(value = "ids", required = false) List<String> ids,
+            @RequestParam(value = "user", required = false) String user,
+            @RequestParam(value = "filterByTag", defaultValue = "") String tag,
+            @RequestParam(value = "format", defaultValue = "zip") String format) {
+
+        if (ids == null && user == null && tag.isEmpty()) {
+            return archiveBadRequest("Provide file ids, a user or a tag");
+        }
+        if (ids != null && !ids.stream().allMatch(ObjectId::isValid)) {
+            return archiveBadRequest("Invalid file id");
+        }
+        ArchiveFormat archiveFormat;
+        try {
+            archiveFormat = ArchiveFormat.fromValue(format);
+        } catch (IllegalArgumentException e) {
+            return archiveBadRequest(e.getMessage());
+        }
+
+        // the archive is written while the files are read, its length is unknown upfront
+        StreamingResponseBody body = outputStream ->
+                storageArchiveService.writeArchive(archiveFormat, ids, user, tag, outputStream);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("files." + archiveFormat.getExtension())
+                        .build()
+                        .toString())
+                .contentType(MediaType.parseMediaType(archiveFormat.getMediaType()))
+                .body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> archiveBadRequest(String message) {
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(outputStream -> outputStream.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
     @DeleteMapping("/files/delete")
     public ResponseEntity<String> deleteFilesByUserAndName(
             @RequestParam("user") String user,
@@ -117,30 +339,165 @@ public class StorageController {
         }
     }
 
+    @DeleteMapping("/files/delete/bulk")
+    public ResponseEntity<?> deleteFiles(
+            @RequestParam("user") String user,
+            @RequestParam(value = "filenames", required = false) List<String> filenames,
+            @RequestParam(value = "filterByTag", defaultValue = "") String tag,
+            @RequestParam(value = "uploadedFrom", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date uploadedFrom,
+            @RequestParam(value = "uploadedTo", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date uploadedTo,
+            @RequestParam(value = "all", defaultValue = "false") boolean all) {
+
+        // without any filter every file of the user is deleted, which has to be asked for explicitly
+        if (filenames == null && tag.isEmpty() && uploadedFrom == null && uploadedTo == null && !all) {
+            return ResponseEntity.badRequest().body("Provide a filter or set all=true to delete every file");
+        }
+        try {
+            BulkOperationResultDTO result = storageModificationService.deleteFiles(user, filenames, tag,
+                    uploadedFrom, uploadedTo);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Failed to delete files: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/files/rename/bulk")
+    public ResponseEntity<?> renameFiles(
+            @RequestParam("user") String user,
+            @RequestBody Map<String, String> renames) {
+
+        try {
+            BulkOperationResultDTO result = storageModificationService.renameFiles(user, renames);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Failed to rename files: " + e.getMessage());
+        }
+    }
+
     @GetMapping("/files/public")
     public ResponseEntity<Page<FileMetadataDTO>> getPublicFiles(
             @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false) Integer size,
             @RequestParam(value = "sortBy", defaultValue = FILENAME) String sortBy,
             @RequestParam(value = "filterByTag", defaultValue = "") String tag,
+            @RequestParam(value = "fields", defaultValue = SUMMARY_FIELDS) String fields,
             HttpServletRequest request) {
-        Page<FileMetadataDTO> files = storageAccessService.getPublicFiles(page, sortBy, tag, getBaseUrl(request));
-        return ResponseEntity.ok(files);
+        try {
+            Page<FileMetadataDTO> files = storageAccessService.getPublicFiles(page,
+                    size,
+                    sortBy,
+                    tag,
+                    FileFieldSet.fromValue(fields),
+                    getBaseUrl(request));
+            return ResponseEntity.ok(files);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/files/user")
     public ResponseEntity<Page<FileMetadataDTO>> getUserFiles(
             @RequestParam("user") String user,
             @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "sortBy", defaultValue = FILENAME) String sortBy,
+            @RequestParam(value = "filterByTag", defaultValue = "") String tag,
+            @RequestParam(value = "fields", defaultValue = SUMMARY_FIELDS) String fields,
+            HttpServletRequest request) {
+        try {
+            Page<FileMetadataDTO> userFiles = storageAccessService.getUserFiles(user,
+                    page,
+                    size,
+                    sortBy,
+                    tag,
+                    FileFieldSet.fromValue(fields),
+                    getBaseUrl(request));
+            return ResponseEntity.ok(userFiles);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/files/public/scroll")
+    public ResponseEntity<FileListDTO> scrollPublicFiles(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "sortBy", defaultValue = FILENAME) String sortBy,
+            @RequestParam(value = "filterByTag", defaultValue = "") String tag,
+            @RequestParam(value = "fields", defaultValue = SUMMARY_FIELDS) String fields,
+            @RequestParam(value = "includeCount", defaultValue = "false") boolean includeCount,
+            HttpServletRequest request) {
+        try {
+            FileListDTO files = storageAccessService.scrollPublicFiles(cursor,
+                    size,
+                    sortBy,
+                    tag,
+                    FileFieldSet.fromValue(fields),
+                    includeCount,
+                    getBaseUrl(request));
+            return ResponseEntity.ok(files);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/files/user/scroll")
+    public ResponseEntity<FileListDTO> scrollUserFiles(
+            @RequestParam("user") String user,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
             @RequestParam(value = "sortBy", defaultValue = FILENAME) String sortBy,
             @RequestParam(value = "filterByTag", defaultValue = "") String tag,
+            @RequestParam(value = "fields", defaultValue = SUMMARY_FIELDS) String fields,
+            @RequestParam(value = "includeCount", defaultValue = "false") boolean includeCount,
             HttpServletRequest request) {
+        try {
+            FileListDTO userFiles = storageAccessService.scrollUserFiles(user,
+                    cursor,
+                    size,
+                    sortBy,
+                    tag,
+                    FileFieldSet.fromValue(fields),
+                    includeCount,
+                    getBaseUrl(request));
+            return ResponseEntity.ok(userFiles);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<List<CacheStatsDTO>> getCacheStats() {
+        List<CacheStatsDTO> cacheStats = new ArrayList<>(fileMetadataCache.getStats());
+        cacheStats.add(blobContentCache.getStats());
+        return ResponseEntity.ok(cacheStats);
+    }
 
-        Page<FileMetadataDTO> userFiles = storageAccessService.getUserFiles(user,
-                page,
-                sortBy,
-                tag,
-                getBaseUrl(request));
-        return ResponseEntity.ok(userFiles);
+    /**
+     * Generic binary content is treated as undeclared so the actual type is detected from the content
+     */
+    private String getDeclaredContentType(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null || contentType.startsWith(MediaType.APPLICATION_OCTET_STREAM_VALUE)) {
+            return null;
+        }
+        if (contentType.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) {
+            throw new IllegalArgumentException("Multipart content is not supported, use /files/upload instead");
+        }
+        return contentType;
+    }
+
+    private MediaType getMediaType(String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
     }
 
     private String getBaseUrl(HttpServletRequest request) {
@@ -0,0 +1,141 @@
+package com.muhim.storage.controller;
+
+import com.muhim.storage.enums.FileFieldSet;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.service.ReactiveStorageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.FormFieldPart;
+import org.springframework.http.codec.multipart.Part;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Handlers of the reactive stack, the endpoints and responses mirror {@link StorageController}
+ *
+ * @author muhim
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class StorageHandler {
+
+    private static final String FILENAME = "filename;";
+
+    private static final String SUMMARY_FIELDS = "summary";
+
+    private final ReactiveStorageService reactiveStorageService;
+
+    @Autowired
+    public StorageHandler(ReactiveStorageService reactiveStorageService) {
+        this.reactiveStorageService = reactiveStorageService;
+    }
+
+    public Mono<ServerResponse> uploadFile(ServerRequest request) {
+        return request.multipartData()
+                .flatMap(parts -> reactiveStorageService.saveFile(getField(parts, "user"),
+                        (FilePart) parts.getFirst("file"),
+                        FileVisibility.valueOf(getField(parts, "visibility")),
+                        getTags(parts),
+                        getBaseUrl(request)))
+                .flatMap(fileMetadataDTO -> ServerResponse.ok().bodyValue(fileMetadataDTO))
+                .onErrorResume(e -> ServerResponse.status(500).bodyValue(String.valueOf(e.getMessage())));
+    }
+
+    public Mono<ServerResponse> downloadFile(ServerRequest request) {
+        return Mono.defer(() -> reactiveStorageService.getFileDownload(request.pathVariable("id")))
+                .flatMap(fileDownload -> request.checkNotModified(fileDownload.getUploadDate().toInstant(),
+                                fileDownload.getFileRollingHash())
+                        .switchIfEmpty(ServerResponse.ok()
+                                .headers(headers -> headers.setContentDisposition(ContentDisposition.attachment()
+                                        .filename(fileDownload.getFilename(), StandardCharsets.UTF_8)
+                                        .build()))
+                                .contentType(getMediaType(fileDownload.getContentType()))
+                                .contentLength(fileDownload.getFileSize())
+                                .eTag(fileDownload.getFileRollingHash())
+                                .lastModified(fileDownload.getUploadDate().toInstant())
+                                .body(BodyInserters.fromDataBuffers(fileDownload.getContent()))))
+                .onErrorResume(e -> ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> getPublicFiles(ServerRequest request) {
+        return Mono.defer(() -> reactiveStorageService.getPublicFiles(getPage(request),
+                        getSize(request),
+                        request.queryParam("sortBy").orElse(FILENAME),
+                        request.queryParam("filterByTag").orElse(""),
+                        FileFieldSet.fromValue(request.queryParam("fields").orElse(SUMMARY_FIELDS)),
+                        getBaseUrl(request)))
+                .flatMap(files -> ServerResponse.ok().bodyValue(files))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> getUserFiles(ServerRequest request) {
+        return Mono.defer(() -> reactiveStorageService.getUserFiles(request.queryParam("user")
+                                .orElseThrow(() -> new IllegalArgumentException("user is required")),
+                        getPage(request),
+                        getSize(request),
+                        request.queryParam("sortBy").orElse(FILENAME),
+                        request.queryParam("filterByTag").orElse(""),
+                        FileFieldSet.fromValue(request.queryParam("fields").orElse(SUMMARY_FIELDS)),
+                        getBaseUrl(request)))
+                .flatMap(files -> ServerResponse.ok().bodyValue(files))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    private static String getField(MultiValueMap<String, Part> parts, String name) {
+        if (parts.getFirst(name) instanceof FormFieldPart formFieldPart) {
+            return formFieldPart.value();
+        }
+        throw new IllegalArgumentException("Missing field: " + name);
+    }
+
+    /**
+     * Tags can be sent as repeated fields or comma separated, like request parameters on the servlet stack
+     */
+    private static List<String> getTags(MultiValueMap<String, Part> parts) {
+        return parts.getOrDefault("tags", List.of()).stream()
+                .filter(FormFieldPart.class::isInstance)
+                .flatMap(part -> List.of(((FormFieldPart) part).value().split(",")).stream())
+                .map(String::trim)
+                .filter(tag -> !tag.isEmpty())
+                .toList();
+    }
+
+    private static int getPage(ServerRequest request) {
+        return Integer.parseInt(request.queryParam("page").orElse("0"));
+    }
+
+    private static Integer getSize(ServerRequest request) {
+        return request.queryParam("size").map(Integer::valueOf).orElse(null);
+    }
+
+    private static MediaType getMediaType(String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private static String getBaseUrl(ServerRequest request) {
+        return UriComponentsBuilder.fromUri(request.uri())
+                .replacePath(null)
+                .replaceQuery(null)
+                .build()
+                .toUriString();
+    }
+}
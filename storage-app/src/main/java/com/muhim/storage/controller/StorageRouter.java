@@ -0,0 +1,31 @@
+package com.muhim.storage.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Routes of the reactive stack, enabled with the `reactive` profile
+ * Only upload, download and listing are served, the other endpoints need the servlet stack
+ *
+ * @author muhim
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class StorageRouter {
+
+    @Bean
+    public RouterFunction<ServerResponse> storageRoutes(StorageHandler storageHandler) {
+        return route()
+                .path("/api/storage/v1", builder -> builder
+                        .POST("/files/upload", storageHandler::uploadFile)
+                        .GET("/files/{id}/download", storageHandler::downloadFile)
+                        .GET("/files/public", storageHandler::getPublicFiles)
+                        .GET("/files/user", storageHandler::getUserFiles))
+                .build();
+    }
+}
@@ -0,0 +1,21 @@
+package com.muhim.storage.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchUploadResultDTO {
+    private String fileName;
+    private boolean success;
+    /**
+     * Metadata of the stored file, only set on success
+     */
+    private FileMetadataDTO file;
+    /**
+     * Reason the file was rejected, only set on failure
+     */
+    private String error;
+}
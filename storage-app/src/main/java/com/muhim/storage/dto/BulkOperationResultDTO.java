@@ -0,0 +1,19 @@
+package com.muhim.storage.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class BulkOperationResultDTO {
+    /**
+     * Number of files the operation was applied to
+     */
+    private long succeededCount;
+    /**
+     * Reason per filename for files which were requested by name but not modified
+     */
+    private Map<String, String> failures;
+}
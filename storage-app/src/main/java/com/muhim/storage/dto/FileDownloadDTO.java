@@ -0,0 +1,26 @@
+package com.muhim.storage.dto;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.core.io.Resource;
+
+import java.util.Date;
+
+/**
+ * Everything needed to answer a download request, resolved with a single metadata lookup
+ *
+ * @author muhim
+ */
+@Data
+@Builder
+public class FileDownloadDTO {
+    private String filename;
+    private long fileSize;
+    private String contentType;
+    private String fileRollingHash;
+    private Date uploadDate;
+    /**
+     * Lazily opened content, nothing is read before the response is written
+     */
+    private Resource resource;
+}
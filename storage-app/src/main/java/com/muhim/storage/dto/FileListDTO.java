@@ -0,0 +1,21 @@
+package com.muhim.storage.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class FileListDTO {
+    private List<FileMetadataDTO> content;
+    /**
+     * Opaque cursor of the following page, null on the last page
+     */
+    private String nextCursor;
+    private boolean hasNext;
+    /**
+     * Number of matching files, only counted on request
+     */
+    private Long totalElements;
+}
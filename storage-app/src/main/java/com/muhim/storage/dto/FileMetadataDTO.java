@@ -1,5 +1,6 @@
 package com.muhim.storage.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.muhim.storage.enums.FileVisibility;
 import lombok.Builder;
 import lombok.Data;
@@ -9,10 +10,16 @@ import java.util.List;
 
 @Data
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class FileMetadataDTO {
     private String fileName;
     private FileVisibility visibility;
     private List<String> tags;
     private Date uploadDate;
     private String downloadLink;
+    /**
+     * Only set for listings with the `DETAILS` field set
+     */
+    private Long fileSize;
+    private String contentType;
 }
@@ -0,0 +1,27 @@
+package com.muhim.storage.dto;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+import java.util.Date;
+
+/**
+ * Everything needed to answer a download request on the reactive stack
+ *
+ * @author muhim
+ */
+@Data
+@Builder
+public class ReactiveFileDownloadDTO {
+    private String filename;
+    private long fileSize;
+    private String contentType;
+    private String fileRollingHash;
+    private Date uploadDate;
+    /**
+     * Content as GridFS chunks, read from the database only as fast as the client consumes it
+     */
+    private Flux<DataBuffer> content;
+}
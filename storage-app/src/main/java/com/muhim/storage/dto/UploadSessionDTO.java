@@ -0,0 +1,18 @@
+package com.muhim.storage.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+public class UploadSessionDTO {
+    private String sessionId;
+    private String fileName;
+    private Integer totalChunks;
+    private List<Integer> receivedChunks;
+    private long receivedBytes;
+    private Date createdDate;
+}
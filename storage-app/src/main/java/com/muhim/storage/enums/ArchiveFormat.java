@@ -0,0 +1,60 @@
+package com.muhim.storage.enums;
+
+import com.muhim.storage.archive.ArchiveWriter;
+import com.muhim.storage.archive.TarArchiveWriter;
+import com.muhim.storage.archive.ZipArchiveWriter;
+
+import java.io.OutputStream;
+import java.util.function.Function;
+
+/**
+ * Formats a set of files can be downloaded in as a single archive
+ *
+ * @author muhim
+ */
+public enum ArchiveFormat {
+    ZIP("application/zip", "zip", ZipArchiveWriter::new),
+    TAR("application/x-tar", "tar", TarArchiveWriter::new);
+
+    private final String mediaType;
+
+    private final String extension;
+
+    private final Function<OutputStream, ArchiveWriter> writerFactory;
+
+    ArchiveFormat(String mediaType, String extension, Function<OutputStream, ArchiveWriter> writerFactory) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+        this.writerFactory = writerFactory;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param outputStream receives the archive
+     * @return writer appending entries of this format to the stream
+     */
+    public ArchiveWriter open(OutputStream outputStream) {
+        return writerFactory.apply(outputStream);
+    }
+
+    /**
+     * @param value name of the format in any case
+     * @return the matching format
+     * @throws IllegalArgumentException if there is no format with the name
+     */
+    public static ArchiveFormat fromValue(String value) {
+        for (ArchiveFormat archiveFormat : values()) {
+            if (archiveFormat.name().equalsIgnoreCase(value)) {
+                return archiveFormat;
+            }
+        }
+        throw new IllegalArgumentException("Unknown archive format: " + value);
+    }
+}
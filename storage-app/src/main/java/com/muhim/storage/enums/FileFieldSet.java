@@ -0,0 +1,49 @@
+package com.muhim.storage.enums;
+
+import com.muhim.storage.model.FileDetailsProjection;
+import com.muhim.storage.model.FileLinkProjection;
+import com.muhim.storage.model.FileSummaryProjection;
+
+/**
+ * Field sets a file listing can be requested with, only the fields of the set are read from the database
+ *
+ * @author muhim
+ */
+public enum FileFieldSet {
+    /**
+     * File name and download link
+     */
+    LINK(FileLinkProjection.class),
+    /**
+     * File name, download link, visibility, tags and upload date
+     */
+    SUMMARY(FileSummaryProjection.class),
+    /**
+     * All summary fields, file size and content type
+     */
+    DETAILS(FileDetailsProjection.class);
+
+    private final Class<? extends FileLinkProjection> projection;
+
+    FileFieldSet(Class<? extends FileLinkProjection> projection) {
+        this.projection = projection;
+    }
+
+    public Class<? extends FileLinkProjection> getProjection() {
+        return projection;
+    }
+
+    /**
+     * @param value name of the field set in any case
+     * @return the matching field set
+     * @throws IllegalArgumentException if there is no field set with the name
+     */
+    public static FileFieldSet fromValue(String value) {
+        for (FileFieldSet fileFieldSet : values()) {
+            if (fileFieldSet.name().equalsIgnoreCase(value)) {
+                return fileFieldSet;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field set: " + value);
+    }
+}
@@ -0,0 +1,81 @@
+package com.muhim.storage.enums;
+
+import com.muhim.storage.hash.ContentHasher;
+import com.muhim.storage.hash.MessageDigestHasher;
+import com.muhim.storage.hash.TreeHasher;
+import com.muhim.storage.hash.XxHash64Hasher;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Algorithms the `fileRollingHash` of a file can be computed with
+ *
+ * @author muhim
+ */
+public enum HashAlgorithm {
+    /**
+     * Of files stored before the algorithm was recorded
+     */
+    MD5("md5", executor -> new MessageDigestHasher("MD5")),
+    /**
+     * Hardware accelerated by the SHA extensions of current x86 and ARM CPUs
+     */
+    SHA_256("sha-256", executor -> new MessageDigestHasher("SHA-256")),
+    /**
+     * SHA-256 of 1MB leaves hashed in parallel, for large files on machines with spare cores
+     */
+    SHA_256_TREE("sha-256-tree", TreeHasher::new),
+    /**
+     * Non-cryptographic, fastest to find duplicates of a user's own files.
+     * Never the key of content shared between files, see {@link com.muhim.storage.utils.FileUtils#CONTENT_HASH_ALGORITHM}
+     */
+    XXH64("xxh64", executor -> new XxHash64Hasher());
+
+    private final String value;
+
+    private final Function<Executor, ContentHasher> hasherFactory;
+
+    HashAlgorithm(String value, Function<Executor, ContentHasher> hasherFactory) {
+        this.value = value;
+        this.hasherFactory = hasherFactory;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param executor hashes parts of the content in parallel, if the algorithm supports it
+     * @return hasher of one file
+     */
+    public ContentHasher newHasher(Executor executor) {
+        return hasherFactory.apply(executor);
+    }
+
+    /**
+     * Hashes are only comparable to hashes of the same algorithm
+     *
+     * @return values of `hashAlgorithm` of the files hashed with this algorithm,
+     * including none for MD5 of the files stored before it was recorded
+     */
+    public List<HashAlgorithm> storedValues() {
+        return this == MD5 ? Arrays.asList(MD5, null) : List.of(this);
+    }
+
+    /**
+     * @param value name of the algorithm in any case, e.g. `sha-256` or `SHA_256`
+     * @return the matching algorithm
+     * @throws IllegalArgumentException if there is no algorithm with the name
+     */
+    public static HashAlgorithm fromValue(String value) {
+        for (HashAlgorithm hashAlgorithm : values()) {
+            if (hashAlgorithm.value.equalsIgnoreCase(value) || hashAlgorithm.name().equalsIgnoreCase(value)) {
+                return hashAlgorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm: " + value);
+    }
+}
@@ -0,0 +1,30 @@
+package com.muhim.storage.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental hash of file content, fed with the bytes of a file in order while it is read or written.
+ * An instance hashes one file and is used by one thread at a time
+ *
+ * @author muhim
+ */
+public interface ContentHasher {
+    /**
+     * @param bytes  content
+     * @param offset of the first byte to hash
+     * @param length number of bytes to hash
+     */
+    void update(byte[] bytes, int offset, int length);
+
+    /**
+     * @param buffer content from its position to its limit, the position is moved to the limit
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * Completes the hash, no more content can be added afterwards
+     *
+     * @return lower case hex encoded hash of all content
+     */
+    String getHexDigest();
+}
@@ -0,0 +1,53 @@
+package com.muhim.storage.hash;
+
+import com.muhim.storage.config.HashExecutorConfig;
+import com.muhim.storage.enums.HashAlgorithm;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Creates the hashers of the configured `storage.hashing.algorithm`, which new files are hashed with
+ *
+ * @author muhim
+ */
+@Component
+public class ContentHasherFactory {
+
+    private final HashAlgorithm algorithm;
+
+    private final Executor hashExecutor;
+
+    @Autowired
+    public ContentHasherFactory(@Value("${storage.hashing.algorithm:sha-256}") String algorithm,
+                                @Qualifier(HashExecutorConfig.HASH_EXECUTOR) Executor hashExecutor) {
+        this.algorithm = HashAlgorithm.fromValue(algorithm);
+        this.hashExecutor = hashExecutor;
+    }
+
+    /**
+     * @return algorithm of new hashes
+     */
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return hasher of one file with the configured algorithm
+     */
+    public ContentHasher newHasher() {
+        return algorithm.newHasher(hashExecutor);
+    }
+
+    /**
+     * Same hash as {@link #newHasher()}, but parts hashed in parallel otherwise are hashed on the calling thread
+     *
+     * @return hasher of one file with the configured algorithm, which never waits for another thread
+     */
+    public ContentHasher newCallingThreadHasher() {
+        return algorithm.newHasher(Runnable::run);
+    }
+}
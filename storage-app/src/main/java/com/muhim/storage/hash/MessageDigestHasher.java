@@ -0,0 +1,54 @@
+package com.muhim.storage.hash;
+
+import com.muhim.storage.utils.FileUtils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link ContentHasher} of a JDK message digest, which uses the SHA extensions of the CPU where available
+ *
+ * @author muhim
+ */
+public class MessageDigestHasher implements ContentHasher {
+
+    private final MessageDigest messageDigest;
+
+    /**
+     * @param algorithm message digest algorithm name, one every JDK provides e.g. `SHA-256`
+     */
+    public MessageDigestHasher(String algorithm) {
+        this(newMessageDigest(algorithm));
+    }
+
+    /**
+     * @param messageDigest fresh message digest, updated by this hasher only
+     */
+    public MessageDigestHasher(MessageDigest messageDigest) {
+        this.messageDigest = messageDigest;
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        messageDigest.update(bytes, offset, length);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        messageDigest.update(buffer);
+    }
+
+    @Override
+    public String getHexDigest() {
+        return FileUtils.toHexString(messageDigest.digest());
+    }
+
+    static MessageDigest newMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Message digest " + algorithm + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.muhim.storage.hash;
+
+import com.muhim.storage.utils.FileUtils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Tree hash of SHA-256 in the manner of BLAKE3: the content is split into leaves of {@link #LEAF_SIZE},
+ * each leaf is hashed on its own and the digest is the SHA-256 of all leaf digests in order.
+ * Leaves and root are prefixed with distinct bytes, so a leaf can never be taken for a root.
+ * <p>
+ * The first leaf is hashed on the calling thread without copying, so files of one leaf cost no more than
+ * plain SHA-256. Further leaves are copied into buffers and hashed on the executor while the caller
+ * reads on, using as many cores as the executor has threads. At most {@link #MAX_PENDING_LEAVES} buffers
+ * are allocated per hasher and reused for later leaves, when all are pending the caller waits for the oldest
+ *
+ * @author muhim
+ */
+public class TreeHasher implements ContentHasher {
+
+    /**
+     * Part of the hash definition, changing it changes the digest of every file larger than one leaf
+     */
+    static final int LEAF_SIZE = 1024 * 1024;
+
+    static final int MAX_PENDING_LEAVES = 8;
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final byte LEAF_PREFIX = 0;
+
+    private static final byte ROOT_PREFIX = 1;
+
+    /**
+     * Leaf digests of the executor threads, reset by every digest
+     */
+    private static final ThreadLocal<MessageDigest> LEAF_DIGEST =
+            ThreadLocal.withInitial(() -> MessageDigestHasher.newMessageDigest(ALGORITHM));
+
+    private final Executor executor;
+
+    private final List<CompletableFuture<byte[]>> leafDigests = new ArrayList<>();
+
+    /**
+     * Leaves handed to the executor whose buffer may still be in use, oldest first
+     */
+    private final Queue<CompletableFuture<byte[]>> pendingLeaves = new ArrayDeque<>();
+
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    private int allocatedBuffers;
+
+    /**
+     * Digest of the first leaf, hashed directly on the calling thread
+     */
+    private final MessageDigest firstLeafDigest = newLeafDigest();
+
+    private byte[] leaf;
+
+    private int leafLength;
+
+    private long length;
+
+    /**
+     * @param executor hashes leaves after the first one, rejected leaves are hashed on the calling thread
+     */
+    public TreeHasher(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int leafBytes = Math.min(length, LEAF_SIZE - leafLength);
+            if (this.length < LEAF_SIZE) {
+                firstLeafDigest.update(bytes, offset, leafBytes);
+            } else {
+                System.arraycopy(bytes, offset, leafBuffer(), leafLength, leafBytes);
+            }
+            leafAdded(leafBytes);
+            offset += leafBytes;
+            length -= leafBytes;
+        }
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            int leafBytes = Math.min(buffer.remaining(), LEAF_SIZE - leafLength);
+            if (length < LEAF_SIZE) {
+                firstLeafDigest.update(buffer.slice(buffer.position(), leafBytes));
+                buffer.position(buffer.position() + leafBytes);
+            } else {
+                buffer.get(leafBuffer(), leafLength, leafBytes);
+            }
+            leafAdded(leafBytes);
+        }
+    }
+
+    @Override
+    public String getHexDigest() {
+        if (leafLength > 0) {
+            completeLeaf();
+        }
+        MessageDigest rootDigest = MessageDigestHasher.newMessageDigest(ALGORITHM);
+        rootDigest.update(ROOT_PREFIX);
+        for (CompletableFuture<byte[]> leafDigest : leafDigests) {
+            rootDigest.update(leafDigest.join());
+        }
+        return FileUtils.toHexString(rootDigest.digest());
+    }
+
+    private void leafAdded(int leafBytes) {
+        leafLength += leafBytes;
+        length += leafBytes;
+        if (leafLength == LEAF_SIZE) {
+            completeLeaf();
+        }
+    }
+
+    private void completeLeaf() {
+        if (leaf == null) {
+            leafDigests.add(CompletableFuture.completedFuture(firstLeafDigest.digest()));
+        } else {
+            CompletableFuture<byte[]> leafDigest = hashLeaf(leaf, leafLength);
+            leafDigests.add(leafDigest);
+            pendingLeaves.add(leafDigest);
+            leaf = null;
+        }
+        leafLength = 0;
+    }
+
+    private CompletableFuture<byte[]> hashLeaf(byte[] buffer, int bufferLength) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                MessageDigest leafDigest = LEAF_DIGEST.get();
+                leafDigest.update(LEAF_PREFIX);
+                leafDigest.update(buffer, 0, bufferLength);
+                byte[] digest = leafDigest.digest();
+                // released before the future completes, so a completed leaf always has its buffer back
+                freeBuffers.add(buffer);
+                return digest;
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            MessageDigest leafDigest = newLeafDigest();
+            leafDigest.update(buffer, 0, bufferLength);
+            freeBuffers.add(buffer);
+            return CompletableFuture.completedFuture(leafDigest.digest());
+        }
+    }
+
+    private byte[] leafBuffer() {
+        if (leaf != null) {
+            return leaf;
+        }
+        leaf = freeBuffers.poll();
+        while (leaf == null) {
+            if (allocatedBuffers < MAX_PENDING_LEAVES) {
+                allocatedBuffers++;
+                leaf = new byte[LEAF_SIZE];
+            } else {
+                pendingLeaves.remove().join();
+                leaf = freeBuffers.poll();
+            }
+        }
+        return leaf;
+    }
+
+    private static MessageDigest newLeafDigest() {
+        MessageDigest leafDigest = MessageDigestHasher.newMessageDigest(ALGORITHM);
+        leafDigest.update(LEAF_PREFIX);
+        return leafDigest;
+    }
+}
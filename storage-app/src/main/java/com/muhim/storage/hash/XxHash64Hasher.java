@@ -0,0 +1,150 @@
+package com.muhim.storage.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HexFormat;
+
+/**
+ * Streaming XXH64 with seed 0, a non-cryptographic hash several times faster than SHA-256.
+ * Collisions can be constructed deliberately, so it is only fit to find duplicates of a user's own files,
+ * never to address shared content. The digest is the 64 bit hash as 16 hex digits, most significant first
+ *
+ * @author muhim
+ */
+public class XxHash64Hasher implements ContentHasher {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_SIZE = 32;
+
+    /**
+     * Content of direct buffers is copied through a scratch array of this size
+     */
+    private static final int SCRATCH_SIZE = 8192;
+
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private long acc1 = PRIME_1 + PRIME_2;
+    private long acc2 = PRIME_2;
+    private long acc3 = 0;
+    private long acc4 = -PRIME_1;
+
+    /**
+     * Bytes of an incomplete stripe, hashed once the next update completes it
+     */
+    private final byte[] stripe = new byte[STRIPE_SIZE];
+    private int stripeLength;
+
+    private long totalLength;
+
+    private byte[] scratch;
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        if (stripeLength > 0) {
+            int copied = Math.min(length, STRIPE_SIZE - stripeLength);
+            System.arraycopy(bytes, offset, stripe, stripeLength, copied);
+            stripeLength += copied;
+            offset += copied;
+            length -= copied;
+            if (stripeLength < STRIPE_SIZE) {
+                return;
+            }
+            consumeStripe(stripe, 0);
+            stripeLength = 0;
+        }
+        int end = offset + length;
+        for (; offset + STRIPE_SIZE <= end; offset += STRIPE_SIZE) {
+            consumeStripe(bytes, offset);
+        }
+        stripeLength = end - offset;
+        System.arraycopy(bytes, offset, stripe, 0, stripeLength);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), scratch.length);
+            buffer.get(scratch, 0, length);
+            update(scratch, 0, length);
+        }
+    }
+
+    @Override
+    public String getHexDigest() {
+        return HexFormat.of().toHexDigits(digest());
+    }
+
+    long digest() {
+        long hash;
+        if (totalLength >= STRIPE_SIZE) {
+            hash = Long.rotateLeft(acc1, 1) + Long.rotateLeft(acc2, 7) +
+                    Long.rotateLeft(acc3, 12) + Long.rotateLeft(acc4, 18);
+            hash = mergeRound(hash, acc1);
+            hash = mergeRound(hash, acc2);
+            hash = mergeRound(hash, acc3);
+            hash = mergeRound(hash, acc4);
+        } else {
+            hash = PRIME_5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        for (; offset + Long.BYTES <= stripeLength; offset += Long.BYTES) {
+            hash ^= round(0, (long) LONG_LE.get(stripe, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (offset + Integer.BYTES <= stripeLength) {
+            hash ^= Integer.toUnsignedLong((int) INT_LE.get(stripe, offset)) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            offset += Integer.BYTES;
+        }
+        for (; offset < stripeLength; offset++) {
+            hash ^= (stripe[offset] & 0xFFL) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void consumeStripe(byte[] bytes, int offset) {
+        acc1 = round(acc1, (long) LONG_LE.get(bytes, offset));
+        acc2 = round(acc2, (long) LONG_LE.get(bytes, offset + 8));
+        acc3 = round(acc3, (long) LONG_LE.get(bytes, offset + 16));
+        acc4 = round(acc4, (long) LONG_LE.get(bytes, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME_1;
+    }
+
+    private static long mergeRound(long hash, long acc) {
+        hash ^= round(0, acc);
+        return hash * PRIME_1 + PRIME_4;
+    }
+}
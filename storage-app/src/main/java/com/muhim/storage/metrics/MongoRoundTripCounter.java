@@ -0,0 +1,51 @@
+package com.muhim.storage.metrics;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the MongoDB commands sent while a request is handled, registered with the mongo clients as command listener
+ * Commands are attributed to the request of the thread sending them, so commands sent from executors,
+ * e.g. by read-ahead of downloads or concurrent stores of batch uploads, and from the reactive stack are not counted
+ *
+ * @author muhim
+ */
+@Component
+public class MongoRoundTripCounter implements CommandListener, MongoClientSettingsBuilderCustomizer {
+
+    private final ThreadLocal<long[]> roundTrips = new ThreadLocal<>();
+
+    @Override
+    public void customize(MongoClientSettings.Builder clientSettingsBuilder) {
+        clientSettingsBuilder.addCommandListener(this);
+    }
+
+    /**
+     * Start counting the commands sent by this thread
+     */
+    public void start() {
+        roundTrips.set(new long[1]);
+    }
+
+    /**
+     * Stop counting the commands sent by this thread
+     *
+     * @return commands sent since {@link #start()}
+     */
+    public long stop() {
+        long[] count = roundTrips.get();
+        roundTrips.remove();
+        return count != null ? count[0] : 0;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        long[] count = roundTrips.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.muhim.storage.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the MongoDB round trips of every storage API request by endpoint, and the time to the first byte,
+ * the duration and the bytes sent of downloads. Archives are streamed asynchronously,
+ * their download is recorded once the async request completes
+ *
+ * @author muhim
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final String API_PATH = "/api/storage/";
+
+    private final MeterRegistry meterRegistry;
+
+    private final MongoRoundTripCounter mongoRoundTripCounter;
+
+    @Autowired
+    public RequestMetricsFilter(MeterRegistry meterRegistry, MongoRoundTripCounter mongoRoundTripCounter) {
+        this.meterRegistry = meterRegistry;
+        this.mongoRoundTripCounter = mongoRoundTripCounter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        MeteredResponse meteredResponse = new MeteredResponse(response);
+        mongoRoundTripCounter.start();
+        try {
+            filterChain.doFilter(request, meteredResponse);
+        } finally {
+            long roundTrips = mongoRoundTripCounter.stop();
+            // the pattern of the handler, so ids in the path do not create a meter per file
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (uri != null) {
+                DistributionSummary.builder("storage.request.mongo.round-trips")
+                        .tag("uri", uri.toString())
+                        .description("MongoDB commands sent per request")
+                        .register(meterRegistry)
+                        .record(roundTrips);
+                if (isDownload(uri.toString())) {
+                    recordDownload(request, meteredResponse, uri.toString());
+                }
+            }
+        }
+    }
+
+    private boolean isDownload(String uri) {
+        return uri.endsWith("/download") || uri.endsWith("/archive");
+    }
+
+    private void recordDownload(HttpServletRequest request, MeteredResponse meteredResponse, String uri) {
+        if (!request.isAsyncStarted()) {
+            meteredResponse.record(uri);
+            return;
+        }
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                meteredResponse.record(uri);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                // completed afterwards
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                // completed afterwards
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // the same download
+            }
+        });
+    }
+
+    /**
+     * Response which notes when the first byte is written to it and how many are written
+     */
+    private class MeteredResponse extends HttpServletResponseWrapper {
+
+        private final long startNanos = System.nanoTime();
+
+        private MeteredOutputStream outputStream;
+
+        private MeteredResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new MeteredOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        void record(String uri) {
+            long endNanos = System.nanoTime();
+            Timer.builder("storage.download.duration")
+                    .tag("uri", uri)
+                    .description("Time until a download is completely written")
+                    .register(meterRegistry)
+                    .record(endNanos - startNanos, TimeUnit.NANOSECONDS);
+            if (outputStream == null || outputStream.byteCount == 0) {
+                return;
+            }
+            Timer.builder("storage.download.time-to-first-byte")
+                    .tag("uri", uri)
+                    .description("Time until the first byte of a download is written")
+                    .register(meterRegistry)
+                    .record(outputStream.firstByteNanos - startNanos, TimeUnit.NANOSECONDS);
+            Counter.builder("storage.download.bytes")
+                    .tag("uri", uri)
+                    .description("Bytes sent by downloads")
+                    .baseUnit(BaseUnits.BYTES)
+                    .register(meterRegistry)
+                    .increment(outputStream.byteCount);
+        }
+    }
+
+    /**
+     * Written by one thread at a time, an async download is recorded on another thread once it completed
+     */
+    private static class MeteredOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream outputStream;
+
+        private volatile long firstByteNanos;
+
+        private volatile long byteCount;
+
+        private MeteredOutputStream(ServletOutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            written(1);
+            outputStream.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            written(len);
+            outputStream.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return outputStream.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            outputStream.setWriteListener(writeListener);
+        }
+
+        private void written(int len) {
+            if (byteCount == 0 && len > 0) {
+                firstByteNanos = System.nanoTime();
+            }
+            byteCount += len;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.muhim.storage.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Model class for a content-addressed blob shared by one or more file metadata records
+ *
+ * @author muhim
+ */
+@Data
+@Document
+@Builder
+public class BlobReference {
+    /**
+     * SHA-256 of the blob content
+     */
+    @Id
+    private String contentHash;
+    @Indexed(name = "fileId")
+    private ObjectId fileId;
+    private long referenceCount;
+    private long fileSize;
+    private Date createdDate;
+}
@@ -0,0 +1,24 @@
+package com.muhim.storage.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Model class for a blob which is no longer referenced and waits to be deleted from the blob store
+ * by {@link com.muhim.storage.service.BlobGarbageCollector}
+ *
+ * @author muhim
+ */
+@Data
+@Document
+@Builder
+public class BlobTombstone {
+    @Id
+    private ObjectId blobId;
+    private Date createdDate;
+}
@@ -0,0 +1,12 @@
+package com.muhim.storage.model;
+
+/**
+ * Projection of file metadata with the file listing fields, size and content type
+ *
+ * @author muhim
+ */
+public interface FileDetailsProjection extends FileSummaryProjection {
+    long getFileSize();
+
+    String getContentType();
+}
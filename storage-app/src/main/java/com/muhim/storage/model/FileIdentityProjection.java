@@ -0,0 +1,16 @@
+package com.muhim.storage.model;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Projection of file metadata with the fields identifying a file of a user
+ *
+ * @author muhim
+ */
+public interface FileIdentityProjection {
+    ObjectId getFileId();
+
+    String getFilename();
+
+    String getFileRollingHash();
+}
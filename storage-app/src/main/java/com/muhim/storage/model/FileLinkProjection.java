@@ -0,0 +1,14 @@
+package com.muhim.storage.model;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Projection of file metadata with the fields needed for a download link
+ *
+ * @author muhim
+ */
+public interface FileLinkProjection {
+    ObjectId getFileId();
+
+    String getFilename();
+}
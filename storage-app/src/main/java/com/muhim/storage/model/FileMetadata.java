@@ -1,10 +1,15 @@
 package com.muhim.storage.model;
 
 import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.enums.HashAlgorithm;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -12,22 +17,82 @@ import java.util.List;
 
 /**
  * Model class for handling file metadata in Database
+ * Listing indexes follow the equality, sort, range order: the filter on visibility or user,
+ * then the sort field and `_id` as tie-breaker, so pages are read in index order without a sort stage.
+ * Tag filtered listings have the tag between the filter and the sort field, and files of other hash algorithms
+ * than the configured one are found by `hashAlgorithm` for their migration
  *
  * @author muhim
  */
 @Data
 @Document
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@CompoundIndex(name = "user_fileRollingHash", def = "{'user': 1, 'fileRollingHash': 1}")
+@CompoundIndex(name = "hashAlgorithm", def = "{'hashAlgorithm': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_filename", def = "{'visibility': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_uploadDate", def = "{'visibility': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_fileSize", def = "{'visibility': 1, 'fileSize': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_contentType", def = "{'visibility': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "user_filename", def = "{'user': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "user_uploadDate", def = "{'user': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "user_fileSize", def = "{'user': 1, 'fileSize': 1, '_id': 1}")
+@CompoundIndex(name = "user_contentType", def = "{'user': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_normalizedTags_filename",
+        def = "{'visibility': 1, 'normalizedTags': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_normalizedTags_uploadDate",
+        def = "{'visibility': 1, 'normalizedTags': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_normalizedTags_fileSize",
+        def = "{'visibility': 1, 'normalizedTags': 1, 'fileSize': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_normalizedTags_contentType",
+        def = "{'visibility': 1, 'normalizedTags': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "user_normalizedTags_filename",
+        def = "{'user': 1, 'normalizedTags': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "user_normalizedTags_uploadDate",
+        def = "{'user': 1, 'normalizedTags': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "user_normalizedTags_fileSize",
+        def = "{'user': 1, 'normalizedTags': 1, 'fileSize': 1, '_id': 1}")
+@CompoundIndex(name = "user_normalizedTags_contentType",
+        def = "{'user': 1, 'normalizedTags': 1, 'contentType': 1, '_id': 1}")
 public class FileMetadata {
     @Id
     private String id;
+    /**
+     * Public id of the file, used in the download link
+     */
+    @Indexed(name = "fileId", unique = true, sparse = true)
     private ObjectId fileId;
+    /**
+     * Blob id holding the content when it differs from fileId, i.e. a shared content-addressed blob
+     */
+    @Indexed(name = "blobId", sparse = true)
+    private ObjectId blobId;
     private String user;
     private String filename;
     private FileVisibility visibility;
     private List<String> tags;
+    /**
+     * Lower case copy of tags, used for case-insensitive tag filters
+     */
+    private List<String> normalizedTags;
     private Date uploadDate;
     private String contentType;
     private long fileSize;
     private String fileRollingHash;
+    /**
+     * Algorithm of fileRollingHash, not set for files stored before it was recorded, which are MD5
+     */
+    private HashAlgorithm hashAlgorithm;
+    /**
+     * SHA-256 of the content, only set for files stored content-addressed
+     */
+    private String contentHash;
+
+    /**
+     * @return blob id of the stored content
+     */
+    public ObjectId getStorageId() {
+        return blobId != null ? blobId : fileId;
+    }
 }
@@ -0,0 +1,19 @@
+package com.muhim.storage.model;
+
+import com.muhim.storage.enums.FileVisibility;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Projection of file metadata with the fields shown in file listings
+ *
+ * @author muhim
+ */
+public interface FileSummaryProjection extends FileLinkProjection {
+    FileVisibility getVisibility();
+
+    List<String> getTags();
+
+    Date getUploadDate();
+}
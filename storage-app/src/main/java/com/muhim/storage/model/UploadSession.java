@@ -0,0 +1,54 @@
+package com.muhim.storage.model;
+
+import com.muhim.storage.enums.FileVisibility;
+import lombok.Builder;
+import lombok.Data;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model class for a resumable upload, the file is received as numbered chunks
+ * which are stored as separate blobs until the session is committed
+ *
+ * @author muhim
+ */
+@Data
+@Document
+@Builder
+public class UploadSession {
+    @Id
+    private String id;
+    private String user;
+    private String filename;
+    private FileVisibility visibility;
+    private List<String> tags;
+    private String contentType;
+    /**
+     * Expected number of chunks, optional
+     */
+    private Integer totalChunks;
+    /**
+     * Received chunks by chunk index
+     */
+    private Map<String, UploadChunk> chunks;
+    private boolean committing;
+    @Indexed(name = "createdDate")
+    private Date createdDate;
+
+    /**
+     * A received chunk of an upload session
+     */
+    @Data
+    @Builder
+    public static class UploadChunk {
+        private ObjectId blobId;
+        private long size;
+        private String chunkHash;
+    }
+}
@@ -1,36 +1,101 @@
 package com.muhim.storage.repository;
 
 import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.model.FileIdentityProjection;
 import com.muhim.storage.model.FileMetadata;
 import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 
 /**
  * Wrapper interface to enhance operations and provide additional queries to MongoDB
+ * Listing queries take the projection type, so only the fields of the projection are read
  *
  * @author muhim
  */
 public interface FileMetaDataRepository extends MongoRepository<FileMetadata, String> {
     boolean existsByUserAndFilename(String user, String filename);
 
-    boolean existsByFileId(ObjectId fileId);
+    /**
+     * @param hashAlgorithms see {@link HashAlgorithm#storedValues()}, hashes of other algorithms are not compared
+     */
+    boolean existsByUserAndFileRollingHashAndHashAlgorithmIn(String user,
+                                                             String fileRollingHash,
+                                                             Collection<HashAlgorithm> hashAlgorithms);
+
+    <T> Page<T> findByVisibility(FileVisibility visibility, Pageable pageable, Class<T> type);
+
+    /**
+     * @param normalizedTag lower case tag, see {@link com.muhim.storage.utils.FileUtils#normalizeTags}
+     */
+    <T> Page<T> findByVisibilityAndNormalizedTags(FileVisibility visibility,
+                                                  String normalizedTag,
+                                                  Pageable pageable,
+                                                  Class<T> type);
+
+    <T> Page<T> findByUser(String user, Pageable pageable, Class<T> type);
+
+    /**
+     * @param normalizedTag lower case tag, see {@link com.muhim.storage.utils.FileUtils#normalizeTags}
+     */
+    <T> Page<T> findByUserAndNormalizedTags(String user,
+                                            String normalizedTag,
+                                            Pageable pageable,
+                                            Class<T> type);
+
+    <T> Window<T> findByVisibility(FileVisibility visibility,
+                                   ScrollPosition position,
+                                   Sort sort,
+                                   Limit limit,
+                                   Class<T> type);
+
+    <T> Window<T> findByVisibilityAndNormalizedTags(FileVisibility visibility,
+                                                    String normalizedTag,
+                                                    ScrollPosition position,
+                                                    Sort sort,
+                                                    Limit limit,
+                                                    Class<T> type);
+
+    <T> Window<T> findByUser(String user, ScrollPosition position, Sort sort, Limit limit, Class<T> type);
+
+    <T> Window<T> findByUserAndNormalizedTags(String user,
+                                              String normalizedTag,
+                                              ScrollPosition position,
+                                              Sort sort,
+                                              Limit limit,
+                                              Class<T> type);
+
+    long countByVisibility(FileVisibility visibility);
 
-    boolean existsByUserAndFileRollingHash(String user, String fileRollingHash);
+    long countByVisibilityAndNormalizedTags(FileVisibility visibility, String normalizedTag);
 
-    Page<FileMetadata> findByVisibility(FileVisibility visibility, Pageable pageable);
+    long countByUser(String user);
 
-    Page<FileMetadata> findByVisibilityAndTagsIgnoreCase(FileVisibility visibility,
-                                                         String tag,
-                                                         Pageable pageable);
+    long countByUserAndNormalizedTags(String user, String normalizedTag);
 
-    Page<FileMetadata> findByUser(String user, Pageable pageable);
+    /**
+     * Batched existence check of many filenames, a single `$in` query
+     */
+    List<FileIdentityProjection> findByUserAndFilenameIn(String user, Collection<String> filenames);
 
-    Page<FileMetadata> findByUserAndTagsIgnoreCase(String user,
-                                                   String tag,
-                                                   Pageable pageable);
+    /**
+     * Batched existence check of many rolling hashes, a single `$in` query
+     *
+     * @param hashAlgorithms see {@link HashAlgorithm#storedValues()}, hashes of other algorithms are not compared
+     */
+    List<FileIdentityProjection> findByUserAndFileRollingHashInAndHashAlgorithmIn(String user,
+                                                                                  Collection<String> fileRollingHashes,
+                                                                                  Collection<HashAlgorithm> hashAlgorithms);
 
     FileMetadata findByFileId(ObjectId fileId);
 
@@ -0,0 +1,175 @@
+package com.muhim.storage.repository;
+
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.model.BlobReference;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.model.UploadSession;
+import com.mongodb.MongoException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the indexes declared on {@link FileMetadata} and the other persisted types once the application is ready,
+ * fills `normalizedTags` of files stored before it existed and checks that every query shape
+ * of {@link FileMetaDataRepository} is planned on an index.
+ * Failures are logged, so the application still starts while the database is unreachable
+ *
+ * @author muhim
+ */
+@Slf4j
+@Component
+public class FileMetadataIndexInitializer {
+
+    private static final List<Class<?>> INDEXED_TYPES = List.of(FileMetadata.class, BlobReference.class,
+            UploadSession.class);
+
+    /**
+     * Fields listings can be sorted by, see {@link com.muhim.storage.service.StorageAccessServiceImpl}
+     */
+    private static final List<String> SORT_FIELDS = List.of("filename", "uploadDate", "fileSize", "contentType");
+
+    private final MongoTemplate mongoTemplate;
+
+    private final boolean enabled;
+
+    @Autowired
+    public FileMetadataIndexInitializer(MongoTemplate mongoTemplate,
+                                        @Value("${storage.index-bootstrap.enabled:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ensureIndexes();
+            backfillNormalizedTags();
+            checkQueryPlans();
+        } catch (DataAccessException | MongoException e) {
+            log.warn("Index bootstrap of file metadata failed: {}", e.getMessage());
+        }
+    }
+
+    void ensureIndexes() {
+        MongoPersistentEntityIndexResolver indexResolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> indexedType : INDEXED_TYPES) {
+            IndexOperations indexOperations = mongoTemplate.indexOps(indexedType);
+            for (IndexDefinition indexDefinition : indexResolver.resolveIndexFor(indexedType)) {
+                try {
+                    indexOperations.ensureIndex(indexDefinition);
+                } catch (DataAccessResourceFailureException e) {
+                    throw e;
+                } catch (DataAccessException e) {
+                    // e.g. existing duplicates violate a unique index, the other indexes are still created
+                    log.warn("Could not create index {} on {}: {}", indexDefinition.getIndexKeys().toJson(),
+                            indexedType.getSimpleName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Files stored before tags were normalized get `normalizedTags` computed by the database
+     */
+    void backfillNormalizedTags() {
+        Document normalizedTags = new Document("$map", new Document("input", "$tags")
+                .append("as", "tag")
+                .append("in", new Document("$toLower", "$$tag")));
+        long modifiedCount = mongoTemplate.getCollection(mongoTemplate.getCollectionName(FileMetadata.class))
+                .updateMany(new Document("normalizedTags", new Document("$exists", false)),
+                        List.of(new Document("$set", new Document("normalizedTags", normalizedTags))))
+                .getModifiedCount();
+        if (modifiedCount > 0) {
+            log.info("Normalized tags of {} files", modifiedCount);
+        }
+    }
+
+    /**
+     * Explains each query shape and warns about plans which scan the collection or sort in memory
+     *
+     * @return the query shapes which are not fully served by an index
+     */
+    List<String> checkQueryPlans() {
+        List<String> unindexedQueries = new ArrayList<>();
+        for (Map.Entry<String, Document> query : queryShapes().entrySet()) {
+            Document explain = mongoTemplate.getDb().runCommand(new Document("explain", query.getValue())
+                    .append("verbosity", "queryPlanner"));
+            Object winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan");
+            if (containsStage(winningPlan, "COLLSCAN") || containsStage(winningPlan, "SORT")) {
+                log.warn("Query {} is not served by an index, winning plan: {}", query.getKey(), winningPlan);
+                unindexedQueries.add(query.getKey());
+            }
+        }
+        return unindexedQueries;
+    }
+
+    private Map<String, Document> queryShapes() {
+        String collectionName = mongoTemplate.getCollectionName(FileMetadata.class);
+        Map<String, Document> queryShapes = new LinkedHashMap<>();
+        queryShapes.put("findByFileId", find(collectionName, new Document("fileId", new ObjectId()), null));
+        queryShapes.put("findByUserAndFilename", find(collectionName,
+                new Document("user", "").append("filename", ""), null));
+        queryShapes.put("existsByUserAndFileRollingHashAndHashAlgorithmIn", find(collectionName,
+                new Document("user", "").append("fileRollingHash", "")
+                        .append("hashAlgorithm", new Document("$in", List.of(HashAlgorithm.SHA_256.name()))), null));
+        queryShapes.put("FileHashMigration.migrate", find(collectionName,
+                new Document("hashAlgorithm", new Document("$in", Arrays.asList(null, HashAlgorithm.MD5.name()))),
+                new Document("_id", 1)));
+        for (String sortField : SORT_FIELDS) {
+            Document sort = new Document(sortField, 1).append("_id", 1);
+            queryShapes.put("findByVisibility sorted by " + sortField, find(collectionName,
+                    new Document("visibility", FileVisibility.PUBLIC.name()), sort));
+            queryShapes.put("findByUser sorted by " + sortField, find(collectionName,
+                    new Document("user", ""), sort));
+            queryShapes.put("findByVisibilityAndNormalizedTags sorted by " + sortField, find(collectionName,
+                    new Document("visibility", FileVisibility.PUBLIC.name()).append("normalizedTags", ""), sort));
+            queryShapes.put("findByUserAndNormalizedTags sorted by " + sortField, find(collectionName,
+                    new Document("user", "").append("normalizedTags", ""), sort));
+        }
+        return queryShapes;
+    }
+
+    private static Document find(String collectionName, Document filter, Document sort) {
+        Document find = new Document("find", collectionName).append("filter", filter);
+        if (sort != null) {
+            find.append("sort", sort).append("limit", 5);
+        }
+        return find;
+    }
+
+    private static boolean containsStage(Object plan, String stage) {
+        if (plan instanceof Document document) {
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            return document.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (plan instanceof List<?> list) {
+            return list.stream().anyMatch(value -> containsStage(value, stage));
+        }
+        return false;
+    }
+}
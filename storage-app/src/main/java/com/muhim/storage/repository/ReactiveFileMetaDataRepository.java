@@ -0,0 +1,27 @@
+package com.muhim.storage.repository;
+
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Non-blocking counterpart of {@link FileMetaDataRepository} used by the reactive stack
+ *
+ * @author muhim
+ */
+public interface ReactiveFileMetaDataRepository extends ReactiveMongoRepository<FileMetadata, String> {
+    Mono<Boolean> existsByUserAndFilename(String user, String filename);
+
+    /**
+     * @param hashAlgorithms see {@link HashAlgorithm#storedValues()}, hashes of other algorithms are not compared
+     */
+    Mono<Boolean> existsByUserAndFileRollingHashAndHashAlgorithmIn(String user,
+                                                                   String fileRollingHash,
+                                                                   Collection<HashAlgorithm> hashAlgorithms);
+
+    Mono<FileMetadata> findByFileId(ObjectId fileId);
+}
@@ -0,0 +1,12 @@
+package com.muhim.storage.repository;
+
+import com.muhim.storage.model.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Repository for resumable upload sessions
+ *
+ * @author muhim
+ */
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+}
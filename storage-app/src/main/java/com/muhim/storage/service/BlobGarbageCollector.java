@@ -0,0 +1,35 @@
+package com.muhim.storage.service;
+
+import org.bson.types.ObjectId;
+
+import java.util.Collection;
+
+/**
+ * Deferred deletion of blobs, deleting the content of a file only records a tombstone
+ * and the blob store is cleaned up in the background
+ *
+ * @author muhim
+ */
+public interface BlobGarbageCollector {
+    /**
+     * Record tombstones for the blobs, they are deleted by the next {@link #reclaim()}
+     *
+     * @param blobIds ids of blobs which are no longer referenced
+     */
+    void markForDeletion(Collection<ObjectId> blobIds);
+
+    /**
+     * Delete tombstoned blobs from the blob store in throttled batches
+     *
+     * @return number of reclaimed blobs
+     */
+    int reclaim();
+
+    /**
+     * Expire stale upload sessions and tombstone blobs which no file, shared blob or upload session references,
+     * e.g. left behind by a failed upload
+     *
+     * @return number of blobs marked for deletion
+     */
+    int sweepOrphans();
+}
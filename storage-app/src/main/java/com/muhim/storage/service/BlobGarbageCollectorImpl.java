@@ -0,0 +1,213 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.model.BlobReference;
+import com.muhim.storage.model.BlobTombstone;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.model.UploadSession;
+import com.muhim.storage.model.UploadSession.UploadChunk;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * BlobGarbageCollector implementation
+ * References to a blob are always removed before its tombstone is written, so a failure in between
+ * leaves an orphan for {@link #sweepOrphans()} but never a tombstone of a referenced blob.
+ * A tombstone is only removed after its blob is deleted, so an interrupted reclaim is retried.
+ * Both steps are idempotent, several application instances may run them concurrently
+ *
+ * @author muhim
+ */
+@Service
+public class BlobGarbageCollectorImpl implements BlobGarbageCollector {
+
+    private static final String ID = "_id";
+    private static final String FILE_ID = "fileId";
+    private static final String BLOB_ID = "blobId";
+    private static final String CREATED_DATE = "createdDate";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final BlobStore blobStore;
+
+    private final int batchSize;
+
+    private final int maxBatchesPerRun;
+
+    private final Duration batchPause;
+
+    private final Duration orphanGracePeriod;
+
+    private final Duration uploadSessionTtl;
+
+    /**
+     * Last blob checked by the orphan sweep, the next sweep continues after it
+     */
+    private final AtomicReference<ObjectId> sweepPosition = new AtomicReference<>();
+
+    @Autowired
+    public BlobGarbageCollectorImpl(MongoTemplate mongoTemplate,
+                                    BlobStore blobStore,
+                                    @Value("${storage.blob-gc.batch-size:100}") int batchSize,
+                                    @Value("${storage.blob-gc.max-batches-per-run:50}") int maxBatchesPerRun,
+                                    @Value("${storage.blob-gc.batch-pause:PT0.1S}") Duration batchPause,
+                                    @Value("${storage.blob-gc.orphan-grace-period:PT6H}") Duration orphanGracePeriod,
+                                    @Value("${storage.blob-gc.upload-session-ttl:P1D}") Duration uploadSessionTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.batchPause = batchPause;
+        this.orphanGracePeriod = orphanGracePeriod;
+        this.uploadSessionTtl = uploadSessionTtl;
+    }
+
+    @Override
+    public void markForDeletion(Collection<ObjectId> blobIds) {
+        if (blobIds.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BlobTombstone.class);
+        for (ObjectId blobId : blobIds) {
+            bulkOperations.upsert(Query.query(Criteria.where(ID).is(blobId)),
+                    new Update().setOnInsert(CREATED_DATE, now));
+        }
+        bulkOperations.execute();
+    }
+
+    @Override
+    public int reclaim() {
+        int reclaimedCount = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<ObjectId> blobIds = mongoTemplate.find(new Query().limit(batchSize), BlobTombstone.class).stream()
+                    .map(BlobTombstone::getBlobId)
+                    .toList();
+            if (blobIds.isEmpty()) {
+                break;
+            }
+            blobStore.deleteAll(blobIds);
+            mongoTemplate.remove(Query.query(Criteria.where(ID).in(blobIds)), BlobTombstone.class);
+            reclaimedCount += blobIds.size();
+            if (blobIds.size() < batchSize || !pause()) {
+                break;
+            }
+        }
+        return reclaimedCount;
+    }
+
+    @Override
+    public int sweepOrphans() {
+        expireUploadSessions();
+        Set<ObjectId> uploadChunkBlobIds = findUploadChunkBlobIds();
+        // blobs younger than the grace period may belong to an upload which has not saved its metadata yet
+        ObjectId sweepBefore = new ObjectId(Date.from(Instant.now().minus(orphanGracePeriod)));
+
+        int orphanCount = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<ObjectId> blobIds = blobStore.listBlobIds(sweepPosition.get(), sweepBefore, batchSize);
+            if (blobIds.isEmpty()) {
+                sweepPosition.set(null);
+                break;
+            }
+            Set<ObjectId> referencedBlobIds = findReferencedBlobIds(blobIds);
+            List<ObjectId> orphanBlobIds = blobIds.stream()
+                    .filter(blobId -> !referencedBlobIds.contains(blobId) && !uploadChunkBlobIds.contains(blobId))
+                    .toList();
+            markForDeletion(orphanBlobIds);
+            orphanCount += orphanBlobIds.size();
+
+            // start over with the oldest blob once the end is reached
+            sweepPosition.set(blobIds.size() < batchSize ? null : blobIds.get(blobIds.size() - 1));
+            if (blobIds.size() < batchSize || !pause()) {
+                break;
+            }
+        }
+        return orphanCount;
+    }
+
+    /**
+     * Deletes sessions which were neither committed nor aborted in time and tombstones their chunks
+     */
+    private void expireUploadSessions() {
+        Query staleSessions = Query.query(Criteria.where(CREATED_DATE)
+                        .lt(Date.from(Instant.now().minus(uploadSessionTtl))))
+                .limit(batchSize);
+        List<UploadSession> uploadSessions;
+        do {
+            uploadSessions = mongoTemplate.find(staleSessions, UploadSession.class);
+            if (uploadSessions.isEmpty()) {
+                break;
+            }
+            mongoTemplate.remove(Query.query(Criteria.where(ID).in(uploadSessions.stream()
+                    .map(UploadSession::getId)
+                    .toList())), UploadSession.class);
+            markForDeletion(uploadSessions.stream()
+                    .flatMap(this::chunkBlobIds)
+                    .toList());
+        } while (uploadSessions.size() == batchSize);
+    }
+
+    private Set<ObjectId> findUploadChunkBlobIds() {
+        Query query = new Query();
+        query.fields().include("chunks");
+        Set<ObjectId> blobIds = new HashSet<>();
+        mongoTemplate.find(query, UploadSession.class).stream()
+                .flatMap(this::chunkBlobIds)
+                .forEach(blobIds::add);
+        return blobIds;
+    }
+
+    private Stream<ObjectId> chunkBlobIds(UploadSession uploadSession) {
+        return uploadSession.getChunks() == null ? Stream.empty() :
+                uploadSession.getChunks().values().stream().map(UploadChunk::getBlobId);
+    }
+
+    private Set<ObjectId> findReferencedBlobIds(List<ObjectId> blobIds) {
+        Set<ObjectId> referencedBlobIds = new HashSet<>();
+
+        Query fileQuery = new Query(new Criteria().orOperator(Criteria.where(FILE_ID).in(blobIds),
+                Criteria.where(BLOB_ID).in(blobIds)));
+        fileQuery.fields().include(FILE_ID, BLOB_ID);
+        mongoTemplate.find(fileQuery, FileMetadata.class)
+                .forEach(fileMetadata -> referencedBlobIds.add(fileMetadata.getStorageId()));
+
+        Query blobReferenceQuery = Query.query(Criteria.where(FILE_ID).in(blobIds));
+        blobReferenceQuery.fields().include(FILE_ID);
+        mongoTemplate.find(blobReferenceQuery, BlobReference.class)
+                .forEach(blobReference -> referencedBlobIds.add(blobReference.getFileId()));
+        return referencedBlobIds;
+    }
+
+    /**
+     * Throttles batches, so reclaiming does not compete with requests for the database
+     *
+     * @return false if interrupted
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
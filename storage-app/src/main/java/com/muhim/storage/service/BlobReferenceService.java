@@ -0,0 +1,57 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+
+/**
+ * Reference counting of content-addressed blobs, so identical content
+ * uploaded by any user is stored in the blob store only once
+ *
+ * @author muhim
+ */
+public interface BlobReferenceService {
+    /**
+     * Whether new uploads are stored content-addressed
+     *
+     * @return true if content-addressed storage mode is enabled
+     */
+    boolean isContentAddressed();
+
+    /**
+     * Add a reference to the blob with given content hash.
+     * If the content is already stored the freshly stored copy is deleted
+     *
+     * @param contentHash SHA-256 of the content
+     * @param storedFileId blob id of the freshly stored content
+     * @param fileSize size of the content
+     * @return blob id of the shared blob to reference
+     */
+    ObjectId acquire(String contentHash, ObjectId storedFileId, long fileSize);
+
+    /**
+     * Add a reference to the blob with given content hash if the content is stored already,
+     * so it does not have to be written again
+     *
+     * @param contentHash SHA-256 of the content
+     * @return blob id of the shared blob to reference, null if the content is not stored
+     */
+    ObjectId acquireExisting(String contentHash);
+
+    /**
+     * Drop the reference of the file to its content,
+     * the blob is only deleted when the last reference goes away
+     *
+     * @param fileMetadata the file being deleted
+     */
+    void release(FileMetadata fileMetadata);
+
+    /**
+     * Drop the references of all given files,
+     * blobs which are not content-addressed are marked for deletion in one batch
+     *
+     * @param fileMetadata the files being deleted
+     */
+    void releaseAll(List<FileMetadata> fileMetadata);
+}
@@ -0,0 +1,131 @@
+package com.muhim.storage.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.muhim.storage.model.BlobReference;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * BlobReferenceService implementation
+ * Reference counts are updated atomically with findAndModify,
+ * unreferenced content is handed to the {@link BlobGarbageCollector}
+ *
+ * @author muhim
+ */
+@Service
+public class BlobReferenceServiceImpl implements BlobReferenceService {
+
+    private static final String REFERENCE_COUNT = "referenceCount";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final BlobGarbageCollector blobGarbageCollector;
+
+    private final boolean contentAddressed;
+
+    @Autowired
+    public BlobReferenceServiceImpl(MongoTemplate mongoTemplate,
+                                    BlobGarbageCollector blobGarbageCollector,
+                                    @Value("${storage.content-addressed.enabled:false}") boolean contentAddressed) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobGarbageCollector = blobGarbageCollector;
+        this.contentAddressed = contentAddressed;
+    }
+
+    @Override
+    public boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
+    @Override
+    public ObjectId acquire(String contentHash, ObjectId storedFileId, long fileSize) {
+        Update update = new Update()
+                .inc(REFERENCE_COUNT, 1)
+                .setOnInsert("fileId", storedFileId)
+                .setOnInsert("fileSize", fileSize)
+                .setOnInsert("createdDate", new Date());
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+
+        BlobReference blobReference;
+        try {
+            blobReference = mongoTemplate.findAndModify(byContentHash(contentHash), update, options, BlobReference.class);
+        } catch (DuplicateKeyException e) {
+            // a concurrent upload of the same content inserted the reference first
+            blobReference = mongoTemplate.findAndModify(byContentHash(contentHash), update, options, BlobReference.class);
+        }
+
+        if (!storedFileId.equals(blobReference.getFileId())) {
+            blobGarbageCollector.markForDeletion(List.of(storedFileId));
+        }
+        return blobReference.getFileId();
+    }
+
+    @Override
+    public ObjectId acquireExisting(String contentHash) {
+        // never inserts, an unreferenced record not removed yet is kept alive by the increment, see release
+        BlobReference blobReference = mongoTemplate.findAndModify(byContentHash(contentHash),
+                new Update().inc(REFERENCE_COUNT, 1),
+                FindAndModifyOptions.options().returnNew(true),
+                BlobReference.class);
+        return blobReference != null ? blobReference.getFileId() : null;
+    }
+
+    @Override
+    public void release(FileMetadata fileMetadata) {
+        if (fileMetadata.getContentHash() == null) {
+            blobGarbageCollector.markForDeletion(List.of(fileMetadata.getStorageId()));
+            return;
+        }
+
+        BlobReference blobReference = mongoTemplate.findAndModify(byContentHash(fileMetadata.getContentHash()),
+                new Update().inc(REFERENCE_COUNT, -1),
+                FindAndModifyOptions.options().returnNew(true),
+                BlobReference.class);
+
+        if (blobReference == null) {
+            blobGarbageCollector.markForDeletion(List.of(fileMetadata.getStorageId()));
+            return;
+        }
+        if (blobReference.getReferenceCount() > 0) {
+            return;
+        }
+
+        // only the caller that removes the unreferenced record deletes the content,
+        // a concurrent acquire in between keeps the record alive
+        DeleteResult deleteResult = mongoTemplate.remove(byContentHash(fileMetadata.getContentHash())
+                .addCriteria(Criteria.where(REFERENCE_COUNT).lte(0)), BlobReference.class);
+        if (deleteResult.getDeletedCount() > 0) {
+            blobGarbageCollector.markForDeletion(List.of(blobReference.getFileId()));
+        }
+    }
+
+    @Override
+    public void releaseAll(List<FileMetadata> fileMetadata) {
+        List<ObjectId> unsharedBlobIds = fileMetadata.stream()
+                .filter(file -> file.getContentHash() == null)
+                .map(FileMetadata::getStorageId)
+                .toList();
+        blobGarbageCollector.markForDeletion(unsharedBlobIds);
+
+        // shared blobs need the decremented count of each reference to decide about deleting the content
+        fileMetadata.stream()
+                .filter(file -> file.getContentHash() != null)
+                .forEach(this::release);
+    }
+
+    private Query byContentHash(String contentHash) {
+        return Query.query(Criteria.where("_id").is(contentHash));
+    }
+}
@@ -0,0 +1,16 @@
+package com.muhim.storage.service;
+
+/**
+ * Rehashes the content of files whose `fileRollingHash` was computed with another algorithm than the configured one,
+ * e.g. the MD5 of files stored before the algorithm became configurable, so duplicates are detected across all files
+ *
+ * @author muhim
+ */
+public interface FileHashMigration {
+    /**
+     * Rehash files in throttled batches, continuing after the last file of the previous run
+     *
+     * @return number of migrated files
+     */
+    int migrate();
+}
@@ -0,0 +1,173 @@
+package com.muhim.storage.service;
+
+import com.mongodb.MongoException;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.utils.FileUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * FileHashMigration implementation
+ * A file is only updated if its hash is still the one it was read with, so a concurrent change is never overwritten,
+ * and the metadata cache is invalidated as its download ETag changes. Files whose content cannot be read are skipped
+ * and retried by the next pass. Several application instances may migrate concurrently
+ *
+ * @author muhim
+ */
+@Slf4j
+@Service
+public class FileHashMigrationImpl implements FileHashMigration {
+
+    private static final String ID = "_id";
+    private static final String FILE_ID = "fileId";
+    private static final String BLOB_ID = "blobId";
+    private static final String USER = "user";
+    private static final String FILENAME = "filename";
+    private static final String FILE_ROLLING_HASH = "fileRollingHash";
+    private static final String HASH_ALGORITHM = "hashAlgorithm";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final BlobStore blobStore;
+
+    private final ContentHasherFactory contentHasherFactory;
+
+    private final FileMetadataCache fileMetadataCache;
+
+    private final int batchSize;
+
+    private final int maxBatchesPerRun;
+
+    private final Duration batchPause;
+
+    /**
+     * Last file checked by the migration, the next run continues after it
+     */
+    private final AtomicReference<String> migrationPosition = new AtomicReference<>();
+
+    @Autowired
+    public FileHashMigrationImpl(MongoTemplate mongoTemplate,
+                                 BlobStore blobStore,
+                                 ContentHasherFactory contentHasherFactory,
+                                 FileMetadataCache fileMetadataCache,
+                                 @Value("${storage.hashing.migration.batch-size:100}") int batchSize,
+                                 @Value("${storage.hashing.migration.max-batches-per-run:10}") int maxBatchesPerRun,
+                                 @Value("${storage.hashing.migration.batch-pause:PT1S}") Duration batchPause) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.contentHasherFactory = contentHasherFactory;
+        this.fileMetadataCache = fileMetadataCache;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.batchPause = batchPause;
+    }
+
+    @Override
+    public int migrate() {
+        HashAlgorithm algorithm = contentHasherFactory.getAlgorithm();
+        int migratedCount = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<FileMetadata> files = mongoTemplate.find(legacyFiles(algorithm), FileMetadata.class);
+            // files sharing a content-addressed blob are read once
+            Map<ObjectId, String> hashesByBlob = new HashMap<>();
+            for (FileMetadata file : files) {
+                if (migrate(file, algorithm, hashesByBlob)) {
+                    migratedCount++;
+                }
+            }
+
+            // start over with the oldest file once the end is reached
+            migrationPosition.set(files.size() < batchSize ? null : files.get(files.size() - 1).getId());
+            if (files.size() < batchSize || !pause()) {
+                break;
+            }
+        }
+        return migratedCount;
+    }
+
+    /**
+     * Matched on the `hashAlgorithm` index, which makes the check cheap once all files are migrated
+     */
+    private Query legacyFiles(HashAlgorithm algorithm) {
+        List<HashAlgorithm> legacyAlgorithms = new ArrayList<>();
+        // files stored before the algorithm was recorded have none
+        legacyAlgorithms.add(null);
+        for (HashAlgorithm hashAlgorithm : HashAlgorithm.values()) {
+            if (hashAlgorithm != algorithm) {
+                legacyAlgorithms.add(hashAlgorithm);
+            }
+        }
+        Criteria criteria = Criteria.where(HASH_ALGORITHM).in(legacyAlgorithms);
+        String position = migrationPosition.get();
+        if (position != null) {
+            criteria.and(ID).gt(new ObjectId(position));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, ID))
+                .limit(batchSize);
+        query.fields().include(FILE_ID, BLOB_ID, USER, FILENAME, FILE_ROLLING_HASH, HASH_ALGORITHM);
+        return query;
+    }
+
+    private boolean migrate(FileMetadata file, HashAlgorithm algorithm, Map<ObjectId, String> hashesByBlob) {
+        String fileRollingHash = hashesByBlob.get(file.getStorageId());
+        if (fileRollingHash == null) {
+            try {
+                fileRollingHash = FileUtils.generateFileRollingHash(blobStore.openDownloadStream(file.getStorageId()),
+                        contentHasherFactory.newHasher());
+            } catch (IOException | UncheckedIOException | MongoException e) {
+                log.warn("Could not rehash file {}: {}", file.getFileId(), e.getMessage());
+                return false;
+            }
+            hashesByBlob.put(file.getStorageId(), fileRollingHash);
+        }
+
+        Query unchanged = Query.query(Criteria.where(ID).is(file.getId())
+                .and(FILE_ROLLING_HASH).is(file.getFileRollingHash())
+                .and(HASH_ALGORITHM).is(file.getHashAlgorithm()));
+        long modifiedCount = mongoTemplate.updateFirst(unchanged,
+                new Update().set(FILE_ROLLING_HASH, fileRollingHash).set(HASH_ALGORITHM, algorithm),
+                FileMetadata.class).getModifiedCount();
+        if (modifiedCount == 0) {
+            return false;
+        }
+        fileMetadataCache.invalidate(file);
+        return true;
+    }
+
+    /**
+     * Throttles batches, as every migrated file is read completely from the blob store
+     *
+     * @return false if interrupted
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.dto.ReactiveFileDownloadDTO;
+import com.muhim.storage.enums.FileFieldSet;
+import com.muhim.storage.enums.FileVisibility;
+import org.springframework.data.domain.Page;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Upload, download and listing of files on the reactive stack, without blocking a thread on I/O
+ *
+ * @author muhim
+ */
+public interface ReactiveStorageService {
+    /**
+     * Stream the uploaded file into GridFS while hashing it
+     *
+     * @param user       owner of the file
+     * @param filePart   uploaded file
+     * @param visibility visibility of the file
+     * @param tags       tags of the file
+     * @param baseUrl    base URL to create download link
+     * @return metadata of the stored file, an IllegalArgumentException if the file is rejected
+     */
+    Mono<FileMetadataDTO> saveFile(String user,
+                                   FilePart filePart,
+                                   FileVisibility visibility,
+                                   List<String> tags,
+                                   String baseUrl);
+
+    /**
+     * @param id file id
+     * @return metadata and the lazily read content, an IllegalArgumentException if the file does not exist
+     */
+    Mono<ReactiveFileDownloadDTO> getFileDownload(String id);
+
+    /**
+     * @see StorageAccessService#getPublicFiles
+     */
+    Mono<Page<FileMetadataDTO>> getPublicFiles(int page,
+                                               Integer size,
+                                               String sortBy,
+                                               String tag,
+                                               FileFieldSet fields,
+                                               String baseUrl);
+
+    /**
+     * @see StorageAccessService#getUserFiles
+     */
+    Mono<Page<FileMetadataDTO>> getUserFiles(String user,
+                                             int page,
+                                             Integer size,
+                                             String sortBy,
+                                             String tag,
+                                             FileFieldSet fields,
+                                             String baseUrl);
+}
@@ -0,0 +1,277 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.dto.ReactiveFileDownloadDTO;
+import com.muhim.storage.enums.FileFieldSet;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.hash.ContentHasher;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.repository.ReactiveFileMetaDataRepository;
+import com.muhim.storage.utils.FileUtils;
+import org.apache.tika.Tika;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReactiveStorageService implementation
+ * Content is streamed between the client and GridFS as data buffers, so a slow client holds a connection
+ * but no thread. Content-addressed storage, the filesystem blob store and the in-process caches
+ * are only available on the servlet stack
+ *
+ * @author muhim
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveStorageServiceImpl implements ReactiveStorageService {
+
+    private final ReactiveFileMetaDataRepository fileMetaDataRepository;
+
+    private final ReactiveGridFsTemplate reactiveGridFsTemplate;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ContentHasherFactory contentHasherFactory;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final Tika tika;
+
+    @Autowired
+    public ReactiveStorageServiceImpl(ReactiveFileMetaDataRepository fileMetaDataRepository,
+                                      ReactiveGridFsTemplate reactiveGridFsTemplate,
+                                      ReactiveMongoTemplate reactiveMongoTemplate,
+                                      ContentHasherFactory contentHasherFactory,
+                                      @Value("${storage.listing.default-page-size:5}") int defaultPageSize,
+                                      @Value("${storage.listing.max-page-size:1000}") int maxPageSize,
+                                      @Value("${storage.content-addressed.enabled:false}") boolean contentAddressed,
+                                      @Value("${storage.blob-store.type:gridfs}") String blobStoreType) {
+        if (contentAddressed || !"gridfs".equals(blobStoreType)) {
+            throw new IllegalStateException("The reactive stack only supports the gridfs blob store " +
+                    "without content-addressed storage");
+        }
+        this.fileMetaDataRepository = fileMetaDataRepository;
+        this.reactiveGridFsTemplate = reactiveGridFsTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.contentHasherFactory = contentHasherFactory;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.tika = new Tika();
+    }
+
+    @Override
+    public Mono<FileMetadataDTO> saveFile(String user,
+                                          FilePart filePart,
+                                          FileVisibility visibility,
+                                          List<String> tags,
+                                          String baseUrl) {
+        String filename = filePart.filename();
+        if (tags.size() > StorageUploadServiceImpl.MAX_TAG_LIMIT) {
+            return Mono.error(new IllegalArgumentException("Tags limit exceeded! Max " +
+                    StorageUploadServiceImpl.MAX_TAG_LIMIT + " tags allowed."));
+        }
+        MediaType declaredContentType = filePart.headers().getContentType();
+
+        return fileMetaDataRepository.existsByUserAndFilename(user, filename)
+                .flatMap(exists -> exists ? Mono.error(new IllegalArgumentException("File already exists")) :
+                        detectAndStoreContent(filename,
+                                declaredContentType != null ? declaredContentType.toString() : null,
+                                filePart.content()))
+                .flatMap(storedContent -> validateStoredFile(user, filename, storedContent)
+                        .then(Mono.defer(() -> fileMetaDataRepository.save(FileMetadata.builder()
+                                .user(user)
+                                .filename(filename)
+                                .fileId(storedContent.blobId())
+                                .visibility(visibility)
+                                .tags(tags.stream().sorted().toList())
+                                .normalizedTags(FileUtils.normalizeTags(tags.stream().sorted().toList()))
+                                .fileSize(storedContent.fileSize())
+                                .contentType(storedContent.contentType())
+                                .uploadDate(new Date())
+                                .fileRollingHash(storedContent.fileRollingHash())
+                                .hashAlgorithm(contentHasherFactory.getAlgorithm())
+                                .build()))))
+                .map(fileMetadata -> StorageUploadServiceImpl.convertToFileMetadataDTO(fileMetadata, baseUrl));
+    }
+
+    @Override
+    public Mono<ReactiveFileDownloadDTO> getFileDownload(String id) {
+        return fileMetaDataRepository.findByFileId(new ObjectId(id))
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("File does not exist!")))
+                .map(fileMetadata -> ReactiveFileDownloadDTO.builder()
+                        .filename(fileMetadata.getFilename())
+                        .fileSize(fileMetadata.getFileSize())
+                        .contentType(fileMetadata.getContentType())
+                        .fileRollingHash(fileMetadata.getFileRollingHash())
+                        .uploadDate(fileMetadata.getUploadDate())
+                        .content(readBlob(fileMetadata.getStorageId()))
+                        .build());
+    }
+
+    /**
+     * Composed blobs, e.g. of committed upload sessions, are read part by part, see {@link GridFsClient}
+     */
+    private Flux<DataBuffer> readBlob(ObjectId blobId) {
+        return reactiveGridFsTemplate.findOne(byId(blobId))
+                .flatMapMany(gridFSFile -> {
+                    List<ObjectId> partIds = gridFSFile.getMetadata() != null ?
+                            gridFSFile.getMetadata().getList(GridFsClient.PARTS, ObjectId.class) : null;
+                    if (partIds != null) {
+                        return Flux.fromIterable(partIds).concatMap(this::readBlob);
+                    }
+                    // one GridFS chunk per buffer, so chunks are fetched as the client reads instead of per batch
+                    return reactiveGridFsTemplate.getResource(gridFSFile)
+                            .flatMapMany(resource -> resource.getDownloadStream(gridFSFile.getChunkSize()));
+                });
+    }
+
+    @Override
+    public Mono<Page<FileMetadataDTO>> getPublicFiles(int page,
+                                                      Integer size,
+                                                      String sortBy,
+                                                      String tag,
+                                                      FileFieldSet fields,
+                                                      String baseUrl) {
+        return findPage(Criteria.where("visibility").is(FileVisibility.PUBLIC), page, size, sortBy, tag, fields, baseUrl);
+    }
+
+    @Override
+    public Mono<Page<FileMetadataDTO>> getUserFiles(String user,
+                                                    int page,
+                                                    Integer size,
+                                                    String sortBy,
+                                                    String tag,
+                                                    FileFieldSet fields,
+                                                    String baseUrl) {
+        return findPage(Criteria.where("user").is(user), page, size, sortBy, tag, fields, baseUrl);
+    }
+
+    /**
+     * Without a declared type the type is detected from the start of the first buffer,
+     * as the servlet stack sniffs the start of the content, so both store the same type
+     */
+    private Mono<StoredContent> detectAndStoreContent(String filename,
+                                                      String declaredContentType,
+                                                      Flux<DataBuffer> content) {
+        if (declaredContentType != null) {
+            return storeContent(filename, declaredContentType, content);
+        }
+        return content.switchOnFirst((first, buffers) -> storeContent(filename, detectContentType(first.get()), buffers))
+                .single();
+    }
+
+    private String detectContentType(DataBuffer first) {
+        byte[] start = new byte[first == null ? 0 :
+                Math.min(first.readableByteCount(), StorageUploadServiceImpl.CONTENT_SNIFF_BUFFER_SIZE)];
+        if (first != null) {
+            // copied without moving the read position, the buffer is stored as is
+            first.toByteBuffer(first.readPosition(), ByteBuffer.wrap(start), 0, start.length);
+        }
+        return tika.detect(start);
+    }
+
+    /**
+     * Hashes the buffers on their way into GridFS, the content is never held completely.
+     * The hash runs on the event loop, which must not wait for the hash executor
+     */
+    private Mono<StoredContent> storeContent(String filename, String contentType, Flux<DataBuffer> content) {
+        ContentHasher contentHasher = contentHasherFactory.newCallingThreadHasher();
+        AtomicLong fileSize = new AtomicLong();
+        Flux<DataBuffer> digestedContent = content.doOnNext(dataBuffer -> {
+            fileSize.addAndGet(dataBuffer.readableByteCount());
+            try (DataBuffer.ByteBufferIterator byteBuffers = dataBuffer.readableByteBuffers()) {
+                while (byteBuffers.hasNext()) {
+                    ByteBuffer byteBuffer = byteBuffers.next();
+                    contentHasher.update(byteBuffer);
+                }
+            }
+        });
+        return reactiveGridFsTemplate.store(digestedContent, filename, contentType)
+                .map(blobId -> new StoredContent(blobId,
+                        contentType,
+                        fileSize.get(),
+                        contentHasher.getHexDigest()));
+    }
+
+    /**
+     * Checked again after storing, as the hash is only known now and
+     * a concurrent upload could have taken the filename in the meantime
+     */
+    private Mono<Void> validateStoredFile(String user, String filename, StoredContent storedContent) {
+        return Mono.zip(fileMetaDataRepository.existsByUserAndFilename(user, filename),
+                        fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(user,
+                                storedContent.fileRollingHash(), contentHasherFactory.getAlgorithm().storedValues()))
+                .flatMap(exists -> exists.getT1() || exists.getT2() ?
+                        reactiveGridFsTemplate.delete(byId(storedContent.blobId()))
+                                .then(Mono.error(new IllegalArgumentException("File already exists"))) :
+                        Mono.empty());
+    }
+
+    /**
+     * Same query shapes as the listings of {@link StorageAccessServiceImpl}, so they are served by the same indexes
+     */
+    private Mono<Page<FileMetadataDTO>> findPage(Criteria criteria,
+                                                 int page,
+                                                 Integer size,
+                                                 String sortBy,
+                                                 String tag,
+                                                 FileFieldSet fields,
+                                                 String baseUrl) {
+        Pageable pageable = getPageable(page, size, sortBy);
+        if (tag != null && !tag.isEmpty()) {
+            criteria.and("normalizedTags").is(tag.toLowerCase(Locale.ROOT));
+        }
+        Flux<FileMetadataDTO> files = reactiveMongoTemplate.query(FileMetadata.class)
+                .as(fields.getProjection())
+                .matching(Query.query(criteria).with(pageable))
+                .all()
+                .map(file -> StorageAccessServiceImpl.convertToFileMetadataDTO(file, baseUrl));
+        return Mono.zip(files.collectList(), reactiveMongoTemplate.count(Query.query(criteria), FileMetadata.class))
+                .map(result -> new PageImpl<>(result.getT1(), pageable, result.getT2()));
+    }
+
+    /**
+     * Requested page sizes above the server cap are reduced to the cap
+     */
+    private Pageable getPageable(int page, Integer size, String sortBy) {
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        return PageRequest.of(page, Math.min(pageSize, maxPageSize),
+                Sort.by(Sort.Direction.ASC, StorageAccessServiceImpl.mapSortByField(sortBy)));
+    }
+
+    private static Query byId(ObjectId blobId) {
+        return Query.query(Criteria.where("_id").is(blobId));
+    }
+
+    private record StoredContent(ObjectId blobId, String contentType, long fileSize, String fileRollingHash) {
+    }
+}
@@ -1,6 +1,8 @@
 package com.muhim.storage.service;
 
+import com.muhim.storage.dto.FileListDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.FileFieldSet;
 import org.springframework.data.domain.Page;
 
 /**
@@ -13,26 +15,79 @@ public interface StorageAccessService {
      * Validates and find list of public files with given params
      *
      * @param page helps to find the page for paginated response
+     * @param size number of files per page, null for the default, capped by the server
      * @param sortBy sort by pre-defined parameter
      * @param tag is used to filter the result
+     * @param fields the fields to read and return for each file
      * @param baseUrl baseUrl to dynamically generate download link
      * @return paginated FileMetaData objects
      */
-    Page<FileMetadataDTO> getPublicFiles(int page, String sortBy, String tag, String baseUrl);
+    Page<FileMetadataDTO> getPublicFiles(int page,
+                                         Integer size,
+                                         String sortBy,
+                                         String tag,
+                                         FileFieldSet fields,
+                                         String baseUrl);
 
     /**
      * Validates and find list of user specific files with given params
      *
      * @param user the user to get the files of
      * @param page helps to find the page for paginated response
+     * @param size number of files per page, null for the default, capped by the server
      * @param sortBy sort by pre-defined parameter
      * @param tag is used to filter the result
+     * @param fields the fields to read and return for each file
      * @param baseUrl baseUrl to dynamically generate download link
      * @return paginated FileMetaData objects
      */
     Page<FileMetadataDTO> getUserFiles(String user,
                                        int page,
+                                       Integer size,
                                        String sortBy,
                                        String tag,
+                                       FileFieldSet fields,
                                        String baseUrl);
+
+    /**
+     * Find public files with keyset pagination, which seeks on the sort field and id instead of skipping
+     *
+     * @param cursor continuation cursor of the previous call, null or empty for the first page
+     * @param size number of files per page, null for the default, capped by the server
+     * @param sortBy sort by pre-defined parameter, must not change while following cursors
+     * @param tag is used to filter the result
+     * @param fields the fields to read and return for each file
+     * @param includeCount whether the matching files should be counted
+     * @param baseUrl baseUrl to dynamically generate download link
+     * @return one page of FileMetaData objects and the cursor of the following page
+     */
+    FileListDTO scrollPublicFiles(String cursor,
+                                  Integer size,
+                                  String sortBy,
+                                  String tag,
+                                  FileFieldSet fields,
+                                  boolean includeCount,
+                                  String baseUrl);
+
+    /**
+     * Find user specific files with keyset pagination, which seeks on the sort field and id instead of skipping
+     *
+     * @param user the user to get the files of
+     * @param cursor continuation cursor of the previous call, null or empty for the first page
+     * @param size number of files per page, null for the default, capped by the server
+     * @param sortBy sort by pre-defined parameter, must not change while following cursors
+     * @param tag is used to filter the result
+     * @param fields the fields to read and return for each file
+     * @param includeCount whether the matching files should be counted
+     * @param baseUrl baseUrl to dynamically generate download link
+     * @return one page of FileMetaData objects and the cursor of the following page
+     */
+    FileListDTO scrollUserFiles(String user,
+                                String cursor,
+                                Integer size,
+                                String sortBy,
+                                String tag,
+                                FileFieldSet fields,
+                                boolean includeCount,
+                                String baseUrl);
 }
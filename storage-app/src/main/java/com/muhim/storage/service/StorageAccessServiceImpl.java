@@ -1,48 +1,91 @@
 package com.muhim.storage.service;
 
+import com.muhim.storage.dto.FileListDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.FileFieldSet;
 import com.muhim.storage.enums.FileVisibility;
-import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.model.FileDetailsProjection;
+import com.muhim.storage.model.FileLinkProjection;
+import com.muhim.storage.model.FileSummaryProjection;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import com.muhim.storage.utils.CursorUtils;
 import com.muhim.storage.utils.FileUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * StorageAccessService implementation
+ * Listing queries are timed in `storage.listing` by scope, pagination and whether a tag filter is applied
  *
  * @author muhim
  */
 @Service
+@Observed
 public class StorageAccessServiceImpl implements StorageAccessService {
 
-    private static final int DEFAULT_PAGE_SIZE = 5;
+    private static final String PUBLIC_SCOPE = "public";
+
+    private static final String USER_SCOPE = "user";
+
+    private static final String OFFSET_PAGINATION = "offset";
+
+    private static final String CURSOR_PAGINATION = "cursor";
+
+    private final FileMetaDataRepository fileMetaDataRepository;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final MeterRegistry meterRegistry;
 
     @Autowired
-    FileMetaDataRepository fileMetaDataRepository;
+    public StorageAccessServiceImpl(FileMetaDataRepository fileMetaDataRepository,
+                                    @Value("${storage.listing.default-page-size:5}") int defaultPageSize,
+                                    @Value("${storage.listing.max-page-size:1000}") int maxPageSize,
+                                    MeterRegistry meterRegistry) {
+        this.fileMetaDataRepository = fileMetaDataRepository;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.meterRegistry = meterRegistry;
+    }
 
     @Override
-    public Page<FileMetadataDTO> getPublicFiles(int page, String sortBy, String tag, String baseUrl) {
-        Pageable pageable = PageRequest.of(page, DEFAULT_PAGE_SIZE,
+    public Page<FileMetadataDTO> getPublicFiles(int page,
+                                                Integer size,
+                                                String sortBy,
+                                                String tag,
+                                                FileFieldSet fields,
+                                                String baseUrl) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Pageable pageable = PageRequest.of(page, getPageSize(size),
                 Sort.by(Sort.Direction.ASC, mapSortByField(sortBy)));
 
-        Page<FileMetadata> fileMetadataPage;
+        Page<? extends FileLinkProjection> fileMetadataPage;
 
         if (tag == null || tag.isEmpty()) {
             fileMetadataPage = fileMetaDataRepository
-                    .findByVisibility(FileVisibility.PUBLIC, pageable);
+                    .findByVisibility(FileVisibility.PUBLIC, pageable, fields.getProjection());
         } else {
-            fileMetadataPage = fileMetaDataRepository.findByVisibilityAndTagsIgnoreCase(
+            fileMetadataPage = fileMetaDataRepository.findByVisibilityAndNormalizedTags(
                     FileVisibility.PUBLIC,
-                    tag,
-                    pageable);
+                    tag.toLowerCase(Locale.ROOT),
+                    pageable,
+                    fields.getProjection());
 
         }
 
+        sample.stop(listingTimer(PUBLIC_SCOPE, tag, OFFSET_PAGINATION));
+
         List<FileMetadataDTO> fileMetadataDTOList = fileMetadataPage.getContent().stream()
                 .map(file -> convertToFileMetadataDTO(file, baseUrl))
                 .toList();
@@ -54,25 +97,31 @@ public class StorageAccessServiceImpl implements StorageAccessService {
     @Override
     public Page<FileMetadataDTO> getUserFiles(String user,
                                               int page,
+                                              Integer size,
                                               String sortBy,
                                               String tag,
+                                              FileFieldSet fields,
                                               String baseUrl) {
-        Pageable pageable = PageRequest.of(page, DEFAULT_PAGE_SIZE,
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Pageable pageable = PageRequest.of(page, getPageSize(size),
                 Sort.by(Sort.Direction.ASC, mapSortByField(sortBy)));
 
-        Page<FileMetadata> fileMetadataPage;
+        Page<? extends FileLinkProjection> fileMetadataPage;
 
         if (tag == null || tag.isEmpty()) {
             fileMetadataPage = fileMetaDataRepository
-                    .findByUser(user, pageable);
+                    .findByUser(user, pageable, fields.getProjection());
         } else {
-            fileMetadataPage = fileMetaDataRepository.findByUserAndTagsIgnoreCase(
+            fileMetadataPage = fileMetaDataRepository.findByUserAndNormalizedTags(
                     user,
-                    tag,
-                    pageable);
+                    tag.toLowerCase(Locale.ROOT),
+                    pageable,
+                    fields.getProjection());
 
         }
 
+        sample.stop(listingTimer(USER_SCOPE, tag, OFFSET_PAGINATION));
+
         List<FileMetadataDTO> fileMetadataDTOList = fileMetadataPage.getContent().stream()
                 .map(file -> convertToFileMetadataDTO(file, baseUrl))
                 .toList();
@@ -80,23 +129,168 @@ public class StorageAccessServiceImpl implements StorageAccessService {
         return new PageImpl<>(fileMetadataDTOList, pageable, fileMetadataPage.getTotalElements());
     }
 
-    private FileMetadataDTO convertToFileMetadataDTO(FileMetadata fileMetadata, String baseUrl) {
-        return FileMetadataDTO.builder()
-                .visibility(fileMetadata.getVisibility())
-                .fileName(fileMetadata.getFilename())
-                .uploadDate(fileMetadata.getUploadDate())
-                .downloadLink(FileUtils.createDownloadLink(fileMetadata.getFileId(), baseUrl))
-                .tags(fileMetadata.getTags())
+    @Override
+    public FileListDTO scrollPublicFiles(String cursor,
+                                         Integer size,
+                                         String sortBy,
+                                         String tag,
+                                         FileFieldSet fields,
+                                         boolean includeCount,
+                                         String baseUrl) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Sort sort = getKeysetSort(sortBy);
+        ScrollPosition position = CursorUtils.decode(cursor, sort.stream().map(Sort.Order::getProperty).toList());
+        Limit limit = Limit.of(getPageSize(size));
+
+        Window<? extends FileLinkProjection> fileMetadataWindow;
+        Long totalElements = null;
+
+        if (tag == null || tag.isEmpty()) {
+            fileMetadataWindow = fileMetaDataRepository.findByVisibility(FileVisibility.PUBLIC,
+                    position,
+                    sort,
+                    limit,
+                    fields.getProjection());
+            if (includeCount) {
+                totalElements = fileMetaDataRepository.countByVisibility(FileVisibility.PUBLIC);
+            }
+        } else {
+            String normalizedTag = tag.toLowerCase(Locale.ROOT);
+            fileMetadataWindow = fileMetaDataRepository.findByVisibilityAndNormalizedTags(FileVisibility.PUBLIC,
+                    normalizedTag,
+                    position,
+                    sort,
+                    limit,
+                    fields.getProjection());
+            if (includeCount) {
+                totalElements = fileMetaDataRepository.countByVisibilityAndNormalizedTags(FileVisibility.PUBLIC,
+                        normalizedTag);
+            }
+        }
+
+        sample.stop(listingTimer(PUBLIC_SCOPE, tag, CURSOR_PAGINATION));
+        return convertToFileListDTO(fileMetadataWindow, totalElements, baseUrl);
+    }
+
+    @Override
+    public FileListDTO scrollUserFiles(String user,
+                                       String cursor,
+                                       Integer size,
+                                       String sortBy,
+                                       String tag,
+                                       FileFieldSet fields,
+                                       boolean includeCount,
+                                       String baseUrl) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Sort sort = getKeysetSort(sortBy);
+        ScrollPosition position = CursorUtils.decode(cursor, sort.stream().map(Sort.Order::getProperty).toList());
+        Limit limit = Limit.of(getPageSize(size));
+
+        Window<? extends FileLinkProjection> fileMetadataWindow;
+        Long totalElements = null;
+
+        if (tag == null || tag.isEmpty()) {
+            fileMetadataWindow = fileMetaDataRepository.findByUser(user, position, sort, limit, fields.getProjection());
+            if (includeCount) {
+                totalElements = fileMetaDataRepository.countByUser(user);
+            }
+        } else {
+            String normalizedTag = tag.toLowerCase(Locale.ROOT);
+            fileMetadataWindow = fileMetaDataRepository.findByUserAndNormalizedTags(user,
+                    normalizedTag,
+                    position,
+                    sort,
+                    limit,
+                    fields.getProjection());
+            if (includeCount) {
+                totalElements = fileMetaDataRepository.countByUserAndNormalizedTags(user, normalizedTag);
+            }
+        }
+
+        sample.stop(listingTimer(USER_SCOPE, tag, CURSOR_PAGINATION));
+        return convertToFileListDTO(fileMetadataWindow, totalElements, baseUrl);
+    }
+
+    private Timer listingTimer(String scope, String tag, String pagination) {
+        return Timer.builder("storage.listing")
+                .tag("scope", scope)
+                .tag("filter", tag == null || tag.isEmpty() ? "none" : "tag")
+                .tag("pagination", pagination)
+                .description("Latency of file listing queries, including the count query")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Requested page sizes above the server cap are reduced to the cap
+     */
+    private int getPageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
+    }
+
+    /**
+     * The id makes the sort order unique, so the cursor identifies exactly one position
+     */
+    private Sort getKeysetSort(String sortBy) {
+        return Sort.by(Sort.Direction.ASC, mapSortByField(sortBy), "id");
+    }
+
+    private FileListDTO convertToFileListDTO(Window<? extends FileLinkProjection> fileMetadataWindow,
+                                             Long totalElements,
+                                             String baseUrl) {
+        List<FileMetadataDTO> fileMetadataDTOList = fileMetadataWindow.getContent().stream()
+                .map(file -> convertToFileMetadataDTO(file, baseUrl))
+                .toList();
+
+        String nextCursor = null;
+        if (fileMetadataWindow.hasNext() && !fileMetadataWindow.isEmpty()) {
+            nextCursor = CursorUtils.encode(fileMetadataWindow.positionAt(fileMetadataWindow.size() - 1));
+        }
+
+        return FileListDTO.builder()
+                .content(fileMetadataDTOList)
+                .nextCursor(nextCursor)
+                .hasNext(nextCursor != null)
+                .totalElements(totalElements)
                 .build();
     }
 
-    private String mapSortByField(String sortBy) {
+    /**
+     * Only the fields of the requested projection are set, shared with the reactive stack
+     */
+    static FileMetadataDTO convertToFileMetadataDTO(FileLinkProjection fileMetadata, String baseUrl) {
+        FileMetadataDTO.FileMetadataDTOBuilder fileMetadataDTOBuilder = FileMetadataDTO.builder()
+                .fileName(fileMetadata.getFilename())
+                .downloadLink(FileUtils.createDownloadLink(fileMetadata.getFileId(), baseUrl));
+
+        if (fileMetadata instanceof FileSummaryProjection fileSummary) {
+            fileMetadataDTOBuilder
+                    .visibility(fileSummary.getVisibility())
+                    .uploadDate(fileSummary.getUploadDate())
+                    .tags(fileSummary.getTags());
+        }
+        if (fileMetadata instanceof FileDetailsProjection fileDetails) {
+            fileMetadataDTOBuilder
+                    .fileSize(fileDetails.getFileSize())
+                    .contentType(fileDetails.getContentType());
+        }
+        return fileMetadataDTOBuilder.build();
+    }
+
+    /**
+     * Every sort field is indexed with and without a tag filter, other values sort by filename
+     */
+    static String mapSortByField(String sortBy) {
         Map<String, String> sortByFieldMap = Map.of(
                 "filename", "filename",
                 "uploaddate", "uploadDate",
                 "filesize", "fileSize",
-                "contenttype", "contentType",
-                "tag", "tag"
+                "contenttype", "contentType"
         );
         return sortByFieldMap.getOrDefault(sortBy.toLowerCase(), "filename");
     }
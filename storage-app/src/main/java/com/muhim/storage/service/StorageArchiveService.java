@@ -0,0 +1,32 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.enums.ArchiveFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Download of many files as one archive
+ *
+ * @author muhim
+ */
+public interface StorageArchiveService {
+    /**
+     * Stream an archive of all files matching every given filter.
+     * Without user only public files are selected by tag, files selected by id are included regardless of visibility
+     * like their download links
+     *
+     * @param format       archive format
+     * @param fileIds      only include files with these ids, null for any file
+     * @param user         only include files of the user, may be null
+     * @param tag          only include files with this tag, null or empty for any tag
+     * @param outputStream receives the archive, it is written while the files are read
+     * @throws IOException if reading a file or writing the archive fails
+     */
+    void writeArchive(ArchiveFormat format,
+                      List<String> fileIds,
+                      String user,
+                      String tag,
+                      OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,195 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.archive.ArchiveWriter;
+import com.muhim.storage.config.ArchiveExecutorConfig;
+import com.muhim.storage.enums.ArchiveFormat;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+/**
+ * StorageArchiveService implementation
+ * File metadata is read through a cursor and every entry is copied straight into the response,
+ * so neither the file list nor the archive is held in memory.
+ * While an entry is written the first bytes of the next entry are read ahead on the archive executor
+ *
+ * @author muhim
+ */
+@Service
+public class StorageArchiveServiceImpl implements StorageArchiveService {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final StorageDownloadService storageDownloadService;
+
+    private final ExecutorService archiveExecutor;
+
+    private final int prefetchSize;
+
+    @Autowired
+    public StorageArchiveServiceImpl(MongoTemplate mongoTemplate,
+                                     StorageDownloadService storageDownloadService,
+                                     @Qualifier(ArchiveExecutorConfig.ARCHIVE_EXECUTOR) ExecutorService archiveExecutor,
+                                     @Value("${storage.archive.prefetch-size:1MB}") DataSize prefetchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageDownloadService = storageDownloadService;
+        this.archiveExecutor = archiveExecutor;
+        this.prefetchSize = Math.toIntExact(prefetchSize.toBytes());
+    }
+
+    @Override
+    public void writeArchive(ArchiveFormat format,
+                             List<String> fileIds,
+                             String user,
+                             String tag,
+                             OutputStream outputStream) throws IOException {
+        // writing a large archive can take longer than the idle timeout of the cursor
+        Query query = new Query(buildCriteria(fileIds, user, tag)).noCursorTimeout();
+        query.fields().include("fileId", "blobId", "filename", "fileSize", "uploadDate", "visibility");
+
+        Set<String> entryNames = new HashSet<>();
+        CompletableFuture<PrefetchedEntry> nextEntry = null;
+        try (Stream<FileMetadata> files = mongoTemplate.stream(query, FileMetadata.class)) {
+            // only closed on success, a failed download must not end in a complete looking archive
+            ArchiveWriter archiveWriter = format.open(new BufferedOutputStream(outputStream, OUTPUT_BUFFER_SIZE));
+            Iterator<FileMetadata> iterator = files.iterator();
+            nextEntry = prefetchNext(iterator);
+            while (nextEntry != null) {
+                PrefetchedEntry entry = await(nextEntry);
+                nextEntry = null;
+                try (InputStream content = entry.content()) {
+                    nextEntry = prefetchNext(iterator);
+                    FileMetadata fileMetadata = entry.fileMetadata();
+                    archiveWriter.putEntry(entryName(fileMetadata.getFilename(), entryNames),
+                            fileMetadata.getFileSize(),
+                            fileMetadata.getUploadDate() != null ? fileMetadata.getUploadDate().getTime() : 0,
+                            content);
+                }
+            }
+            archiveWriter.close();
+        } finally {
+            if (nextEntry != null) {
+                nextEntry.thenAccept(entry -> closeQuietly(entry.content()));
+            }
+        }
+    }
+
+    private Criteria buildCriteria(List<String> fileIds, String user, String tag) {
+        Criteria criteria = new Criteria();
+        if (fileIds != null) {
+            criteria.and("fileId").in(fileIds.stream().map(ObjectId::new).toList());
+        }
+        if (user != null) {
+            criteria.and("user").is(user);
+        } else if (fileIds == null) {
+            criteria.and("visibility").is(FileVisibility.PUBLIC);
+        }
+        if (tag != null && !tag.isEmpty()) {
+            criteria.and("normalizedTags").is(tag.toLowerCase(Locale.ROOT));
+        }
+        return criteria;
+    }
+
+    private CompletableFuture<PrefetchedEntry> prefetchNext(Iterator<FileMetadata> iterator) {
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        FileMetadata fileMetadata = iterator.next();
+        return CompletableFuture.supplyAsync(() -> prefetch(fileMetadata), archiveExecutor);
+    }
+
+    /**
+     * Opens the content and reads up to the prefetch size, small files are read completely
+     */
+    private PrefetchedEntry prefetch(FileMetadata fileMetadata) {
+        try {
+            InputStream content = storageDownloadService.openResource(fileMetadata).getInputStream();
+            byte[] head;
+            try {
+                head = content.readNBytes((int) Math.min(prefetchSize, fileMetadata.getFileSize()));
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(content);
+                throw e;
+            }
+            if (head.length >= fileMetadata.getFileSize()) {
+                content.close();
+                return new PrefetchedEntry(fileMetadata, new ByteArrayInputStream(head));
+            }
+            return new PrefetchedEntry(fileMetadata,
+                    new SequenceInputStream(new ByteArrayInputStream(head), content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private PrefetchedEntry await(CompletableFuture<PrefetchedEntry> entry) throws IOException {
+        try {
+            return entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Entry names are flat, path separators in filenames must not place entries outside the extraction directory.
+     * Files sharing a name get a counter appended, like `report (1).pdf`
+     */
+    static String entryName(String filename, Set<String> entryNames) {
+        String name = filename.replace('/', '_').replace('\\', '_');
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            name = "_";
+        }
+        int extension = name.lastIndexOf('.');
+        String uniqueName = name;
+        for (int count = 1; !entryNames.add(uniqueName); count++) {
+            uniqueName = extension > 0 ?
+                    name.substring(0, extension) + " (" + count + ")" + name.substring(extension) :
+                    name + " (" + count + ")";
+        }
+        return uniqueName;
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException ignored) {
+            // the content is not needed any more
+        }
+    }
+
+    private record PrefetchedEntry(FileMetadata fileMetadata, InputStream content) {
+    }
+}
@@ -1,6 +1,8 @@
 package com.muhim.storage.service;
 
-import java.io.InputStream;
+import com.muhim.storage.dto.FileDownloadDTO;
+import com.muhim.storage.model.FileMetadata;
+import org.springframework.core.io.Resource;
 
 /**
  * File download service
@@ -9,19 +11,20 @@ import java.io.InputStream;
  */
 public interface StorageDownloadService {
     /**
-     * Return stream to start downloading the file
+     * Find the file with a single metadata lookup and describe how to download it
+     * The original filename is part of the result as
+     * filename could be changed when storing in database
      *
      * @param id file id
-     * @return inputStream
+     * @return filename, size, content type, hash and the lazily opened content of the file
      */
-    InputStream downloadFileStream(String id);
+    FileDownloadDTO getFileDownload(String id);
 
     /**
-     * Get original filename to set before download as
-     * filename could be changed when storing in database
+     * Content of a file which was already looked up
      *
-     * @param id file id
-     * @return a string
+     * @param fileMetadata the file
+     * @return lazily opened content, served from the blob content cache if the file is cacheable
      */
-    String getOriginalFilename(String id);
+    Resource openResource(FileMetadata fileMetadata);
 }
@@ -1,45 +1,80 @@
 package com.muhim.storage.service;
 
-import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.cache.BlobContentCache;
+import com.muhim.storage.cache.CachedBlobResource;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.dto.FileDownloadDTO;
 import com.muhim.storage.model.FileMetadata;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import io.micrometer.observation.annotation.Observed;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
-import java.io.InputStream;
-
 /**
  * StorageDownloadService implementation
  *
  * @author muhim
  */
 @Service
+@Observed
 public class StorageDownloadServiceImpl implements StorageDownloadService {
 
     private final FileMetaDataRepository fileMetaDataRepository;
 
-    private final GridFsClient gridFsClient;
+    private final BlobStore blobStore;
+
+    private final FileMetadataCache fileMetadataCache;
+
+    private final BlobContentCache blobContentCache;
 
     @Autowired
-    public StorageDownloadServiceImpl(GridFsClient gridFsClient, FileMetaDataRepository repository) {
-        this.gridFsClient = gridFsClient;
+    public StorageDownloadServiceImpl(BlobStore blobStore,
+                                      FileMetaDataRepository repository,
+                                      FileMetadataCache fileMetadataCache,
+                                      BlobContentCache blobContentCache) {
+        this.blobStore = blobStore;
         this.fileMetaDataRepository = repository;
+        this.fileMetadataCache = fileMetadataCache;
+        this.blobContentCache = blobContentCache;
     }
 
     @Override
-    public InputStream downloadFileStream(String id) {
-        ObjectId objectId = new ObjectId(id);
-        if (!fileMetaDataRepository.existsByFileId(objectId)) {
+    public FileDownloadDTO getFileDownload(String id) {
+        FileMetadata fileMetadata = fileMetadataCache.getByFileId(new ObjectId(id), fileMetaDataRepository::findByFileId);
+        if (fileMetadata == null) {
             throw new IllegalArgumentException("File does not exist!");
         }
-        return gridFsClient.openDownloadStream(objectId);
+
+        return FileDownloadDTO.builder()
+                .filename(fileMetadata.getFilename())
+                .fileSize(fileMetadata.getFileSize())
+                .contentType(fileMetadata.getContentType())
+                .fileRollingHash(fileMetadata.getFileRollingHash())
+                .uploadDate(fileMetadata.getUploadDate())
+                .resource(openResource(fileMetadata))
+                .build();
     }
 
+    /**
+     * Small public files are served from the blob content cache
+     */
     @Override
-    public String getOriginalFilename(String id) {
-        ObjectId objectId = new ObjectId(id);
-        FileMetadata fileMetadata = fileMetaDataRepository.findByFileId(objectId);
-        return fileMetadata.getFilename();
+    public Resource openResource(FileMetadata fileMetadata) {
+        long lastModified = fileMetadata.getUploadDate() != null ? fileMetadata.getUploadDate().getTime() : 0;
+        if (blobContentCache.isCacheable(fileMetadata)) {
+            return new CachedBlobResource(blobContentCache,
+                    blobStore,
+                    fileMetadata.getStorageId(),
+                    fileMetadata.getFilename(),
+                    fileMetadata.getFileSize(),
+                    lastModified);
+        }
+        return blobStore.openResource(fileMetadata.getStorageId(),
+                fileMetadata.getFilename(),
+                fileMetadata.getFileSize(),
+                lastModified);
     }
 }
@@ -1,5 +1,10 @@
 package com.muhim.storage.service;
 
+import com.muhim.storage.dto.BulkOperationResultDTO;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
  * File modification and deletion service
@@ -23,4 +28,29 @@ public interface StorageModificationService {
      * @param newFilename enw file name to rename it
      */
     void renameFile(String user, String filename, String newFilename);
+
+    /**
+     * To delete all files of the user matching every given filter, in batches
+     *
+     * @param user the files belong to the user
+     * @param filenames only delete files with these names, null for any name
+     * @param tag only delete files with this tag, null or empty for any tag
+     * @param uploadedFrom only delete files uploaded at or after, may be null
+     * @param uploadedTo only delete files uploaded before, may be null
+     * @return number of deleted files and the requested filenames which were not found
+     */
+    BulkOperationResultDTO deleteFiles(String user,
+                                       List<String> filenames,
+                                       String tag,
+                                       Date uploadedFrom,
+                                       Date uploadedTo);
+
+    /**
+     * To rename many files of the user, in batches
+     *
+     * @param user the files belong to the user
+     * @param renames new file name by existing file name
+     * @return number of renamed files and the reason for each file which was not renamed
+     */
+    BulkOperationResultDTO renameFiles(String user, Map<String, String> renames);
 }
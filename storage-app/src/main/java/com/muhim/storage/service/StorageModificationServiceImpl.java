@@ -1,48 +1,279 @@
 package com.muhim.storage.service;
 
-import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.cache.BlobContentCache;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.dto.BulkOperationResultDTO;
+import com.muhim.storage.model.FileIdentityProjection;
 import com.muhim.storage.model.FileMetadata;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 /**
  * StorageModificationService implementation
+ * Bulk operations work in batches of {@value #BULK_BATCH_SIZE} files,
+ * each batch is one query, one bulk write and one batch of blob tombstones.
+ * Files sharing content with others are removed one by one, see {@link #deleteBatch}
  *
  * @author muhim
  */
 @Service
+@Observed
 public class StorageModificationServiceImpl implements StorageModificationService {
 
+    static final int BULK_BATCH_SIZE = 1000;
+
+    private static final String FILE_NOT_FOUND = "File does not exist!";
+    private static final String FILE_ALREADY_EXISTS = "File already exists!";
+
     private final FileMetaDataRepository fileMetaDataRepository;
-    private final GridFsClient gridFsClient;
+    private final BlobReferenceService blobReferenceService;
+    private final FileMetadataCache fileMetadataCache;
+    private final BlobContentCache blobContentCache;
+    private final MongoTemplate mongoTemplate;
 
 
     @Autowired
-    public StorageModificationServiceImpl(GridFsClient gridFsClient, FileMetaDataRepository repository) {
-        this.gridFsClient = gridFsClient;
+    public StorageModificationServiceImpl(BlobReferenceService blobReferenceService,
+                                          FileMetaDataRepository repository,
+                                          FileMetadataCache fileMetadataCache,
+                                          BlobContentCache blobContentCache,
+                                          MongoTemplate mongoTemplate) {
+        this.blobReferenceService = blobReferenceService;
         this.fileMetaDataRepository = repository;
+        this.fileMetadataCache = fileMetadataCache;
+        this.blobContentCache = blobContentCache;
+        this.mongoTemplate = mongoTemplate;
     }
 
     @Override
     public void deleteFilesByUserAndName(String user, String filename) {
-        if (!fileMetaDataRepository.existsByUserAndFilename(user, filename)) {
-            throw new IllegalArgumentException("File does not exist!");
+        // only the request that actually removes the file releases its blob,
+        // a concurrent delete of the same file finds nothing and must not decrement the shared count again
+        FileMetadata fileMetadata = fileMetadataCache.getIfPresent(user, filename);
+        if (fileMetadata == null || mongoTemplate.remove(byIdAndFilename(fileMetadata, filename), FileMetadata.class)
+                .getDeletedCount() == 0) {
+            // not cached, or the cached file was changed through another instance
+            fileMetadata = mongoTemplate.findAndRemove(
+                    Query.query(Criteria.where("user").is(user).and("filename").is(filename)), FileMetadata.class);
         }
-        FileMetadata fileMetadata = fileMetaDataRepository.findByUserAndFilename(user, filename);
-        gridFsClient.delete(fileMetadata.getFileId());
-        fileMetaDataRepository.delete(fileMetadata);
+        if (fileMetadata == null) {
+            fileMetadataCache.invalidate(user, filename);
+            throw new IllegalArgumentException(FILE_NOT_FOUND);
+        }
+        // the blob is released after its reference is gone, see BlobGarbageCollector
+        blobReferenceService.release(fileMetadata);
+        fileMetadataCache.invalidate(fileMetadata);
+        blobContentCache.evict(fileMetadata.getStorageId());
     }
 
     @Override
     public void renameFile(String user, String filename, String newFilename) {
-        if (!fileMetaDataRepository.existsByUserAndFilename(user, filename)) {
+        FileMetadata fileMetadata = fileMetadataCache.getByUserAndFilename(user, filename,
+                fileMetaDataRepository::findByUserAndFilename);
+        if (fileMetadata != null && !updateFilename(fileMetadata, filename, newFilename)) {
+            // the cached file was changed through another instance, retry with the file as stored
+            fileMetadataCache.invalidate(fileMetadata);
+            fileMetadata = fileMetaDataRepository.findByUserAndFilename(user, filename);
+            if (fileMetadata != null && !updateFilename(fileMetadata, filename, newFilename)) {
+                fileMetadata = null;
+            }
+        }
+        if (fileMetadata == null) {
             throw new IllegalArgumentException("File does not exist or you don't have write access to it!");
         }
+        fileMetadataCache.invalidate(fileMetadata);
+        fileMetadataCache.invalidate(user, newFilename);
+    }
 
-        FileMetadata fileMetadata = fileMetaDataRepository.findByUserAndFilename(user, filename);
-        fileMetadata.setFilename(newFilename);
-        fileMetaDataRepository.save(fileMetadata);
+    /**
+     * Only the filename is written, changes made concurrently to other fields are kept,
+     * and a file deleted or renamed in the meantime no longer matches
+     *
+     * @return false if the file no longer matches
+     */
+    private boolean updateFilename(FileMetadata fileMetadata, String filename, String newFilename) {
+        return mongoTemplate.updateFirst(byIdAndFilename(fileMetadata, filename),
+                Update.update("filename", newFilename),
+                FileMetadata.class).getMatchedCount() > 0;
     }
-}
 
+    private static Query byIdAndFilename(FileMetadata fileMetadata, String filename) {
+        return Query.query(Criteria.where("id").is(fileMetadata.getId()).and("filename").is(filename));
+    }
+
+    @Override
+    public BulkOperationResultDTO deleteFiles(String user,
+                                              List<String> filenames,
+                                              String tag,
+                                              Date uploadedFrom,
+                                              Date uploadedTo) {
+        Query query = new Query(buildDeleteCriteria(user, filenames, tag, uploadedFrom, uploadedTo))
+                .limit(BULK_BATCH_SIZE);
+        query.fields().include("id", "fileId", "blobId", "user", "filename", "contentHash");
+
+        Set<String> deletedFilenames = new HashSet<>();
+        long deletedCount = 0;
+        List<FileMetadata> batch;
+        do {
+            // deleted files no longer match, so the same query returns the next batch
+            batch = mongoTemplate.find(query, FileMetadata.class);
+            if (batch.isEmpty()) {
+                break;
+            }
+            long batchDeletedCount = deleteBatch(batch, deletedFilenames);
+            deletedCount += batchDeletedCount;
+            if (batchDeletedCount == 0) {
+                // deleted concurrently by another request, avoid reading the same batch again
+                break;
+            }
+        } while (batch.size() == BULK_BATCH_SIZE);
+
+        Map<String, String> failures = new LinkedHashMap<>();
+        if (filenames != null) {
+            filenames.stream()
+                    .filter(filename -> !deletedFilenames.contains(filename))
+                    .forEach(filename -> failures.put(filename, FILE_NOT_FOUND));
+        }
+        return BulkOperationResultDTO.builder()
+                .succeededCount(deletedCount)
+                .failures(failures)
+                .build();
+    }
+
+    @Override
+    public BulkOperationResultDTO renameFiles(String user, Map<String, String> renames) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(renames.entrySet());
+        Map<String, String> failures = new LinkedHashMap<>();
+        Set<String> newFilenames = new HashSet<>();
+        long renamedCount = 0;
+
+        for (int start = 0; start < entries.size(); start += BULK_BATCH_SIZE) {
+            List<Map.Entry<String, String>> batch = entries.subList(start,
+                    Math.min(start + BULK_BATCH_SIZE, entries.size()));
+
+            Map<String, FileIdentityProjection> existingFiles = fileMetaDataRepository
+                    .findByUserAndFilenameIn(user, batch.stream().map(Map.Entry::getKey).toList()).stream()
+                    .collect(Collectors.toMap(FileIdentityProjection::getFilename, Function.identity(),
+                            (first, second) -> first));
+            Set<String> takenFilenames = fileMetaDataRepository
+                    .findByUserAndFilenameIn(user, batch.stream().map(Map.Entry::getValue).toList()).stream()
+                    .map(FileIdentityProjection::getFilename)
+                    .collect(Collectors.toSet());
+
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                    FileMetadata.class);
+            List<FileIdentityProjection> renamedFiles = new ArrayList<>();
+            for (Map.Entry<String, String> rename : batch) {
+                String filename = rename.getKey();
+                String newFilename = rename.getValue();
+                FileIdentityProjection existingFile = existingFiles.get(filename);
+                if (existingFile == null) {
+                    failures.put(filename, FILE_NOT_FOUND);
+                } else if (newFilename == null || newFilename.isBlank()) {
+                    failures.put(filename, "New filename must not be empty!");
+                } else if (takenFilenames.contains(newFilename) || !newFilenames.add(newFilename)) {
+                    failures.put(filename, FILE_ALREADY_EXISTS);
+                } else {
+                    bulkOperations.updateOne(Query.query(Criteria.where("user").is(user).and("filename").is(filename)),
+                            Update.update("filename", newFilename));
+                    renamedFiles.add(existingFile);
+                }
+            }
+
+            if (!renamedFiles.isEmpty()) {
+                renamedCount += bulkOperations.execute().getModifiedCount();
+                renamedFiles.forEach(file -> {
+                    fileMetadataCache.invalidate(file.getFileId());
+                    fileMetadataCache.invalidate(user, file.getFilename());
+                    fileMetadataCache.invalidate(user, renames.get(file.getFilename()));
+                });
+            }
+        }
+
+        return BulkOperationResultDTO.builder()
+                .succeededCount(renamedCount)
+                .failures(failures)
+                .build();
+    }
+
+    /**
+     * Files with shared content are removed one by one with findAndRemove and only the removed ones are released,
+     * a file deleted concurrently by another request must not decrement the shared reference count twice.
+     * Files with their own blob are removed in bulk, releasing them only tombstones the blob, which is idempotent
+     *
+     * @param deletedFilenames collects the names of the removed files
+     * @return number of files removed by this call
+     */
+    private long deleteBatch(List<FileMetadata> batch, Set<String> deletedFilenames) {
+        List<FileMetadata> unsharedFiles = batch.stream()
+                .filter(fileMetadata -> fileMetadata.getContentHash() == null)
+                .toList();
+        List<FileMetadata> removedFiles = new ArrayList<>();
+        long deletedCount = 0;
+
+        if (!unsharedFiles.isEmpty()) {
+            deletedCount += mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileMetadata.class)
+                    .remove(Query.query(Criteria.where("id").in(unsharedFiles.stream().map(FileMetadata::getId).toList())))
+                    .execute()
+                    .getDeletedCount();
+            removedFiles.addAll(unsharedFiles);
+        }
+        for (FileMetadata fileMetadata : batch) {
+            if (fileMetadata.getContentHash() != null && mongoTemplate.findAndRemove(
+                    Query.query(Criteria.where("id").is(fileMetadata.getId())), FileMetadata.class) != null) {
+                deletedCount++;
+                removedFiles.add(fileMetadata);
+            }
+        }
+
+        blobReferenceService.releaseAll(removedFiles);
+        for (FileMetadata fileMetadata : removedFiles) {
+            deletedFilenames.add(fileMetadata.getFilename());
+            fileMetadataCache.invalidate(fileMetadata);
+            blobContentCache.evict(fileMetadata.getStorageId());
+        }
+        return deletedCount;
+    }
+
+    private Criteria buildDeleteCriteria(String user,
+                                         List<String> filenames,
+                                         String tag,
+                                         Date uploadedFrom,
+                                         Date uploadedTo) {
+        Criteria criteria = Criteria.where("user").is(user);
+        if (filenames != null) {
+            criteria.and("filename").in(filenames);
+        }
+        if (tag != null && !tag.isEmpty()) {
+            criteria.and("normalizedTags").is(tag.toLowerCase(Locale.ROOT));
+        }
+        if (uploadedFrom != null || uploadedTo != null) {
+            Criteria uploadDate = criteria.and("uploadDate");
+            if (uploadedFrom != null) {
+                uploadDate.gte(uploadedFrom);
+            }
+            if (uploadedTo != null) {
+                uploadDate.lt(uploadedTo);
+            }
+        }
+        return criteria;
+    }
+}
@@ -1,10 +1,13 @@
 package com.muhim.storage.service;
 
+import com.muhim.storage.dto.BatchUploadResultDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
 import com.muhim.storage.enums.FileVisibility;
+import org.bson.types.ObjectId;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
@@ -22,11 +25,93 @@ public interface StorageUploadService {
      * @param file the file to upload
      * @param visibility visibility settings
      * @param tags list of tags
+     * @param fileDigest optional hex hash of the file with `storage.hashing.algorithm` provided by the client,
+     *                   used to reject duplicates before storing and to verify the upload
      * @param baseUrl to dynamically create the download link
      * @return on successful upload - the file metadata with download link
      */
     FileMetadataDTO saveFile(String user,
                              MultipartFile file,
                              FileVisibility visibility,
-                             List<String> tags, String baseUrl) throws IOException, NoSuchAlgorithmException;
+                             List<String> tags,
+                             String fileDigest,
+                             String baseUrl) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Upload file content from a stream to database with given parameters
+     *
+     * @param user uploaded by the user
+     * @param filename original filename
+     * @param contentType declared content type, detected from the content if missing
+     * @param inputStream the file content, consumed once and closed
+     * @param contentLength size of the content if known in advance, otherwise -1
+     * @param visibility visibility settings
+     * @param tags list of tags
+     * @param fileDigest optional hex hash of the file with `storage.hashing.algorithm` provided by the client
+     * @param baseUrl to dynamically create the download link
+     * @return on successful upload - the file metadata with download link
+     */
+    FileMetadataDTO saveFile(String user,
+                             String filename,
+                             String contentType,
+                             InputStream inputStream,
+                             long contentLength,
+                             FileVisibility visibility,
+                             List<String> tags,
+                             String fileDigest,
+                             String baseUrl) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Save a file whose content is stored already as parts, e.g. the chunks of an upload session
+     * The content is read once to detect its type and hash it, the file is then composed of the parts
+     * without writing the content again
+     *
+     * @param user uploaded by the user
+     * @param filename original filename
+     * @param contentType declared content type, detected from the content if missing
+     * @param partIds the stored parts in order, they stay blobs of their own and can be deleted afterwards
+     * @param content the content of the parts in order, consumed once and closed
+     * @param visibility visibility settings
+     * @param tags list of tags
+     * @param fileDigest optional hex hash of the file with `storage.hashing.algorithm` provided by the client
+     * @param baseUrl to dynamically create the download link
+     * @return on successful upload - the file metadata with download link
+     */
+    FileMetadataDTO saveComposedFile(String user,
+                                     String filename,
+                                     String contentType,
+                                     List<ObjectId> partIds,
+                                     InputStream content,
+                                     FileVisibility visibility,
+                                     List<String> tags,
+                                     String fileDigest,
+                                     String baseUrl) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Upload many files at once, the files are stored concurrently and checked for duplicates in bulk
+     * A rejected file does not fail the other files of the batch
+     *
+     * @param user uploaded by the user
+     * @param files the files to upload
+     * @param visibility visibility settings of all files
+     * @param tags list of tags of all files
+     * @param baseUrl to dynamically create the download links
+     * @return result of each file in the order of the given files
+     */
+    List<BatchUploadResultDTO> saveFiles(String user,
+                                         List<MultipartFile> files,
+                                         FileVisibility visibility,
+                                         List<String> tags,
+                                         String baseUrl);
+
+    /**
+     * Checks which can be done before any content is received,
+     * throws IllegalArgumentException if the upload would be rejected
+     *
+     * @param user uploaded by the user
+     * @param filename original filename
+     * @param tags list of tags
+     * @param fileDigest optional hex hash of the file with `storage.hashing.algorithm` provided by the client
+     */
+    void validateUpload(String user, String filename, List<String> tags, String fileDigest);
 }
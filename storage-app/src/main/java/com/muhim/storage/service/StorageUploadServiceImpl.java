@@ -1,46 +1,124 @@
 package com.muhim.storage.service;
 
-import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.config.UploadExecutorConfig;
+import com.muhim.storage.dto.BatchUploadResultDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
 import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.model.FileIdentityProjection;
 import com.muhim.storage.model.FileMetadata;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import com.muhim.storage.utils.DigestingInputStream;
 import com.muhim.storage.utils.FileUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.annotation.Observed;
 import org.apache.tika.Tika;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * StorageUploadService implementation
+ * Each phase of an upload is observed as `storage.upload.phase`, so it is timed and traced as a span of its own.
+ * Hashing runs while the content is stored, its share of the store phase is timed separately
  *
  * @author muhim
  */
 @Service
+@Observed
 public class StorageUploadServiceImpl implements StorageUploadService {
 
-    private static final int MAX_TAG_LIMIT = 5;
+    static final int MAX_TAG_LIMIT = 5;
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final String UPLOAD_PHASE = "storage.upload.phase";
+
+    /**
+     * Bytes kept buffered in front of the upload stream so tika can sniff the content-type
+     * without consuming the stream that is written to the blob store, shared with the reactive stack
+     */
+    static final int CONTENT_SNIFF_BUFFER_SIZE = 64 * 1024;
 
     private final FileMetaDataRepository fileMetaDataRepository;
 
-    private final GridFsClient gridFsClient;
+    private final BlobStore blobStore;
+
+    private final BlobReferenceService blobReferenceService;
+
+    private final FileMetadataCache fileMetadataCache;
+
+    private final ContentHasherFactory contentHasherFactory;
+
+    private final ExecutorService uploadExecutor;
 
     /**
      * Apache library to help analyse the file content-type
      */
     private final Tika tika;
 
+    private final ObservationRegistry observationRegistry;
+
+    private final Timer hashTimer;
+
+    private final Counter uploadedBytes;
+
     @Autowired
-    public StorageUploadServiceImpl(GridFsClient gridFsClient, FileMetaDataRepository fileMetaDataRepository) {
+    public StorageUploadServiceImpl(BlobStore blobStore,
+                                    FileMetaDataRepository fileMetaDataRepository,
+                                    BlobReferenceService blobReferenceService,
+                                    FileMetadataCache fileMetadataCache,
+                                    ContentHasherFactory contentHasherFactory,
+                                    @Qualifier(UploadExecutorConfig.UPLOAD_EXECUTOR) ExecutorService uploadExecutor,
+                                    MeterRegistry meterRegistry,
+                                    ObservationRegistry observationRegistry) {
         this.tika = new Tika();
-        this.gridFsClient = gridFsClient;
+        this.blobStore = blobStore;
         this.fileMetaDataRepository = fileMetaDataRepository;
+        this.blobReferenceService = blobReferenceService;
+        this.fileMetadataCache = fileMetadataCache;
+        this.contentHasherFactory = contentHasherFactory;
+        this.uploadExecutor = uploadExecutor;
+        this.observationRegistry = observationRegistry;
+        // tagged like the timers of the observed phases
+        this.hashTimer = Timer.builder(UPLOAD_PHASE)
+                .tag("phase", "hash")
+                .tag("error", "none")
+                .register(meterRegistry);
+        this.uploadedBytes = Counter.builder("storage.upload.bytes")
+                .description("Content bytes of stored uploads")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
     }
 
 
@@ -49,39 +127,306 @@ public class StorageUploadServiceImpl implements StorageUploadService {
                                     MultipartFile file,
                                     FileVisibility visibility,
                                     List<String> tags,
+                                    String fileDigest,
                                     String baseUrl) throws IOException, NoSuchAlgorithmException {
 
-        String contentType = file.getContentType();
-        if (contentType == null || contentType.isEmpty()) {
-            contentType = tika.detect(file.getInputStream());
+        validateUpload(user, file.getOriginalFilename(), tags, fileDigest);
+
+        try (InputStream inputStream = file.getInputStream()) {
+            return storeFile(user,
+                    file.getOriginalFilename(),
+                    file.getContentType(),
+                    inputStream,
+                    writeBlob(file.getOriginalFilename(), file.getSize()),
+                    visibility,
+                    tags,
+                    fileDigest,
+                    baseUrl);
         }
+    }
+
+    @Override
+    public FileMetadataDTO saveFile(String user,
+                                    String filename,
+                                    String contentType,
+                                    InputStream inputStream,
+                                    long contentLength,
+                                    FileVisibility visibility,
+                                    List<String> tags,
+                                    String fileDigest,
+                                    String baseUrl) throws IOException, NoSuchAlgorithmException {
+
+        validateUpload(user, filename, tags, fileDigest);
+        return storeFile(user, filename, contentType, inputStream, writeBlob(filename, contentLength), visibility, tags,
+                fileDigest, baseUrl);
+    }
+
+    @Override
+    public FileMetadataDTO saveComposedFile(String user,
+                                            String filename,
+                                            String contentType,
+                                            List<ObjectId> partIds,
+                                            InputStream content,
+                                            FileVisibility visibility,
+                                            List<String> tags,
+                                            String fileDigest,
+                                            String baseUrl) throws IOException, NoSuchAlgorithmException {
+
+        validateUpload(user, filename, tags, fileDigest);
+        try (InputStream inputStream = content) {
+            return storeFile(user, filename, contentType, inputStream, composeBlob(filename, partIds), visibility, tags,
+                    fileDigest, baseUrl);
+        }
+    }
+
+    @Override
+    public void validateUpload(String user, String filename, List<String> tags, String fileDigest) {
+        phase("validation").observe(() -> {
+            validateTags(tags);
+            validateFileBeforeStore(user, filename, fileDigest);
+        });
+    }
+
+    @Override
+    public List<BatchUploadResultDTO> saveFiles(String user,
+                                                List<MultipartFile> files,
+                                                FileVisibility visibility,
+                                                List<String> tags,
+                                                String baseUrl) {
         validateTags(tags);
-        validateContentType(contentType);
+        if (files.isEmpty() || files.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch must contain 1 to " + MAX_BATCH_SIZE + " files");
+        }
+
+        BatchUploadResultDTO[] results = new BatchUploadResultDTO[files.size()];
+
+        // one query for all filenames, later files with a name seen before are rejected as well
+        Set<String> takenFilenames = fileMetaDataRepository.findByUserAndFilenameIn(user,
+                        files.stream().map(MultipartFile::getOriginalFilename).toList())
+                .stream()
+                .map(FileIdentityProjection::getFilename)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        // the phases of files stored concurrently are traced as part of the batch
+        Observation batchObservation = Objects.requireNonNullElse(observationRegistry.getCurrentObservation(),
+                Observation.NOOP);
+        Map<Integer, Future<StoredBlob>> storedBlobFutures = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            if (!takenFilenames.add(file.getOriginalFilename())) {
+                results[i] = failedResult(file.getOriginalFilename(), "File already exists");
+                continue;
+            }
+            storedBlobFutures.put(i, uploadExecutor.submit(() -> {
+                try (Observation.Scope scope = batchObservation.openScope();
+                     InputStream inputStream = file.getInputStream()) {
+                    return storeBlob(file.getOriginalFilename(), file.getContentType(), inputStream,
+                            writeBlob(file.getOriginalFilename(), file.getSize()), null);
+                }
+            }));
+        }
+
+        Map<Integer, StoredBlob> storedBlobs = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Future<StoredBlob>> storedBlobFuture : storedBlobFutures.entrySet()) {
+            String filename = files.get(storedBlobFuture.getKey()).getOriginalFilename();
+            try {
+                storedBlobs.put(storedBlobFuture.getKey(), storedBlobFuture.getValue().get());
+            } catch (ExecutionException e) {
+                results[storedBlobFuture.getKey()] = failedResult(filename,
+                        Objects.requireNonNullElse(e.getCause().getMessage(), "Failed to store file"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                storedBlobFutures.values().forEach(future -> future.cancel(true));
+                storedBlobs.values().forEach(storedBlob -> blobStore.delete(storedBlob.blobId()));
+                throw new IllegalStateException("Batch upload was interrupted", e);
+            }
+        }
+
+        // one query for all hashes, later files with content seen before are rejected as well
+        Set<String> takenHashes = fileMetaDataRepository.findByUserAndFileRollingHashInAndHashAlgorithmIn(user,
+                        storedBlobs.values().stream().map(StoredBlob::fileRollingHash).toList(),
+                        contentHasherFactory.getAlgorithm().storedValues())
+                .stream()
+                .map(FileIdentityProjection::getFileRollingHash)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        Map<Integer, FileMetadata> fileMetadataByIndex = new LinkedHashMap<>();
+        for (Map.Entry<Integer, StoredBlob> storedBlob : storedBlobs.entrySet()) {
+            String filename = files.get(storedBlob.getKey()).getOriginalFilename();
+            if (!takenHashes.add(storedBlob.getValue().fileRollingHash())) {
+                blobStore.delete(storedBlob.getValue().blobId());
+                results[storedBlob.getKey()] = failedResult(filename, "File already exists");
+                continue;
+            }
+            fileMetadataByIndex.put(storedBlob.getKey(),
+                    buildFileMetadata(user, filename, visibility, tags, storedBlob.getValue()));
+        }
+
+        if (!fileMetadataByIndex.isEmpty()) {
+            List<FileMetadata> insertedFileMetadata;
+            try {
+                insertedFileMetadata = phase("metadata-save").observe(() ->
+                        fileMetaDataRepository.insert(fileMetadataByIndex.values()));
+            } catch (RuntimeException e) {
+                fileMetadataByIndex.values().forEach(blobReferenceService::release);
+                throw e;
+            }
+            Iterator<FileMetadata> inserted = insertedFileMetadata.iterator();
+            for (Integer index : fileMetadataByIndex.keySet()) {
+                FileMetadata fileMetadata = inserted.next();
+                fileMetadataCache.invalidate(fileMetadata);
+                results[index] = BatchUploadResultDTO.builder()
+                        .fileName(fileMetadata.getFilename())
+                        .success(true)
+                        .file(convertToFileMetadataDTO(fileMetadata, baseUrl))
+                        .build();
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private FileMetadataDTO storeFile(String user,
+                                      String filename,
+                                      String declaredContentType,
+                                      InputStream fileInputStream,
+                                      BlobWriter blobWriter,
+                                      FileVisibility visibility,
+                                      List<String> tags,
+                                      String fileDigest,
+                                      String baseUrl) throws IOException, NoSuchAlgorithmException {
+
+        StoredBlob storedBlob = storeBlob(filename, declaredContentType, fileInputStream, blobWriter, fileDigest);
+        phase("duplicate-check").observe(() ->
+                validateFile(user, filename, storedBlob));
 
-        ObjectId gridFsObjectId = saveFile(file.getOriginalFilename(), file, contentType);
+        FileMetadata fileMetadata = buildFileMetadata(user, filename, visibility, tags, storedBlob);
+        FileMetadata savedFileMetadata;
+        try {
+            savedFileMetadata = phase("metadata-save").observe(() -> fileMetaDataRepository.save(fileMetadata));
+        } catch (RuntimeException e) {
+            // the reference acquired for the file would otherwise keep the blob forever
+            blobReferenceService.release(fileMetadata);
+            throw e;
+        }
+        fileMetadataCache.invalidate(savedFileMetadata);
+        return convertToFileMetadataDTO(savedFileMetadata, baseUrl);
+    }
+
+    /**
+     * Writes the content to the blob store while detecting its content type and hashing it
+     */
+    private StoredBlob storeBlob(String filename,
+                                 String declaredContentType,
+                                 InputStream fileInputStream,
+                                 BlobWriter blobWriter,
+                                 String fileDigest) throws IOException, NoSuchAlgorithmException {
+
+        try (InputStream inputStream = new BufferedInputStream(fileInputStream, CONTENT_SNIFF_BUFFER_SIZE)) {
+            String contentType = declaredContentType;
+            if (contentType == null || contentType.isEmpty()) {
+                // tika marks and resets the buffered stream, so the sniffed bytes are stored as well
+                contentType = phase("detection").observeChecked(() -> tika.detect(inputStream));
+            }
+            validateContentType(contentType);
 
-        String fileRollingHash = FileUtils.generateFileRollingHash(gridFsClient.openDownloadStream(gridFsObjectId));
-        validateFile(user, file, gridFsObjectId, fileRollingHash);
+            // blobs are shared by the sha-256 content hash only, never by the rolling hash,
+            // which may be a non-cryptographic one such as xxh64 and only finds duplicates of the user's own files
+            boolean contentAddressed = blobReferenceService.isContentAddressed();
+            DigestingInputStream contentHashInputStream = contentAddressed ?
+                    new DigestingInputStream(inputStream, FileUtils.CONTENT_HASH_ALGORITHM) : null;
+            // a sha-256 rolling hash equals the content hash, the content is then hashed only once
+            boolean sharedDigest = contentAddressed && contentHasherFactory.getAlgorithm() == HashAlgorithm.SHA_256;
+            DigestingInputStream digestingInputStream = sharedDigest ? contentHashInputStream :
+                    new DigestingInputStream(contentAddressed ? contentHashInputStream : inputStream,
+                            contentHasherFactory.newHasher());
+            // a sha-256 digest of the client is the content hash, known content is then only read to verify it
+            ObjectId knownBlobId = sharedDigest && fileDigest != null && !fileDigest.isEmpty() ?
+                    blobReferenceService.acquireExisting(fileDigest.toLowerCase()) : null;
+            BlobWriter writer = knownBlobId == null ? blobWriter : (content, storedContentType) -> {
+                content.transferTo(OutputStream.nullOutputStream());
+                return knownBlobId;
+            };
+            String storedContentType = contentType;
+            ObjectId storedBlobId;
+            try {
+                storedBlobId = phase("store").observeChecked(() ->
+                        writer.write(digestingInputStream, storedContentType));
+            } catch (IOException | RuntimeException e) {
+                if (knownBlobId != null) {
+                    blobReferenceService.release(referenceOf(knownBlobId, fileDigest.toLowerCase()));
+                }
+                throw e;
+            }
+            hashTimer.record(digestingInputStream.getDigestNanos() +
+                    (contentAddressed && !sharedDigest ? contentHashInputStream.getDigestNanos() : 0),
+                    TimeUnit.NANOSECONDS);
+            uploadedBytes.increment(digestingInputStream.getByteCount());
 
+            // a known blob is referenced by the digest, which is verified to be the content hash right after
+            StoredBlob storedBlob = new StoredBlob(storedBlobId,
+                    contentType,
+                    digestingInputStream.getByteCount(),
+                    digestingInputStream.getHexDigest(),
+                    knownBlobId != null ? fileDigest.toLowerCase() :
+                            contentAddressed ? contentHashInputStream.getHexDigest() : null,
+                    knownBlobId != null);
+            validateFileDigest(fileDigest, storedBlob);
+            return storedBlob;
+        }
+    }
+
+    private Observation phase(String phase) {
+        return Observation.createNotStarted(UPLOAD_PHASE, observationRegistry)
+                .contextualName("upload " + phase)
+                .lowCardinalityKeyValue("phase", phase);
+    }
+
+    private FileMetadata buildFileMetadata(String user,
+                                           String filename,
+                                           FileVisibility visibility,
+                                           List<String> tags,
+                                           StoredBlob storedBlob) {
+        ObjectId fileId = storedBlob.blobId();
+        ObjectId blobId = null;
+        if (storedBlob.referenced()) {
+            blobId = storedBlob.blobId();
+            fileId = new ObjectId();
+        } else if (storedBlob.contentHash() != null) {
+            // the shared blob gets its own download id per file
+            blobId = blobReferenceService.acquire(storedBlob.contentHash(), storedBlob.blobId(), storedBlob.fileSize());
+            fileId = new ObjectId();
+        }
 
-        FileMetadata fileMetadata = FileMetadata.builder()
+        return FileMetadata.builder()
                 .user(user)
-                .filename(file.getOriginalFilename())
-                .fileId(gridFsObjectId)
+                .filename(filename)
+                .fileId(fileId)
+                .blobId(blobId)
+                .contentHash(storedBlob.contentHash())
                 .visibility(visibility)
                 .tags(tags.stream().sorted().toList())
-                .fileSize(file.getSize())
-                .contentType(contentType)
+                .normalizedTags(FileUtils.normalizeTags(tags.stream().sorted().toList()))
+                .fileSize(storedBlob.fileSize())
+                .contentType(storedBlob.contentType())
                 .uploadDate(new Date())
-                .fileRollingHash(fileRollingHash)
+                .fileRollingHash(storedBlob.fileRollingHash())
+                .hashAlgorithm(contentHasherFactory.getAlgorithm())
                 .build();
+    }
 
-
-        FileMetadata savedFileMetadata = fileMetaDataRepository.save(fileMetadata);
-        return convertToFileMetadataDTO(savedFileMetadata, baseUrl);
+    private BatchUploadResultDTO failedResult(String filename, String error) {
+        return BatchUploadResultDTO.builder()
+                .fileName(filename)
+                .success(false)
+                .error(error)
+                .build();
     }
 
-    private FileMetadataDTO convertToFileMetadataDTO(FileMetadata fileMetadata, String baseUrl) {
+    /**
+     * Shared with the reactive stack
+     */
+    static FileMetadataDTO convertToFileMetadataDTO(FileMetadata fileMetadata, String baseUrl) {
         return FileMetadataDTO.builder()
                 .fileName(fileMetadata.getFilename())
                 .uploadDate(fileMetadata.getUploadDate())
@@ -92,8 +437,18 @@ public class StorageUploadServiceImpl implements StorageUploadService {
     }
 
 
-    private ObjectId saveFile(String fileName, MultipartFile file, String contentType) throws IOException {
-        return gridFsClient.store(file.getInputStream(), fileName, contentType);
+    private BlobWriter writeBlob(String fileName, long contentLength) {
+        return (inputStream, contentType) -> blobStore.store(inputStream, fileName, contentType, contentLength);
+    }
+
+    /**
+     * The parts are stored already, their content is only read to detect its type and hash it
+     */
+    private BlobWriter composeBlob(String fileName, List<ObjectId> partIds) {
+        return (inputStream, contentType) -> {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+            return blobStore.compose(partIds, fileName, contentType);
+        };
     }
 
     private void validateContentType(String contentType) {
@@ -102,14 +457,56 @@ public class StorageUploadServiceImpl implements StorageUploadService {
         }
     }
 
-    private void validateFile(String user, MultipartFile file, ObjectId gridFsObjectId, String fileRollingHash) {
-        if (fileMetaDataRepository.existsByUserAndFilename(user, file.getOriginalFilename()) ||
-                fileMetaDataRepository.existsByUserAndFileRollingHash(user, fileRollingHash)) {
-            gridFsClient.delete(gridFsObjectId);
+    /**
+     * Rejects duplicates which can be detected without reading the file, so they never reach the blob store
+     */
+    private void validateFileBeforeStore(String user, String filename, String fileDigest) {
+        if (fileMetaDataRepository.existsByUserAndFilename(user, filename) ||
+                (fileDigest != null && !fileDigest.isEmpty() &&
+                        fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(user,
+                                fileDigest.toLowerCase(), contentHasherFactory.getAlgorithm().storedValues()))) {
             throw new IllegalArgumentException("File already exists");
         }
     }
 
+    private void validateFileDigest(String fileDigest, StoredBlob storedBlob) {
+        if (fileDigest != null && !fileDigest.isEmpty() && !fileDigest.equalsIgnoreCase(storedBlob.fileRollingHash())) {
+            discard(storedBlob);
+            throw new IllegalArgumentException("File digest does not match the uploaded content");
+        }
+    }
+
+    /**
+     * Checked again after storing, as the hash is only known now and
+     * a concurrent upload could have taken the filename in the meantime
+     */
+    private void validateFile(String user, String filename, StoredBlob storedBlob) {
+        if (fileMetaDataRepository.existsByUserAndFilename(user, filename) ||
+                fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(user,
+                        storedBlob.fileRollingHash(), contentHasherFactory.getAlgorithm().storedValues())) {
+            discard(storedBlob);
+            throw new IllegalArgumentException("File already exists");
+        }
+    }
+
+    /**
+     * Content of a file which is not saved, a known blob only loses the reference taken for the file
+     */
+    private void discard(StoredBlob storedBlob) {
+        if (storedBlob.referenced()) {
+            blobReferenceService.release(referenceOf(storedBlob.blobId(), storedBlob.contentHash()));
+        } else {
+            blobStore.delete(storedBlob.blobId());
+        }
+    }
+
+    private static FileMetadata referenceOf(ObjectId blobId, String contentHash) {
+        return FileMetadata.builder()
+                .blobId(blobId)
+                .contentHash(contentHash)
+                .build();
+    }
+
     private void validateTags(List<String> tags) {
         if (tags.size() > MAX_TAG_LIMIT) {
             throw new IllegalArgumentException("Tags limit exceeded! Max " +
@@ -118,4 +515,25 @@ public class StorageUploadServiceImpl implements StorageUploadService {
         }
     }
 
+    /**
+     * Stores the content while it is hashed
+     */
+    @FunctionalInterface
+    private interface BlobWriter {
+        ObjectId write(InputStream inputStream, String contentType) throws IOException;
+    }
+
+    /**
+     * Content written to the blob store, not yet referenced by file metadata
+     *
+     * @param contentHash SHA-256 of the content, only computed when storing content-addressed
+     * @param referenced  whether the content was known and blobId is the shared blob, already referenced for the file
+     */
+    private record StoredBlob(ObjectId blobId,
+                              String contentType,
+                              long fileSize,
+                              String fileRollingHash,
+                              String contentHash,
+                              boolean referenced) {
+    }
 }
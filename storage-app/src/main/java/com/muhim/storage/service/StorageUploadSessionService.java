@@ -0,0 +1,74 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.dto.UploadSessionDTO;
+import com.muhim.storage.enums.FileVisibility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Resumable upload service
+ * A file is uploaded as numbered chunks, in any order and in parallel,
+ * and becomes a stored file once the session is committed
+ *
+ * @author muhim
+ */
+public interface StorageUploadSessionService {
+
+    /**
+     * Start a new upload session
+     *
+     * @param user uploaded by the user
+     * @param filename name of the file
+     * @param contentType declared content type, optional
+     * @param visibility visibility settings
+     * @param tags list of tags
+     * @param totalChunks expected number of chunks, optional
+     * @return the created session
+     */
+    UploadSessionDTO createSession(String user,
+                                   String filename,
+                                   String contentType,
+                                   FileVisibility visibility,
+                                   List<String> tags,
+                                   Integer totalChunks);
+
+    /**
+     * Store a chunk of the file, uploading a chunk again replaces it
+     *
+     * @param sessionId upload session id
+     * @param chunkIndex zero based chunk number
+     * @param inputStream chunk content
+     * @return the session including the chunk
+     */
+    UploadSessionDTO putChunk(String sessionId, int chunkIndex, InputStream inputStream) throws NoSuchAlgorithmException;
+
+    /**
+     * Find the session to resume an upload
+     *
+     * @param sessionId upload session id
+     * @return the session with the received chunks
+     */
+    UploadSessionDTO getSession(String sessionId);
+
+    /**
+     * Assemble the chunks into the stored file and end the session
+     *
+     * @param sessionId upload session id
+     * @param fileDigest optional hex hash of the whole file with `storage.hashing.algorithm` provided by the client
+     * @param baseUrl to dynamically create the download link
+     * @return on successful upload - the file metadata with download link
+     */
+    FileMetadataDTO commitSession(String sessionId, String fileDigest, String baseUrl)
+            throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Abort the session and delete the received chunks
+     *
+     * @param sessionId upload session id
+     */
+    void abortSession(String sessionId);
+}
@@ -0,0 +1,302 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.dto.UploadSessionDTO;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.hash.ContentHasher;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.model.UploadSession;
+import com.muhim.storage.model.UploadSession.UploadChunk;
+import com.muhim.storage.repository.UploadSessionRepository;
+import com.muhim.storage.utils.DigestingInputStream;
+import com.muhim.storage.utils.PartsInputStream;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * StorageUploadSessionService implementation
+ * Chunks are written to the blob store as they arrive and registered on the session atomically,
+ * so chunks of one session can be uploaded concurrently.
+ * On commit the chunks are read once to verify and hash them, the file is composed of the stored chunks
+ * without writing its content a second time
+ *
+ * @author muhim
+ */
+@Service
+public class StorageUploadSessionServiceImpl implements StorageUploadSessionService {
+
+    private static final String CHUNKS = "chunks";
+
+    private static final String COMMITTING = "committing";
+
+    private final UploadSessionRepository uploadSessionRepository;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final BlobStore blobStore;
+
+    private final StorageUploadService storageUploadService;
+
+    private final BlobGarbageCollector blobGarbageCollector;
+
+    private final ContentHasherFactory contentHasherFactory;
+
+    @Autowired
+    public StorageUploadSessionServiceImpl(UploadSessionRepository uploadSessionRepository,
+                                           MongoTemplate mongoTemplate,
+                                           BlobStore blobStore,
+                                           StorageUploadService storageUploadService,
+                                           BlobGarbageCollector blobGarbageCollector,
+                                           ContentHasherFactory contentHasherFactory) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.storageUploadService = storageUploadService;
+        this.blobGarbageCollector = blobGarbageCollector;
+        this.contentHasherFactory = contentHasherFactory;
+    }
+
+    @Override
+    public UploadSessionDTO createSession(String user,
+                                          String filename,
+                                          String contentType,
+                                          FileVisibility visibility,
+                                          List<String> tags,
+                                          Integer totalChunks) {
+        storageUploadService.validateUpload(user, filename, tags, null);
+        if (totalChunks != null && totalChunks < 1) {
+            throw new IllegalArgumentException("Total chunks must be at least 1");
+        }
+
+        UploadSession uploadSession = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .user(user)
+                .filename(filename)
+                .contentType(contentType)
+                .visibility(visibility)
+                .tags(tags)
+                .totalChunks(totalChunks)
+                .chunks(new HashMap<>())
+                .createdDate(new Date())
+                .build();
+
+        return convertToUploadSessionDTO(uploadSessionRepository.save(uploadSession));
+    }
+
+    @Override
+    public UploadSessionDTO putChunk(String sessionId, int chunkIndex, InputStream inputStream)
+            throws NoSuchAlgorithmException {
+        UploadSession uploadSession = findSession(sessionId);
+        if (chunkIndex < 0 ||
+                (uploadSession.getTotalChunks() != null && chunkIndex >= uploadSession.getTotalChunks())) {
+            throw new IllegalArgumentException("Invalid chunk index " + chunkIndex);
+        }
+
+        DigestingInputStream digestingInputStream =
+                new DigestingInputStream(inputStream, contentHasherFactory.newHasher());
+        ObjectId blobId = blobStore.store(digestingInputStream,
+                uploadSession.getFilename() + ".chunk" + chunkIndex,
+                uploadSession.getContentType(),
+                -1);
+        UploadChunk uploadChunk = UploadChunk.builder()
+                .blobId(blobId)
+                .size(digestingInputStream.getByteCount())
+                .chunkHash(digestingInputStream.getHexDigest())
+                .build();
+
+        String chunkKey = String.valueOf(chunkIndex);
+        UploadSession previousSession = mongoTemplate.findAndModify(notCommitting(sessionId),
+                new Update().set(CHUNKS + "." + chunkKey, uploadChunk),
+                FindAndModifyOptions.options().returnNew(false),
+                UploadSession.class);
+        if (previousSession == null) {
+            blobStore.delete(blobId);
+            throw new IllegalArgumentException("Upload session does not exist or is being committed!");
+        }
+
+        Map<String, UploadChunk> chunks = previousSession.getChunks() != null ?
+                previousSession.getChunks() : new HashMap<>();
+        UploadChunk replacedChunk = chunks.put(chunkKey, uploadChunk);
+        if (replacedChunk != null) {
+            blobGarbageCollector.markForDeletion(List.of(replacedChunk.getBlobId()));
+        }
+        previousSession.setChunks(chunks);
+        return convertToUploadSessionDTO(previousSession);
+    }
+
+    @Override
+    public UploadSessionDTO getSession(String sessionId) {
+        return convertToUploadSessionDTO(findSession(sessionId));
+    }
+
+    @Override
+    public FileMetadataDTO commitSession(String sessionId, String fileDigest, String baseUrl)
+            throws IOException, NoSuchAlgorithmException {
+        UploadSession uploadSession = mongoTemplate.findAndModify(notCommitting(sessionId),
+                new Update().set(COMMITTING, true),
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+        if (uploadSession == null) {
+            throw new IllegalArgumentException("Upload session does not exist or is already being committed!");
+        }
+
+        try {
+            List<UploadChunk> orderedChunks = getOrderedChunks(uploadSession);
+            FileMetadataDTO fileMetadataDTO = storageUploadService.saveComposedFile(uploadSession.getUser(),
+                    uploadSession.getFilename(),
+                    uploadSession.getContentType(),
+                    orderedChunks.stream().map(UploadChunk::getBlobId).toList(),
+                    openChunks(orderedChunks),
+                    uploadSession.getVisibility(),
+                    uploadSession.getTags(),
+                    fileDigest,
+                    baseUrl);
+
+            uploadSessionRepository.deleteById(sessionId);
+            // the composed file keeps the content of the chunks
+            blobGarbageCollector.markForDeletion(orderedChunks.stream().map(UploadChunk::getBlobId).toList());
+            return fileMetadataDTO;
+        } catch (RuntimeException | IOException | NoSuchAlgorithmException e) {
+            // the session stays resumable, e.g. to upload a missing chunk
+            mongoTemplate.updateFirst(byId(sessionId), new Update().set(COMMITTING, false), UploadSession.class);
+            throw e;
+        }
+    }
+
+    @Override
+    public void abortSession(String sessionId) {
+        UploadSession uploadSession = findSession(sessionId);
+        uploadSessionRepository.deleteById(sessionId);
+        if (uploadSession.getChunks() != null) {
+            blobGarbageCollector.markForDeletion(uploadSession.getChunks().values().stream()
+                    .map(UploadChunk::getBlobId)
+                    .toList());
+        }
+    }
+
+    private UploadSession findSession(String sessionId) {
+        return uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Upload session does not exist!"));
+    }
+
+    /**
+     * Chunks must be numbered 0 to n - 1 without gaps, n is the total number of chunks if it was given
+     */
+    private List<UploadChunk> getOrderedChunks(UploadSession uploadSession) {
+        Map<String, UploadChunk> chunks = uploadSession.getChunks() != null ?
+                uploadSession.getChunks() : Map.of();
+        int totalChunks = uploadSession.getTotalChunks() != null ?
+                uploadSession.getTotalChunks() : chunks.size();
+        if (totalChunks == 0) {
+            throw new IllegalArgumentException("No chunks received!");
+        }
+
+        List<UploadChunk> orderedChunks = new ArrayList<>(totalChunks);
+        for (int chunkIndex = 0; chunkIndex < totalChunks; chunkIndex++) {
+            UploadChunk uploadChunk = chunks.get(String.valueOf(chunkIndex));
+            if (uploadChunk == null) {
+                throw new IllegalArgumentException("Missing chunk " + chunkIndex);
+            }
+            orderedChunks.add(uploadChunk);
+        }
+        if (chunks.size() != totalChunks) {
+            throw new IllegalArgumentException("Chunks are not numbered from 0 to " + (totalChunks - 1));
+        }
+        return orderedChunks;
+    }
+
+    /**
+     * Each chunk is only opened once the previous one is fully read
+     */
+    private InputStream openChunks(List<UploadChunk> orderedChunks) {
+        List<Supplier<InputStream>> chunks = new ArrayList<>(orderedChunks.size());
+        for (int chunkIndex = 0; chunkIndex < orderedChunks.size(); chunkIndex++) {
+            UploadChunk uploadChunk = orderedChunks.get(chunkIndex);
+            int index = chunkIndex;
+            chunks.add(() -> new VerifyingChunkInputStream(index, uploadChunk,
+                    blobStore.openDownloadStream(uploadChunk.getBlobId()), contentHasherFactory.newHasher()));
+        }
+        return new PartsInputStream(chunks);
+    }
+
+    private Query byId(String sessionId) {
+        return Query.query(Criteria.where("_id").is(sessionId));
+    }
+
+    private Query notCommitting(String sessionId) {
+        return byId(sessionId).addCriteria(Criteria.where(COMMITTING).ne(true));
+    }
+
+    private UploadSessionDTO convertToUploadSessionDTO(UploadSession uploadSession) {
+        Map<String, UploadChunk> chunks = uploadSession.getChunks() != null ?
+                uploadSession.getChunks() : Map.of();
+        return UploadSessionDTO.builder()
+                .sessionId(uploadSession.getId())
+                .fileName(uploadSession.getFilename())
+                .totalChunks(uploadSession.getTotalChunks())
+                .receivedChunks(chunks.keySet().stream().map(Integer::valueOf).sorted().toList())
+                .receivedBytes(chunks.values().stream().mapToLong(UploadChunk::getSize).sum())
+                .createdDate(uploadSession.getCreatedDate())
+                .build();
+    }
+
+    /**
+     * Fails at the end of a stored chunk whose content no longer matches the size and hash it was received with
+     */
+    private static class VerifyingChunkInputStream extends DigestingInputStream {
+
+        private final int chunkIndex;
+
+        private final UploadChunk uploadChunk;
+
+        VerifyingChunkInputStream(int chunkIndex, UploadChunk uploadChunk, InputStream inputStream,
+                                  ContentHasher contentHasher) {
+            super(inputStream, contentHasher);
+            this.chunkIndex = chunkIndex;
+            this.uploadChunk = uploadChunk;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                verify();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = super.read(b, off, len);
+            if (bytesRead == -1) {
+                verify();
+            }
+            return bytesRead;
+        }
+
+        private void verify() {
+            if (getByteCount() != uploadChunk.getSize() ||
+                    (uploadChunk.getChunkHash() != null && !uploadChunk.getChunkHash().equals(getHexDigest()))) {
+                throw new IllegalArgumentException("Chunk " + chunkIndex + " is corrupted, upload it again");
+            }
+        }
+    }
+}
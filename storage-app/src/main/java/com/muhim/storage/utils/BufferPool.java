@@ -0,0 +1,60 @@
+package com.muhim.storage.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed size byte arrays which are reused instead of allocated per stream
+ * At most `maxBuffers` arrays are ever allocated, when all of them are in use acquire returns null
+ * and the caller works without one, so the memory of the pool is bounded
+ *
+ * @author muhim
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxBuffers) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = Math.max(1, maxBuffers);
+        this.freeBuffers = new ArrayBlockingQueue<>(this.maxBuffers);
+    }
+
+    /**
+     * @return a free buffer, or null when all buffers are in use
+     */
+    public byte[] acquire() {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        int allocated;
+        do {
+            allocated = allocatedBuffers.get();
+            if (allocated >= maxBuffers) {
+                return null;
+            }
+        } while (!allocatedBuffers.compareAndSet(allocated, allocated + 1));
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Return a buffer from acquire, it must not be used afterwards
+     *
+     * @param buffer the buffer
+     */
+    public void release(byte[] buffer) {
+        freeBuffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,70 @@
+package com.muhim.storage.utils;
+
+import org.bson.BSONException;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Utility class to convert keyset scroll positions to opaque cursors and back
+ * The cursor is the Base64 encoded extended JSON of the sort keys, which keeps their BSON types
+ *
+ * @author muhim
+ */
+public class CursorUtils {
+
+    private static final JsonWriterSettings JSON_WRITER_SETTINGS = JsonWriterSettings.builder()
+            .outputMode(JsonMode.EXTENDED)
+            .build();
+
+    /**
+     * @param scrollPosition keyset position after the last element of a window
+     * @return opaque cursor
+     */
+    public static String encode(ScrollPosition scrollPosition) {
+        if (!(scrollPosition instanceof KeysetScrollPosition keysetScrollPosition)) {
+            throw new IllegalArgumentException("Only keyset positions can be encoded");
+        }
+        String json = new Document(keysetScrollPosition.getKeys()).toJson(JSON_WRITER_SETTINGS);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The cursor comes from the client, so it must hold exactly the keys of the requested sort
+     * with plain values, a cursor of another sort or with query operators as values is rejected
+     *
+     * @param cursor   opaque cursor, null or empty for the first window
+     * @param sortKeys properties of the sort the cursor continues
+     * @return keyset position to continue scrolling from
+     */
+    public static KeysetScrollPosition decode(String cursor, Collection<String> sortKeys) {
+        if (cursor == null || cursor.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        Document keys;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            keys = Document.parse(json);
+        } catch (JsonParseException | BSONException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (!keys.keySet().equals(Set.copyOf(sortKeys)) || !keys.values().stream().allMatch(CursorUtils::isScalar)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Date || value instanceof ObjectId;
+    }
+}
@@ -0,0 +1,130 @@
+package com.muhim.storage.utils;
+
+import com.muhim.storage.hash.ContentHasher;
+import com.muhim.storage.hash.MessageDigestHasher;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Input stream wrapper which updates a content hash and counts the bytes
+ * while the wrapped stream is being consumed, so the hash and the size of a file
+ * are available as soon as it has been written without reading it a second time.
+ * The time spent hashing bulk reads is measured, so it can be told apart from the time spent reading
+ *
+ * @author muhim
+ */
+public class DigestingInputStream extends FilterInputStream {
+
+    private final ContentHasher contentHasher;
+
+    private final byte[] singleByte = new byte[1];
+
+    private long byteCount;
+
+    private long digestNanos;
+
+    private String hexDigest;
+
+    /**
+     * @param inputStream the stream to consume
+     * @param algorithm   message digest algorithm name e.g. `MD5`
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     */
+    public DigestingInputStream(InputStream inputStream, String algorithm) throws NoSuchAlgorithmException {
+        this(inputStream, new MessageDigestHasher(MessageDigest.getInstance(algorithm)));
+    }
+
+    /**
+     * @param inputStream   the stream to consume
+     * @param contentHasher hasher of the content, e.g. of the configured `fileRollingHash` algorithm
+     */
+    public DigestingInputStream(InputStream inputStream, ContentHasher contentHasher) {
+        super(inputStream);
+        this.contentHasher = contentHasher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            singleByte[0] = (byte) b;
+            contentHasher.update(singleByte, 0, 1);
+            byteCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int bytesRead = in.read(b, off, len);
+        if (bytesRead > 0) {
+            long digestStart = System.nanoTime();
+            contentHasher.update(b, off, bytesRead);
+            digestNanos += System.nanoTime() - digestStart;
+            byteCount += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Skipped bytes would be missing from the digest, so they are read instead
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long remaining = n;
+        while (remaining > 0) {
+            int bytesRead = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (bytesRead == -1) {
+                break;
+            }
+            remaining -= bytesRead;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        // re-reading bytes would corrupt the digest
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Completes the digest, should only be called once the stream is fully consumed
+     *
+     * @return hex encoded digest of all bytes read, the same on every call
+     */
+    public String getHexDigest() {
+        if (hexDigest == null) {
+            hexDigest = contentHasher.getHexDigest();
+        }
+        return hexDigest;
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return nanoseconds spent updating the digest with bulk reads so far
+     */
+    public long getDigestNanos() {
+        return digestNanos;
+    }
+}
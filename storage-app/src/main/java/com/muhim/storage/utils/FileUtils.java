@@ -1,11 +1,13 @@
 package com.muhim.storage.utils;
 
+import com.muhim.storage.hash.ContentHasher;
 import org.bson.types.ObjectId;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Utility class to provide common utility methods for storage/file operations
@@ -14,6 +16,20 @@ import java.security.NoSuchAlgorithmException;
  */
 public class FileUtils {
 
+    /**
+     * Algorithm used as key of content-addressed blobs, whatever `storage.hashing.algorithm` is,
+     * so a blob is only shared by files with the same SHA-256
+     */
+    public static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    /**
+     * Read buffers of {@link #generateFileRollingHash}, large enough that the hash and not the call overhead
+     * dominates, hashes beyond the pool's capacity read through a buffer of their own
+     */
+    private static final BufferPool HASH_BUFFERS = new BufferPool(64 * 1024, 16);
+
     /**
      * Get base URL dynamically and create download link
      *
@@ -28,31 +44,52 @@ public class FileUtils {
     }
 
     /**
-     * Generate a rolling hash using MD5 algorithm
-     * Uses 1024 byte chunk size for each hash
+     * Generate the rolling hash of a stream
+     * Reads 64KB per hash update through a pooled buffer
      *
-     * @param inputStream to consume and generate the rolling hash
-     * @return md5 hash string
+     * @param inputStream   to consume and generate the rolling hash
+     * @param contentHasher fresh hasher of the algorithm to use
+     * @return hex encoded hash
      * @throws IOException can throw IOException on issues accessing the input stream
-     * @throws NoSuchAlgorithmException can throw while creating message digest object with `MD5` algorithm
      */
-    public static String generateFileRollingHash(InputStream inputStream) throws IOException, NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("MD5");
-
+    public static String generateFileRollingHash(InputStream inputStream, ContentHasher contentHasher)
+            throws IOException {
+        byte[] pooledBuffer = HASH_BUFFERS.acquire();
+        byte[] buffer = pooledBuffer != null ? pooledBuffer : new byte[HASH_BUFFERS.getBufferSize()];
         try (inputStream) {
-            byte[] buffer = new byte[1024];
             int bytesRead;
             while ((bytesRead = inputStream.read(buffer)) != -1) {
-                md.update(buffer, 0, bytesRead);
+                contentHasher.update(buffer, 0, bytesRead);
+            }
+        } finally {
+            if (pooledBuffer != null) {
+                HASH_BUFFERS.release(pooledBuffer);
             }
         }
 
-        byte[] hashBytes = md.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashBytes) {
-            sb.append(String.format("%02x", b));
-        }
+        return contentHasher.getHexDigest();
+    }
 
-        return sb.toString();
+    /**
+     * Encode bytes as lower case hex string
+     * Digits are looked up and written into the result directly, without formatting each byte
+     *
+     * @param bytes to encode
+     * @return hex string
+     */
+    public static String toHexString(byte[] bytes) {
+        return HEX_FORMAT.formatHex(bytes);
+    }
+
+    /**
+     * Lower case tags, so tag filters can match case-insensitively on an index
+     *
+     * @param tags as given by the user
+     * @return lower case tags in the same order
+     */
+    public static List<String> normalizeTags(List<String> tags) {
+        return tags.stream()
+                .map(tag -> tag.toLowerCase(Locale.ROOT))
+                .toList();
     }
 }
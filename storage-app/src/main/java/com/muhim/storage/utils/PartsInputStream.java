@@ -0,0 +1,97 @@
+package com.muhim.storage.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Input stream over the content of several parts in order, e.g. the parts of a composed blob
+ * Each part is only opened once the previous one is fully read, skipping is passed on to the parts,
+ * so a part which seeks on skip is not read
+ *
+ * @author muhim
+ */
+public class PartsInputStream extends InputStream {
+
+    private final Iterator<Supplier<InputStream>> parts;
+
+    private InputStream part;
+
+    /**
+     * @param parts open the stream of each part
+     */
+    public PartsInputStream(List<Supplier<InputStream>> parts) {
+        this.parts = parts.iterator();
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (nextPart()) {
+            int b = part.read();
+            if (b != -1) {
+                return b;
+            }
+            closePart();
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (nextPart()) {
+            int bytesRead = part.read(b, off, len);
+            if (bytesRead > 0) {
+                return bytesRead;
+            }
+            if (bytesRead == -1) {
+                closePart();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long remaining = n;
+        while (remaining > 0 && nextPart()) {
+            long skipped = part.skip(remaining);
+            if (skipped > 0) {
+                remaining -= skipped;
+            } else if (part.read() == -1) {
+                // nothing skipped at the end of the part
+                closePart();
+            } else {
+                remaining--;
+            }
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closePart();
+    }
+
+    /**
+     * @return false once all parts are read
+     */
+    private boolean nextPart() {
+        if (part == null && parts.hasNext()) {
+            part = parts.next().get();
+        }
+        return part != null;
+    }
+
+    private void closePart() throws IOException {
+        if (part != null) {
+            InputStream closedPart = part;
+            part = null;
+            closedPart.close();
+        }
+    }
+}
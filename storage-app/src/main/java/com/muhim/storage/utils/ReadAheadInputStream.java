@@ -0,0 +1,249 @@
+package com.muhim.storage.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Input stream which fills the next buffer from the source in the background while the current one is consumed,
+ * e.g. fetching the next batch of GridFS chunks while the previous one is written to the client.
+ * Two pooled buffers are used alternately, transferTo writes them to the output without another copy.
+ * A fill which has not started when its buffer is needed runs on the reading thread instead of waiting
+ * for the executor, and skipping over content which is not buffered yet skips on the source, e.g. a GridFS seek
+ *
+ * @author muhim
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private final InputStream source;
+    private final BufferPool bufferPool;
+    private final Executor executor;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Fill of the other buffer, null once the source is exhausted
+     */
+    private Fill nextFill;
+    private boolean closed;
+
+    private ReadAheadInputStream(InputStream source, byte[] first, byte[] second, BufferPool bufferPool,
+                                 Executor executor) {
+        this.source = source;
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        this.buffer = second;
+        // the first fill runs on the reading thread, nothing is read before the content is requested
+        this.nextFill = new Fill(first);
+    }
+
+    /**
+     * Read ahead of the source with two buffers of the pool, the source itself is returned when the pool is exhausted
+     *
+     * @param source     stream to read ahead of, closed with the returned stream
+     * @param bufferPool pool of the buffers, they are returned when the stream is closed
+     * @param executor   runs the background fills
+     * @return stream reading ahead of the source, or the source
+     */
+    public static InputStream readAhead(InputStream source, BufferPool bufferPool, Executor executor) {
+        byte[] first = bufferPool.acquire();
+        if (first == null) {
+            return source;
+        }
+        byte[] second = bufferPool.acquire();
+        if (second == null) {
+            bufferPool.release(first);
+            return source;
+        }
+        return new ReadAheadInputStream(source, first, second, bufferPool, executor);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextBuffer()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !nextBuffer()) {
+            return -1;
+        }
+        int bytesRead = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, bytesRead);
+        position += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long remaining = n;
+        while (remaining > 0) {
+            int skipped = (int) Math.min(remaining, limit - position);
+            position += skipped;
+            remaining -= skipped;
+            if (remaining == 0 || nextFill == null) {
+                break;
+            }
+            if (nextFill.claim()) {
+                // the fill has not started, so the source seeks instead of reading the skipped content
+                remaining -= source.skip(remaining);
+                nextFill = new Fill(nextFill.buffer);
+                break;
+            }
+            if (!nextBuffer()) {
+                break;
+            }
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    /**
+     * Writes the buffers straight to the output while the next one is filled
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long transferred = 0;
+        while (position < limit || nextBuffer()) {
+            out.write(buffer, position, limit - position);
+            transferred += limit - position;
+            position = limit;
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bufferPool.release(buffer);
+        buffer = null;
+        position = 0;
+        limit = 0;
+        Fill fill = nextFill;
+        nextFill = null;
+        if (fill == null || fill.claim()) {
+            if (fill != null) {
+                bufferPool.release(fill.buffer);
+            }
+            source.close();
+            return;
+        }
+        // a running fill still reads into its buffer and from the source
+        fill.result.whenComplete((bytesRead, e) -> {
+            bufferPool.release(fill.buffer);
+            try {
+                source.close();
+            } catch (IOException ignored) {
+                // the content is not needed any more
+            }
+        });
+    }
+
+    /**
+     * Switches to the buffer of the next fill and starts filling the consumed one in the background
+     *
+     * @return false at the end of the source
+     */
+    private boolean nextBuffer() throws IOException {
+        ensureOpen();
+        if (nextFill == null) {
+            return false;
+        }
+        Fill fill = nextFill;
+        int bytesRead = fill.await();
+        byte[] consumed = buffer;
+        buffer = fill.buffer;
+        position = 0;
+        limit = bytesRead;
+        if (bytesRead < buffer.length) {
+            // readNBytes only returns less than requested at the end of the source
+            nextFill = null;
+            bufferPool.release(consumed);
+        } else {
+            nextFill = new Fill(consumed);
+            try {
+                executor.execute(nextFill);
+            } catch (RejectedExecutionException ignored) {
+                // filled on the reading thread when it is needed
+            }
+        }
+        return bytesRead > 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private final class Fill implements Runnable {
+
+        private final byte[] buffer;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        private Fill(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return true if the fill had not started and will not run any more
+         */
+        boolean claim() {
+            return started.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (!claim()) {
+                return;
+            }
+            try {
+                result.complete(source.readNBytes(buffer, 0, buffer.length));
+            } catch (IOException e) {
+                result.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        int await() throws IOException {
+            run();
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                    throw uncheckedIOException.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -3,7 +3,7 @@ package com.muhim.storage;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"storage.index-bootstrap.enabled=false", "storage.blob-gc.enabled=false"})
 class StorageApplicationTests {
 
 	@Test
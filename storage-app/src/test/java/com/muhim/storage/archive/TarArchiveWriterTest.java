@@ -0,0 +1,98 @@
+package com.muhim.storage.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarArchiveWriterTest {
+
+    private static final int BLOCK_SIZE = TarArchiveWriter.BLOCK_SIZE;
+
+    @Test
+    void putEntry_shouldWriteUstarHeaderAndPaddedContent() throws IOException {
+        // Arrange
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        TarArchiveWriter tarArchiveWriter = new TarArchiveWriter(outputStream);
+
+        // Act
+        tarArchiveWriter.putEntry("hello.txt", 5, 1_700_000_000_000L, new ByteArrayInputStream("Hello".getBytes()));
+        tarArchiveWriter.close();
+
+        // Assert
+        byte[] archive = outputStream.toByteArray();
+        assertEquals(4 * BLOCK_SIZE, archive.length);
+        assertEquals("hello.txt", field(archive, 0, 100));
+        assertEquals("00000000005", field(archive, 124, 12));
+        assertEquals('0', archive[156]);
+        assertEquals("ustar", field(archive, 257, 6));
+        assertEquals(Long.parseLong(field(archive, 148, 7), 8), checksum(archive, 0));
+        assertEquals("Hello", new String(archive, BLOCK_SIZE, 5, StandardCharsets.US_ASCII));
+        assertTrue(Arrays.stream(toInts(archive, 2 * BLOCK_SIZE, archive.length)).allMatch(b -> b == 0));
+    }
+
+    @Test
+    void putEntry_shouldWritePaxHeaderForLongAndNonAsciiNames() throws IOException {
+        // Arrange
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        TarArchiveWriter tarArchiveWriter = new TarArchiveWriter(outputStream);
+        String name = "ü".repeat(120) + ".txt";
+
+        // Act
+        tarArchiveWriter.putEntry(name, 0, 0, new ByteArrayInputStream(new byte[0]));
+        tarArchiveWriter.close();
+
+        // Assert
+        byte[] archive = outputStream.toByteArray();
+        assertEquals(5 * BLOCK_SIZE, archive.length);
+        assertEquals('x', archive[156]);
+        int paxLength = Integer.parseInt(field(archive, 124, 12), 8);
+        String paxRecords = new String(archive, BLOCK_SIZE, paxLength, StandardCharsets.UTF_8);
+        String pathRecord = paxRecords.substring(0, paxRecords.indexOf('\n') + 1);
+        assertEquals(" path=" + name + "\n", pathRecord.substring(pathRecord.indexOf(' ')));
+        assertEquals(pathRecord.getBytes(StandardCharsets.UTF_8).length,
+                Integer.parseInt(pathRecord.substring(0, pathRecord.indexOf(' '))));
+        assertEquals('0', archive[2 * BLOCK_SIZE + 156]);
+        assertEquals(Long.parseLong(field(archive, 2 * BLOCK_SIZE + 148, 7), 8), checksum(archive, 2 * BLOCK_SIZE));
+    }
+
+    @Test
+    void putEntry_shouldRejectContentNotMatchingSize() {
+        // Arrange
+        TarArchiveWriter tarArchiveWriter = new TarArchiveWriter(new ByteArrayOutputStream());
+
+        // Act & Assert
+        assertThrows(IOException.class, () ->
+                tarArchiveWriter.putEntry("short.txt", 10, 0, new ByteArrayInputStream("Hello".getBytes())));
+    }
+
+    private static String field(byte[] archive, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && archive[end] != 0) {
+            end++;
+        }
+        return new String(archive, offset, end - offset, StandardCharsets.US_ASCII).trim();
+    }
+
+    private static long checksum(byte[] archive, int headerOffset) {
+        long checksum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            boolean checksumField = i >= 148 && i < 156;
+            checksum += checksumField ? ' ' : archive[headerOffset + i] & 0xff;
+        }
+        return checksum;
+    }
+
+    private static int[] toInts(byte[] bytes, int from, int to) {
+        int[] ints = new int[to - from];
+        for (int i = from; i < to; i++) {
+            ints[i - from] = bytes[i];
+        }
+        return ints;
+    }
+}
@@ -0,0 +1,110 @@
+package com.muhim.storage.cache;
+
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobContentCacheTest {
+
+    private final BlobContentCache blobContentCache = new BlobContentCache(DataSize.ofBytes(8), DataSize.ofBytes(16));
+
+    @Test
+    void isCacheable_shouldOnlyAcceptSmallPublicFiles() {
+        // Act & Assert
+        assertTrue(blobContentCache.isCacheable(FileMetadata.builder()
+                .visibility(FileVisibility.PUBLIC).fileSize(8).build()));
+        assertFalse(blobContentCache.isCacheable(FileMetadata.builder()
+                .visibility(FileVisibility.PUBLIC).fileSize(9).build()));
+        assertFalse(blobContentCache.isCacheable(FileMetadata.builder()
+                .visibility(FileVisibility.PRIVATE).fileSize(8).build()));
+    }
+
+    @Test
+    void get_shouldEvictLeastRecentlyUsedBlobWhenMemoryCapIsReached() throws IOException {
+        // Arrange
+        ObjectId first = new ObjectId();
+        ObjectId second = new ObjectId();
+        ObjectId third = new ObjectId();
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        get(first, loads);
+        get(second, loads);
+        get(first, loads);
+        get(third, loads);
+        get(first, loads);
+        get(second, loads);
+
+        // Assert
+        assertEquals(4, loads.get());
+        assertEquals(16, blobContentCache.getUsedMemory());
+        assertEquals(2, blobContentCache.getStats().getHitCount());
+        assertEquals(2, blobContentCache.getStats().getEvictionCount());
+    }
+
+    @Test
+    void get_shouldCoalesceConcurrentMisses() throws Exception {
+        // Arrange
+        ObjectId blobId = new ObjectId();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        try {
+            // Act
+            Future<ByteBuffer> slow = executorService.submit(() -> blobContentCache.get(blobId, 8, () -> {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ByteArrayInputStream(new byte[8]);
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            Future<ByteBuffer> waiting = executorService.submit(() -> blobContentCache.get(blobId, 8, () -> {
+                loads.incrementAndGet();
+                return new ByteArrayInputStream(new byte[8]);
+            }));
+            releaseLoad.countDown();
+
+            // Assert
+            assertEquals(8, slow.get(5, TimeUnit.SECONDS).remaining());
+            assertEquals(8, waiting.get(5, TimeUnit.SECONDS).remaining());
+            assertEquals(1, loads.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void get_shouldRejectTruncatedBlob() {
+        // Act & Assert
+        assertThrows(IOException.class, () ->
+                blobContentCache.get(new ObjectId(), 8, () -> new ByteArrayInputStream(new byte[4])));
+        assertEquals(0, blobContentCache.getUsedMemory());
+    }
+
+    private void get(ObjectId blobId, AtomicInteger loads) throws IOException {
+        blobContentCache.get(blobId, 8, () -> {
+            loads.incrementAndGet();
+            return new ByteArrayInputStream(new byte[8]);
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.muhim.storage.cache;
+
+import com.muhim.storage.dto.CacheStatsDTO;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileMetadataCacheTest {
+
+    private final FileMetadataCache fileMetadataCache = new FileMetadataCache(100, Duration.ofMinutes(1));
+
+    @Test
+    void invalidate_shouldDropCachedEntry() {
+        // Arrange
+        ObjectId fileId = new ObjectId();
+        FileMetadata fileMetadata = FileMetadata.builder()
+                .fileId(fileId)
+                .user("testuser")
+                .filename("testfile.txt")
+                .build();
+        AtomicInteger loads = new AtomicInteger();
+
+        fileMetadataCache.getByFileId(fileId, id -> {
+            loads.incrementAndGet();
+            return fileMetadata;
+        });
+
+        // Act
+        fileMetadataCache.invalidate(fileMetadata);
+
+        // Assert
+        assertNull(fileMetadataCache.getByFileId(fileId, id -> null));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidate_shouldDropEntryByUserAndFilename() {
+        // Arrange
+        FileMetadata fileMetadata = FileMetadata.builder()
+                .fileId(new ObjectId())
+                .user("testuser")
+                .filename("testfile.txt")
+                .build();
+        AtomicInteger loads = new AtomicInteger();
+
+        fileMetadataCache.getByUserAndFilename("testuser", "testfile.txt", (user, filename) -> {
+            loads.incrementAndGet();
+            return fileMetadata;
+        });
+        FileMetadata cached = fileMetadataCache.getByUserAndFilename("testuser", "testfile.txt",
+                (user, filename) -> null);
+
+        // Act
+        fileMetadataCache.invalidate(fileMetadata);
+
+        // Assert
+        assertSame(fileMetadata, cached);
+        assertEquals(1, loads.get());
+        assertNull(fileMetadataCache.getIfPresent("testuser", "testfile.txt"));
+    }
+
+    @Test
+    void getStats_shouldCountHitsAndMissesWithoutCachingMissingFiles() {
+        // Arrange
+        ObjectId fileId = new ObjectId();
+        ObjectId missingFileId = new ObjectId();
+        FileMetadata fileMetadata = FileMetadata.builder().fileId(fileId).build();
+
+        // Act
+        fileMetadataCache.getByFileId(fileId, id -> fileMetadata);
+        fileMetadataCache.getByFileId(fileId, id -> fileMetadata);
+        fileMetadataCache.getByFileId(missingFileId, id -> null);
+        fileMetadataCache.getByFileId(missingFileId, id -> null);
+
+        // Assert
+        List<CacheStatsDTO> stats = fileMetadataCache.getStats();
+        assertEquals(2, stats.size());
+        assertEquals("metadataByFileId", stats.get(0).getCacheName());
+        assertEquals("metadataByUserAndFilename", stats.get(1).getCacheName());
+        assertEquals(1, stats.get(0).getHitCount());
+        assertEquals(3, stats.get(0).getMissCount());
+    }
+
+    @Test
+    void getByFileId_shouldNotCacheFailedLoad() {
+        // Arrange
+        ObjectId fileId = new ObjectId();
+        FileMetadata fileMetadata = FileMetadata.builder().fileId(fileId).build();
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> fileMetadataCache.getByFileId(fileId, id -> {
+            throw new IllegalStateException("database unavailable");
+        }));
+        FileMetadata result = fileMetadataCache.getByFileId(fileId, id -> fileMetadata);
+
+        // Assert
+        assertSame(fileMetadata, result);
+    }
+}
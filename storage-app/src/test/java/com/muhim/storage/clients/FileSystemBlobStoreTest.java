@@ -0,0 +1,124 @@
+package com.muhim.storage.clients;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+class FileSystemBlobStoreTest {
+
+    @TempDir
+    Path rootDirectory;
+
+    private FileSystemBlobStore fileSystemBlobStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystemBlobStore = new FileSystemBlobStore(rootDirectory);
+    }
+
+    @Test
+    void storeAndOpenSmallBlob() throws IOException {
+        byte[] content = "This is a test file".getBytes();
+
+        ObjectId blobId = fileSystemBlobStore.store(new ByteArrayInputStream(content), "test.txt", "text/plain",
+                content.length);
+
+        try (InputStream inputStream = fileSystemBlobStore.openDownloadStream(blobId)) {
+            Assertions.assertEquals(5, inputStream.skip(5));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 5, content.length), inputStream.readAllBytes());
+        }
+        try (var files = Files.walk(rootDirectory)) {
+            Assertions.assertTrue(files.noneMatch(path -> path.toString().endsWith(".part")));
+        }
+    }
+
+    @Test
+    void storeAndOpenMemoryMappedBlob() throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+
+        ObjectId blobId = fileSystemBlobStore.store(new ByteArrayInputStream(content), "large.bin", "application/octet-stream", content.length);
+        Resource resource = fileSystemBlobStore.openResource(blobId, "large.bin", content.length, 0);
+
+        Assertions.assertArrayEquals(content, resource.getInputStream().readAllBytes());
+        try (InputStream inputStream = resource.getInputStream()) {
+            Assertions.assertEquals(2 * 1024 * 1024, inputStream.skip(2 * 1024 * 1024));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 2 * 1024 * 1024, content.length),
+                    inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void openBlobLargerThanOneMappingInSegments() throws IOException {
+        FileSystemBlobStore segmentedBlobStore = new FileSystemBlobStore(rootDirectory, 1024 * 1024);
+        byte[] content = new byte[2 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+
+        ObjectId blobId = segmentedBlobStore.store(new ByteArrayInputStream(content), "large.bin", "application/octet-stream", content.length);
+
+        try (InputStream inputStream = segmentedBlobStore.openDownloadStream(blobId)) {
+            Assertions.assertArrayEquals(content, inputStream.readAllBytes());
+        }
+        try (InputStream inputStream = segmentedBlobStore.openDownloadStream(blobId)) {
+            Assertions.assertEquals(2 * 1024 * 1024 + 10, inputStream.skip(2 * 1024 * 1024 + 10));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 2 * 1024 * 1024 + 10, content.length),
+                    inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void deleteBlob() {
+        ObjectId blobId = fileSystemBlobStore.store(new ByteArrayInputStream(new byte[10]), "test.bin", "application/octet-stream", 10);
+
+        fileSystemBlobStore.delete(blobId);
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> fileSystemBlobStore.openDownloadStream(blobId));
+    }
+
+    @Test
+    void composeBlobFromParts() throws IOException {
+        byte[] first = "first part, ".getBytes();
+        byte[] second = "second part".getBytes();
+        ObjectId firstId = fileSystemBlobStore.store(new ByteArrayInputStream(first), "a.chunk0", null, first.length);
+        ObjectId secondId = fileSystemBlobStore.store(new ByteArrayInputStream(second), "a.chunk1", null, second.length);
+
+        ObjectId blobId = fileSystemBlobStore.compose(List.of(firstId, secondId), "a.txt", "text/plain");
+        fileSystemBlobStore.delete(firstId);
+
+        try (InputStream inputStream = fileSystemBlobStore.openDownloadStream(blobId)) {
+            Assertions.assertEquals(first.length + 2, inputStream.skip(first.length + 2));
+            Assertions.assertEquals("cond part", new String(inputStream.readAllBytes()));
+        }
+        fileSystemBlobStore.delete(blobId);
+        Assertions.assertThrows(UncheckedIOException.class, () -> fileSystemBlobStore.openDownloadStream(blobId));
+        try (InputStream inputStream = fileSystemBlobStore.openDownloadStream(secondId)) {
+            Assertions.assertArrayEquals(second, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void listBlobIdsInRange() {
+        ObjectId first = fileSystemBlobStore.store(new ByteArrayInputStream(new byte[1]), "a.bin", null, 1);
+        ObjectId second = fileSystemBlobStore.store(new ByteArrayInputStream(new byte[1]), "b.bin", null, 1);
+        ObjectId third = fileSystemBlobStore.store(new ByteArrayInputStream(new byte[1]), "c.bin", null, 1);
+        ObjectId before = new ObjectId();
+
+        Assertions.assertEquals(List.of(first, second), fileSystemBlobStore.listBlobIds(null, before, 2));
+        Assertions.assertEquals(List.of(third), fileSystemBlobStore.listBlobIds(second, before, 2));
+        Assertions.assertEquals(List.of(), fileSystemBlobStore.listBlobIds(null, first, 2));
+        Assertions.assertEquals(List.of(first), fileSystemBlobStore.listBlobIds(null, before, 1));
+    }
+}
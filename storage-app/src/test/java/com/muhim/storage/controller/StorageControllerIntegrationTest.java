@@ -18,6 +18,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.event.annotation.BeforeTestClass;
@@ -105,6 +106,20 @@ public class StorageControllerIntegrationTest {
                 .andDo(print());
     }
 
+    @Test
+    public void testUploadFileStream() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/storage/v1/files/upload/stream")
+                        .param("user", "uploadTest")
+                        .param("filename", "streamed.txt")
+                        .param("visibility", "PUBLIC")
+                        .param("tags", "myTag1", "myTag2")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("This is a streamed test file".getBytes()))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.fileName").value("streamed.txt"))
+                .andDo(print());
+    }
+
     @Test
     public void testGetPublicFile() throws Exception {
         // Perform a GET request
@@ -320,5 +335,36 @@ public class StorageControllerIntegrationTest {
         Assertions.assertEquals(0, files.stream().toList().size());
 
     }
+
+    @Test
+    public void testDownloadFileRange() throws Exception {
+        String id = fileMetadataRepository.findByUserAndFilename("test", "file0.txt").getFileId().toHexString();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/storage/v1/files/" + id + "/download")
+                        .header(HttpHeaders.RANGE, "bytes=5-6"))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(MockMvcResultMatchers.content().string("is"))
+                .andDo(print());
+    }
+
+    @Test
+    public void testDownloadFileNotModified() throws Exception {
+        String id = fileMetadataRepository.findByUserAndFilename("test", "file0.txt").getFileId().toHexString();
+
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/api/storage/v1/files/" + id + "/download"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.TEXT_PLAIN))
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH,
+                        "This is a test file with index: 0".length()))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/storage/v1/files/" + id + "/download")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andDo(print());
+    }
 }
 
@@ -0,0 +1,61 @@
+package com.muhim.storage.hash;
+
+import com.muhim.storage.utils.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TreeHasherTest {
+
+    @Test
+    void getHexDigest_shouldHashLeavesThenRoot() throws Exception {
+        // Arrange
+        byte[] content = new byte[TreeHasher.LEAF_SIZE + 10];
+        new Random(42).nextBytes(content);
+        TreeHasher treeHasher = new TreeHasher(Runnable::run);
+
+        // Act
+        treeHasher.update(content, 0, content.length);
+
+        // Assert
+        MessageDigest root = MessageDigest.getInstance("SHA-256");
+        root.update((byte) 1);
+        root.update(leafDigest(Arrays.copyOfRange(content, 0, TreeHasher.LEAF_SIZE)));
+        root.update(leafDigest(Arrays.copyOfRange(content, TreeHasher.LEAF_SIZE, content.length)));
+        assertEquals(FileUtils.toHexString(root.digest()), treeHasher.getHexDigest());
+    }
+
+    @Test
+    void getHexDigest_shouldNotDependOnParallelismOrSplits() {
+        // Arrange
+        byte[] content = new byte[(TreeHasher.MAX_PENDING_LEAVES + 3) * TreeHasher.LEAF_SIZE + 12345];
+        new Random(7).nextBytes(content);
+        TreeHasher callingThreadHasher = new TreeHasher(Runnable::run);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        TreeHasher parallelHasher = new TreeHasher(executor);
+
+        // Act
+        callingThreadHasher.update(ByteBuffer.wrap(content));
+        for (int offset = 0; offset < content.length; offset += 100_000) {
+            parallelHasher.update(content, offset, Math.min(100_000, content.length - offset));
+        }
+        String parallelDigest = parallelHasher.getHexDigest();
+        executor.shutdown();
+
+        // Assert
+        assertEquals(callingThreadHasher.getHexDigest(), parallelDigest);
+    }
+
+    private static byte[] leafDigest(byte[] leaf) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update((byte) 0);
+        return messageDigest.digest(leaf);
+    }
+}
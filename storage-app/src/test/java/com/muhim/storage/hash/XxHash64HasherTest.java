@@ -0,0 +1,98 @@
+package com.muhim.storage.hash;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XxHash64HasherTest {
+
+    @Test
+    void getHexDigest_shouldMatchReferenceHashes() {
+        // Arrange
+        XxHash64Hasher empty = new XxHash64Hasher();
+        XxHash64Hasher abc = new XxHash64Hasher();
+
+        // Act
+        abc.update("abc".getBytes(StandardCharsets.US_ASCII), 0, 3);
+
+        // Assert
+        assertEquals("ef46db3751d8e999", empty.getHexDigest());
+        assertEquals("44bc2cf5ad770999", abc.getHexDigest());
+    }
+
+    @Test
+    void getHexDigest_shouldMatchReferenceHashesOfStripedInput() {
+        // Arrange
+        byte[] nobody = "Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII);
+        byte[] sanity = sanityBuffer(222);
+        XxHash64Hasher nobodyHasher = new XxHash64Hasher();
+        XxHash64Hasher sanityHasher = new XxHash64Hasher();
+        XxHash64Hasher shortSanityHasher = new XxHash64Hasher();
+
+        // Act
+        nobodyHasher.update(nobody, 0, nobody.length);
+        sanityHasher.update(sanity, 0, sanity.length);
+        shortSanityHasher.update(sanity, 0, 14);
+
+        // Assert
+        // 39 bytes, one stripe and a tail, from the python-xxhash documentation
+        assertEquals("fbcea83c8a378bf1", nobodyHasher.getHexDigest());
+        // sanity buffers of the xxHash reference test, 222 bytes are six stripes and a tail
+        assertEquals("b641ae8cb691c174", sanityHasher.getHexDigest());
+        assertEquals("8282dcc4994e35c8", shortSanityHasher.getHexDigest());
+    }
+
+    @Test
+    void update_shouldMatchReferenceHashAcrossStripeBoundaries() {
+        // Arrange
+        byte[] sanity = sanityBuffer(222);
+        XxHash64Hasher hasher = new XxHash64Hasher();
+
+        // Act
+        // the first update ends inside the first stripe, the second one spans the next stripes
+        hasher.update(sanity, 0, 20);
+        hasher.update(sanity, 20, 100);
+        hasher.update(ByteBuffer.wrap(sanity, 120, 102));
+
+        // Assert
+        assertEquals("b641ae8cb691c174", hasher.getHexDigest());
+    }
+
+    @Test
+    void update_shouldHashTheSameRegardlessOfSplits() {
+        // Arrange
+        byte[] content = new byte[1000];
+        new Random(42).nextBytes(content);
+        XxHash64Hasher whole = new XxHash64Hasher();
+        XxHash64Hasher split = new XxHash64Hasher();
+        XxHash64Hasher direct = new XxHash64Hasher();
+
+        // Act
+        whole.update(content, 0, content.length);
+        for (int offset = 0, length = 1; offset < content.length; offset += length, length = length % 37 + 1) {
+            split.update(content, offset, Math.min(length, content.length - offset));
+        }
+        direct.update(ByteBuffer.allocateDirect(content.length).put(content).flip());
+
+        // Assert
+        assertEquals(whole.getHexDigest(), split.getHexDigest());
+        assertEquals(whole.getHexDigest(), direct.getHexDigest());
+    }
+
+    /**
+     * Content of the xxHash reference test, each byte the top byte of a multiplicative sequence
+     */
+    private static byte[] sanityBuffer(int length) {
+        byte[] buffer = new byte[length];
+        long byteGen = 2654435761L;
+        for (int i = 0; i < length; i++) {
+            buffer[i] = (byte) (byteGen >>> 56);
+            byteGen *= 0x9E3779B185EBCA8DL;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,142 @@
+package com.muhim.storage.repository;
+
+import com.mongodb.client.MongoDatabase;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileMetadataIndexInitializerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoDatabase mongoDatabase;
+
+    private FileMetadataIndexInitializer fileMetadataIndexInitializer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getCollectionName(FileMetadata.class)).thenReturn("fileMetadata");
+        when(mongoTemplate.getDb()).thenReturn(mongoDatabase);
+        fileMetadataIndexInitializer = new FileMetadataIndexInitializer(mongoTemplate, true);
+    }
+
+    @Test
+    void checkQueryPlans_shouldAcceptIndexScans() {
+        // Arrange
+        when(mongoDatabase.runCommand(any(Document.class))).thenReturn(explain(new Document("stage", "LIMIT")
+                .append("inputStage", new Document("stage", "FETCH")
+                        .append("inputStage", new Document("stage", "IXSCAN")))));
+
+        // Act
+        List<String> unindexedQueries = fileMetadataIndexInitializer.checkQueryPlans();
+
+        // Assert
+        assertTrue(unindexedQueries.isEmpty());
+    }
+
+    @Test
+    void checkQueryPlans_shouldReportCollectionScansAndInMemorySorts() {
+        // Arrange
+        when(mongoDatabase.runCommand(any(Document.class)))
+                .thenReturn(explain(new Document("stage", "COLLSCAN")))
+                .thenReturn(explain(new Document("stage", "SORT")
+                        .append("inputStage", new Document("stage", "IXSCAN"))))
+                .thenReturn(explain(new Document("stage", "IXSCAN")));
+
+        // Act
+        List<String> unindexedQueries = fileMetadataIndexInitializer.checkQueryPlans();
+
+        // Assert
+        assertEquals(List.of("findByFileId", "findByUserAndFilename"), unindexedQueries);
+    }
+
+    @Test
+    void checkQueryPlans_shouldExplainTagListingsForEverySortField() {
+        // Arrange
+        when(mongoDatabase.runCommand(any(Document.class))).thenReturn(explain(new Document("stage", "IXSCAN")));
+
+        // Act
+        fileMetadataIndexInitializer.checkQueryPlans();
+
+        // Assert
+        ArgumentCaptor<Document> captor = ArgumentCaptor.forClass(Document.class);
+        verify(mongoDatabase, atLeastOnce()).runCommand(captor.capture());
+        List<String> tagListingSorts = captor.getAllValues().stream()
+                .map(explain -> explain.get("explain", Document.class))
+                .filter(find -> find.get("filter", Document.class).containsKey("normalizedTags"))
+                .map(find -> find.get("filter", Document.class).keySet().iterator().next() + " by " +
+                        find.get("sort", Document.class).keySet().iterator().next())
+                .sorted()
+                .toList();
+        assertEquals(List.of("user by contentType", "user by fileSize", "user by filename", "user by uploadDate",
+                "visibility by contentType", "visibility by fileSize", "visibility by filename",
+                "visibility by uploadDate"), tagListingSorts);
+    }
+
+    @Test
+    void ensureIndexes_shouldCreateDeclaredIndexesAndSkipFailures() {
+        // Arrange
+        IndexOperations indexOperations = mock(IndexOperations.class);
+        when(mongoTemplate.indexOps(any(Class.class))).thenReturn(indexOperations);
+        when(mongoTemplate.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        when(indexOperations.ensureIndex(any()))
+                .thenThrow(new DuplicateKeyException("duplicate fileId"))
+                .thenReturn("created");
+
+        // Act
+        fileMetadataIndexInitializer.ensureIndexes();
+
+        // Assert
+        ArgumentCaptor<IndexDefinition> captor = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOperations, times(22)).ensureIndex(captor.capture());
+        assertTrue(captor.getAllValues().stream().anyMatch(index -> index.getIndexKeys()
+                .equals(new Document("visibility", 1).append("normalizedTags", 1)
+                        .append("filename", 1).append("_id", 1))));
+        assertTrue(captor.getAllValues().stream().anyMatch(index -> index.getIndexKeys()
+                .equals(new Document("user", 1).append("normalizedTags", 1)
+                        .append("uploadDate", 1).append("_id", 1))));
+    }
+
+    @Test
+    void initialize_shouldDoNothingWhenDisabled() {
+        // Arrange
+        fileMetadataIndexInitializer = new FileMetadataIndexInitializer(mongoTemplate, false);
+
+        // Act
+        fileMetadataIndexInitializer.initialize();
+
+        // Assert
+        verify(mongoTemplate, never()).indexOps(any(Class.class));
+        verify(mongoTemplate, never()).getDb();
+    }
+
+    private static Document explain(Document winningPlan) {
+        return new Document("queryPlanner", new Document("winningPlan", winningPlan));
+    }
+}
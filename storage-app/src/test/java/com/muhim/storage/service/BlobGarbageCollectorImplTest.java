@@ -0,0 +1,145 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.model.BlobReference;
+import com.muhim.storage.model.BlobTombstone;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.model.UploadSession;
+import com.muhim.storage.model.UploadSession.UploadChunk;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobGarbageCollectorImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BlobStore blobStore;
+
+    private BulkOperations bulkOperations;
+
+    private BlobGarbageCollectorImpl blobGarbageCollector;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BlobTombstone.class)).thenReturn(bulkOperations);
+        blobGarbageCollector = new BlobGarbageCollectorImpl(mongoTemplate, blobStore, 2, 10, Duration.ZERO,
+                Duration.ofHours(1), Duration.ofDays(1));
+    }
+
+    @Test
+    void reclaim_shouldDeleteBlobsInBatchesBeforeRemovingTombstones() {
+        // Arrange
+        ObjectId first = new ObjectId();
+        ObjectId second = new ObjectId();
+        ObjectId third = new ObjectId();
+        when(mongoTemplate.find(any(Query.class), eq(BlobTombstone.class)))
+                .thenReturn(List.of(tombstone(first), tombstone(second)))
+                .thenReturn(List.of(tombstone(third)));
+
+        // Act
+        int reclaimedCount = blobGarbageCollector.reclaim();
+
+        // Assert
+        assertEquals(3, reclaimedCount);
+        InOrder inOrder = inOrder(blobStore, mongoTemplate);
+        inOrder.verify(blobStore).deleteAll(List.of(first, second));
+        inOrder.verify(mongoTemplate).remove(any(Query.class), eq(BlobTombstone.class));
+        inOrder.verify(blobStore).deleteAll(List.of(third));
+        inOrder.verify(mongoTemplate).remove(any(Query.class), eq(BlobTombstone.class));
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(BlobTombstone.class));
+    }
+
+    @Test
+    void sweepOrphans_shouldMarkOnlyUnreferencedBlobs() {
+        // Arrange
+        ObjectId fileBlobId = new ObjectId();
+        ObjectId sharedBlobId = new ObjectId();
+        ObjectId chunkBlobId = new ObjectId();
+        ObjectId orphanBlobId = new ObjectId();
+        UploadSession uploadSession = UploadSession.builder()
+                .chunks(Map.of("0", UploadChunk.builder().blobId(chunkBlobId).build()))
+                .build();
+
+        when(mongoTemplate.find(any(Query.class), eq(UploadSession.class)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(uploadSession));
+        when(blobStore.listBlobIds(eq(null), any(ObjectId.class), eq(2)))
+                .thenReturn(List.of(fileBlobId, sharedBlobId));
+        when(blobStore.listBlobIds(eq(sharedBlobId), any(ObjectId.class), eq(2)))
+                .thenReturn(List.of(chunkBlobId, orphanBlobId));
+        when(blobStore.listBlobIds(eq(orphanBlobId), any(ObjectId.class), eq(2)))
+                .thenReturn(List.of());
+        when(mongoTemplate.find(any(Query.class), eq(FileMetadata.class)))
+                .thenReturn(List.of(FileMetadata.builder().fileId(fileBlobId).build()))
+                .thenReturn(List.of());
+        when(mongoTemplate.find(any(Query.class), eq(BlobReference.class)))
+                .thenReturn(List.of(BlobReference.builder().fileId(sharedBlobId).build()))
+                .thenReturn(List.of());
+
+        // Act
+        int orphanCount = blobGarbageCollector.sweepOrphans();
+
+        // Assert
+        assertEquals(1, orphanCount);
+        verify(bulkOperations, times(1)).upsert(argThat((Query query) ->
+                query.getQueryObject().get("_id").equals(orphanBlobId)), any(Update.class));
+        verify(bulkOperations, times(1)).execute();
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(UploadSession.class));
+    }
+
+    @Test
+    void sweepOrphans_shouldExpireStaleUploadSessions() {
+        // Arrange
+        ObjectId chunkBlobId = new ObjectId();
+        UploadSession staleSession = UploadSession.builder()
+                .id("session")
+                .chunks(Map.of("0", UploadChunk.builder().blobId(chunkBlobId).build()))
+                .build();
+        when(mongoTemplate.find(any(Query.class), eq(UploadSession.class)))
+                .thenReturn(List.of(staleSession))
+                .thenReturn(List.of());
+        when(blobStore.listBlobIds(any(), any(ObjectId.class), anyInt())).thenReturn(List.of());
+
+        // Act
+        blobGarbageCollector.sweepOrphans();
+
+        // Assert
+        InOrder inOrder = inOrder(mongoTemplate, bulkOperations);
+        inOrder.verify(mongoTemplate).remove(any(Query.class), eq(UploadSession.class));
+        inOrder.verify(bulkOperations).upsert(argThat((Query query) ->
+                query.getQueryObject().get("_id").equals(chunkBlobId)), any(Update.class));
+        inOrder.verify(bulkOperations).execute();
+    }
+
+    private BlobTombstone tombstone(ObjectId blobId) {
+        return BlobTombstone.builder().blobId(blobId).build();
+    }
+}
@@ -0,0 +1,161 @@
+package com.muhim.storage.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.muhim.storage.model.BlobReference;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobReferenceServiceImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BlobGarbageCollector blobGarbageCollector;
+
+    private BlobReferenceServiceImpl blobReferenceService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        blobReferenceService = new BlobReferenceServiceImpl(mongoTemplate, blobGarbageCollector, true);
+    }
+
+    @Test
+    void acquire_shouldDeleteStoredCopyOfKnownContent() {
+        // Arrange
+        ObjectId storedId = new ObjectId();
+        ObjectId sharedId = new ObjectId();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlobReference.class)))
+                .thenReturn(BlobReference.builder().fileId(sharedId).referenceCount(2).build());
+
+        // Act
+        ObjectId result = blobReferenceService.acquire("hash", storedId, 10);
+
+        // Assert
+        assertEquals(sharedId, result);
+        verify(blobGarbageCollector, times(1)).markForDeletion(List.of(storedId));
+    }
+
+    @Test
+    void acquire_shouldKeepStoredCopyOfNewContent() {
+        // Arrange
+        ObjectId storedId = new ObjectId();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlobReference.class)))
+                .thenReturn(BlobReference.builder().fileId(storedId).referenceCount(1).build());
+
+        // Act
+        ObjectId result = blobReferenceService.acquire("hash", storedId, 10);
+
+        // Assert
+        assertEquals(storedId, result);
+        verify(blobGarbageCollector, never()).markForDeletion(any());
+    }
+
+    @Test
+    void acquireExisting_shouldNotInsertUnknownContent() {
+        // Arrange
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlobReference.class)))
+                .thenReturn(null);
+
+        // Act
+        ObjectId result = blobReferenceService.acquireExisting("hash");
+
+        // Assert
+        assertNull(result);
+        verify(mongoTemplate).findAndModify(any(Query.class), any(Update.class),
+                argThat(options -> !options.isUpsert()), eq(BlobReference.class));
+        verify(blobGarbageCollector, never()).markForDeletion(any());
+    }
+
+    @Test
+    void release_shouldKeepContentWhileReferenced() {
+        // Arrange
+        ObjectId sharedId = new ObjectId();
+        FileMetadata fileMetadata = FileMetadata.builder().fileId(new ObjectId()).blobId(sharedId).contentHash("hash").build();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlobReference.class)))
+                .thenReturn(BlobReference.builder().fileId(sharedId).referenceCount(1).build());
+
+        // Act
+        blobReferenceService.release(fileMetadata);
+
+        // Assert
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(BlobReference.class));
+        verify(blobGarbageCollector, never()).markForDeletion(any());
+    }
+
+    @Test
+    void release_shouldDeleteContentWithLastReference() {
+        // Arrange
+        ObjectId sharedId = new ObjectId();
+        FileMetadata fileMetadata = FileMetadata.builder().fileId(new ObjectId()).blobId(sharedId).contentHash("hash").build();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlobReference.class)))
+                .thenReturn(BlobReference.builder().fileId(sharedId).referenceCount(0).build());
+        when(mongoTemplate.remove(any(Query.class), eq(BlobReference.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        // Act
+        blobReferenceService.release(fileMetadata);
+
+        // Assert
+        verify(blobGarbageCollector, times(1)).markForDeletion(List.of(sharedId));
+    }
+
+    @Test
+    void release_shouldMarkUnsharedContentDirectly() {
+        // Arrange
+        ObjectId fileId = new ObjectId();
+        FileMetadata fileMetadata = FileMetadata.builder().fileId(fileId).build();
+
+        // Act
+        blobReferenceService.release(fileMetadata);
+
+        // Assert
+        verify(blobGarbageCollector, times(1)).markForDeletion(List.of(fileId));
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(BlobReference.class));
+    }
+
+    @Test
+    void releaseAll_shouldMarkUnsharedContentInOneBatch() {
+        // Arrange
+        FileMetadata first = FileMetadata.builder().fileId(new ObjectId()).build();
+        FileMetadata second = FileMetadata.builder().fileId(new ObjectId()).build();
+        FileMetadata shared = FileMetadata.builder().fileId(new ObjectId()).blobId(new ObjectId())
+                .contentHash("hash").build();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(BlobReference.class)))
+                .thenReturn(BlobReference.builder().fileId(shared.getBlobId()).referenceCount(1).build());
+
+        // Act
+        blobReferenceService.releaseAll(List.of(first, shared, second));
+
+        // Assert
+        verify(blobGarbageCollector, times(1)).markForDeletion(List.of(first.getFileId(), second.getFileId()));
+        verify(blobGarbageCollector, never()).markForDeletion(List.of(shared.getBlobId()));
+    }
+}
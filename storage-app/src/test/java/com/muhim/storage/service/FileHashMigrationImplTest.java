@@ -0,0 +1,128 @@
+package com.muhim.storage.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.hash.MessageDigestHasher;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.utils.FileUtils;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileHashMigrationImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BlobStore blobStore;
+
+    private FileMetadataCache fileMetadataCache;
+
+    private FileHashMigrationImpl fileHashMigration;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        fileMetadataCache = mock(FileMetadataCache.class);
+        fileHashMigration = new FileHashMigrationImpl(mongoTemplate,
+                blobStore,
+                new ContentHasherFactory("sha-256", Runnable::run),
+                fileMetadataCache,
+                3,
+                10,
+                Duration.ZERO);
+    }
+
+    @Test
+    void migrate_shouldRehashLegacyFilesAndReadSharedBlobsOnce() throws IOException {
+        // Arrange
+        byte[] content = "dummyString".getBytes();
+        ObjectId sharedBlobId = new ObjectId();
+        ObjectId missingBlobId = new ObjectId();
+        FileMetadata first = legacyFile(sharedBlobId);
+        FileMetadata second = legacyFile(sharedBlobId);
+        FileMetadata missing = FileMetadata.builder().id(new ObjectId().toHexString()).fileId(missingBlobId).build();
+
+        when(mongoTemplate.find(any(Query.class), eq(FileMetadata.class)))
+                .thenReturn(List.of(first, second, missing))
+                .thenReturn(List.of());
+        when(blobStore.openDownloadStream(sharedBlobId)).thenReturn(new ByteArrayInputStream(content));
+        when(blobStore.openDownloadStream(missingBlobId)).thenThrow(new UncheckedIOException(new IOException("gone")));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        // Act
+        int migratedCount = fileHashMigration.migrate();
+
+        // Assert
+        assertEquals(2, migratedCount);
+        verify(blobStore, times(1)).openDownloadStream(sharedBlobId);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), update.capture(), eq(FileMetadata.class));
+        String expectedHash = FileUtils.generateFileRollingHash(new ByteArrayInputStream(content),
+                new MessageDigestHasher("SHA-256"));
+        assertEquals(expectedHash, update.getValue().getUpdateObject().get("$set", Document.class)
+                .get("fileRollingHash"));
+        assertEquals(HashAlgorithm.SHA_256, update.getValue().getUpdateObject().get("$set", Document.class)
+                .get("hashAlgorithm"));
+        verify(fileMetadataCache).invalidate(first);
+        verify(fileMetadataCache).invalidate(second);
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(FileMetadata.class));
+    }
+
+    @Test
+    void migrate_shouldNotInvalidateFilesChangedMeanwhile() {
+        // Arrange
+        ObjectId blobId = new ObjectId();
+        FileMetadata file = legacyFile(blobId);
+
+        when(mongoTemplate.find(any(Query.class), eq(FileMetadata.class))).thenReturn(List.of(file));
+        when(blobStore.openDownloadStream(blobId)).thenReturn(new ByteArrayInputStream(new byte[10]));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        // Act
+        int migratedCount = fileHashMigration.migrate();
+
+        // Assert
+        assertEquals(0, migratedCount);
+        verify(fileMetadataCache, never()).invalidate(any(FileMetadata.class));
+    }
+
+    private FileMetadata legacyFile(ObjectId blobId) {
+        return FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .fileId(new ObjectId())
+                .blobId(blobId)
+                .user("testUser")
+                .filename(new ObjectId() + ".txt")
+                .fileRollingHash("0123456789abcdef0123456789abcdef")
+                .build();
+    }
+}
@@ -0,0 +1,222 @@
+package com.muhim.storage.service;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.hash.MessageDigestHasher;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.repository.ReactiveFileMetaDataRepository;
+import com.muhim.storage.utils.FileUtils;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsResource;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReactiveStorageServiceImplTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    @Mock
+    private ReactiveFileMetaDataRepository fileMetaDataRepository;
+
+    @Mock
+    private ReactiveGridFsTemplate reactiveGridFsTemplate;
+
+    @Mock
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private ReactiveStorageServiceImpl reactiveStorageService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        reactiveStorageService = new ReactiveStorageServiceImpl(fileMetaDataRepository,
+                reactiveGridFsTemplate,
+                reactiveMongoTemplate,
+                new ContentHasherFactory("sha-256", Runnable::run),
+                5,
+                1000,
+                false,
+                "gridfs");
+        when(fileMetaDataRepository.save(any(FileMetadata.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    }
+
+    @Test
+    void saveFile_shouldHashContentWhileStoring() throws Exception {
+        // Arrange
+        ObjectId blobId = new ObjectId();
+        FilePart filePart = filePart("hello.txt", "Hello, ", "World!");
+        when(fileMetaDataRepository.existsByUserAndFilename("user", "hello.txt")).thenReturn(Mono.just(false));
+        when(fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(eq("user"), anyString(),
+                eq(List.of(HashAlgorithm.SHA_256))))
+                .thenReturn(Mono.just(false));
+        when(reactiveGridFsTemplate.store(any(), eq("hello.txt"), eq("text/plain")))
+                .thenAnswer(invocation -> Flux.from(invocation.<Publisher<DataBuffer>>getArgument(0))
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.just(blobId)));
+
+        // Act
+        Mono<FileMetadataDTO> result = reactiveStorageService.saveFile("user", filePart, FileVisibility.PUBLIC,
+                List.of("b", "A"), BASE_URL);
+
+        // Assert
+        StepVerifier.create(result)
+                .assertNext(fileMetadataDTO -> {
+                    assertEquals("hello.txt", fileMetadataDTO.getFileName());
+                    assertEquals(List.of("A", "b"), fileMetadataDTO.getTags());
+                    assertEquals(FileUtils.createDownloadLink(blobId, BASE_URL), fileMetadataDTO.getDownloadLink());
+                })
+                .verifyComplete();
+        ArgumentCaptor<FileMetadata> savedFile = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(savedFile.capture());
+        assertEquals(blobId, savedFile.getValue().getFileId());
+        assertEquals(13, savedFile.getValue().getFileSize());
+        assertEquals(List.of("a", "b"), savedFile.getValue().getNormalizedTags());
+        assertEquals(FileUtils.generateFileRollingHash(new ByteArrayInputStream(
+                        "Hello, World!".getBytes(StandardCharsets.UTF_8)), new MessageDigestHasher("SHA-256")),
+                savedFile.getValue().getFileRollingHash());
+        assertEquals(HashAlgorithm.SHA_256, savedFile.getValue().getHashAlgorithm());
+    }
+
+    @Test
+    void saveFile_shouldDetectUndeclaredContentTypeFromContent() {
+        // Arrange
+        ObjectId blobId = new ObjectId();
+        FilePart filePart = filePart("report.txt", "%PDF-1.4\n", "%%EOF\n");
+        filePart.headers().remove(HttpHeaders.CONTENT_TYPE);
+        when(fileMetaDataRepository.existsByUserAndFilename("user", "report.txt")).thenReturn(Mono.just(false));
+        when(fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(eq("user"), anyString(), any()))
+                .thenReturn(Mono.just(false));
+        when(reactiveGridFsTemplate.store(any(), eq("report.txt"), eq("application/pdf")))
+                .thenAnswer(invocation -> Flux.from(invocation.<Publisher<DataBuffer>>getArgument(0))
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.just(blobId)));
+
+        // Act
+        Mono<FileMetadataDTO> result = reactiveStorageService.saveFile("user", filePart, FileVisibility.PUBLIC,
+                List.of(), BASE_URL);
+
+        // Assert
+        StepVerifier.create(result)
+                .expectNextCount(1)
+                .verifyComplete();
+        ArgumentCaptor<FileMetadata> savedFile = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(savedFile.capture());
+        assertEquals("application/pdf", savedFile.getValue().getContentType());
+        assertEquals(15, savedFile.getValue().getFileSize());
+    }
+
+    @Test
+    void saveFile_shouldRejectExistingFileWithoutStoring() {
+        // Arrange
+        FilePart filePart = filePart("hello.txt", "Hello");
+        when(fileMetaDataRepository.existsByUserAndFilename("user", "hello.txt")).thenReturn(Mono.just(true));
+
+        // Act
+        Mono<FileMetadataDTO> result = reactiveStorageService.saveFile("user", filePart, FileVisibility.PUBLIC,
+                List.of(), BASE_URL);
+
+        // Assert
+        StepVerifier.create(result)
+                .expectErrorMessage("File already exists")
+                .verify();
+        verify(reactiveGridFsTemplate, never()).store(any(), anyString(), anyString());
+        verify(fileMetaDataRepository, never()).save(any(FileMetadata.class));
+    }
+
+    @Test
+    void saveFile_shouldDeleteStoredContentOfDuplicate() {
+        // Arrange
+        ObjectId blobId = new ObjectId();
+        FilePart filePart = filePart("hello.txt", "Hello");
+        when(fileMetaDataRepository.existsByUserAndFilename("user", "hello.txt")).thenReturn(Mono.just(false));
+        when(fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(eq("user"), anyString(),
+                eq(List.of(HashAlgorithm.SHA_256))))
+                .thenReturn(Mono.just(true));
+        when(reactiveGridFsTemplate.store(any(), eq("hello.txt"), eq("text/plain")))
+                .thenAnswer(invocation -> Flux.from(invocation.<Publisher<DataBuffer>>getArgument(0))
+                        .doOnNext(DataBufferUtils::release)
+                        .then(Mono.just(blobId)));
+        when(reactiveGridFsTemplate.delete(any(Query.class))).thenReturn(Mono.empty());
+
+        // Act
+        Mono<FileMetadataDTO> result = reactiveStorageService.saveFile("user", filePart, FileVisibility.PUBLIC,
+                List.of(), BASE_URL);
+
+        // Assert
+        StepVerifier.create(result)
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        verify(reactiveGridFsTemplate).delete(any(Query.class));
+        verify(fileMetaDataRepository, never()).save(any(FileMetadata.class));
+    }
+
+    @Test
+    void getFileDownload_shouldStreamContentOfBlob() {
+        // Arrange
+        ObjectId fileId = new ObjectId();
+        GridFSFile gridFSFile = mock(GridFSFile.class);
+        ReactiveGridFsResource resource = mock(ReactiveGridFsResource.class);
+        when(fileMetaDataRepository.findByFileId(fileId)).thenReturn(Mono.just(FileMetadata.builder()
+                .fileId(fileId)
+                .filename("hello.txt")
+                .fileSize(5)
+                .fileRollingHash("hash")
+                .build()));
+        when(reactiveGridFsTemplate.findOne(any(Query.class))).thenReturn(Mono.just(gridFSFile));
+        when(reactiveGridFsTemplate.getResource(gridFSFile)).thenReturn(Mono.just(resource));
+        when(resource.getDownloadStream(anyInt())).thenReturn(Flux.just(DefaultDataBufferFactory.sharedInstance
+                .wrap("Hello".getBytes(StandardCharsets.UTF_8))));
+
+        // Act & Assert
+        StepVerifier.create(reactiveStorageService.getFileDownload(fileId.toHexString())
+                        .flatMap(fileDownload -> DataBufferUtils.join(fileDownload.getContent()))
+                        .map(dataBuffer -> dataBuffer.toString(StandardCharsets.UTF_8)))
+                .expectNext("Hello")
+                .verifyComplete();
+    }
+
+    private static FilePart filePart(String filename, String... chunks) {
+        FilePart filePart = mock(FilePart.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_PLAIN);
+        when(filePart.filename()).thenReturn(filename);
+        when(filePart.headers()).thenReturn(headers);
+        when(filePart.content()).thenReturn(Flux.fromArray(chunks)
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8))));
+        return filePart;
+    }
+}
@@ -1,25 +1,46 @@
 package com.muhim.storage.service;
 
+import com.muhim.storage.dto.FileListDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.FileFieldSet;
 import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileDetailsProjection;
+import com.muhim.storage.model.FileLinkProjection;
 import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.model.FileSummaryProjection;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import com.muhim.storage.utils.CursorUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,12 +50,17 @@ public class StorageAccessServiceImplTest {
     @Mock
     private FileMetaDataRepository fileMetaDataRepository;
 
-    @InjectMocks
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+
+    private SimpleMeterRegistry meterRegistry;
+
     private StorageAccessServiceImpl storageAccessService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        storageAccessService = new StorageAccessServiceImpl(fileMetaDataRepository, 5, 100, meterRegistry);
     }
 
     @Test
@@ -61,13 +87,18 @@ public class StorageAccessServiceImplTest {
                 .fileId(objectId)
                 .build());
 
-        Page<FileMetadata> mockPage = new PageImpl<>(mockMetadataList);
+        Page<FileSummaryProjection> mockPage = new PageImpl<>(toSummaries(mockMetadataList));
 
-        when(fileMetaDataRepository.findByVisibility(eq(FileVisibility.PUBLIC), any(Pageable.class)))
+        when(fileMetaDataRepository.findByVisibility(eq(FileVisibility.PUBLIC), any(Pageable.class), eq(FileSummaryProjection.class)))
                 .thenReturn(mockPage);
 
         // Act
-        Page<FileMetadataDTO> resultPage = storageAccessService.getPublicFiles(page, sortBy, tag, baseUrl);
+        Page<FileMetadataDTO> resultPage = storageAccessService.getPublicFiles(page,
+                null,
+                sortBy,
+                tag,
+                FileFieldSet.SUMMARY,
+                baseUrl);
 
         // Assert
         assertEquals(2, resultPage.getTotalElements());
@@ -75,7 +106,7 @@ public class StorageAccessServiceImplTest {
         assertEquals("file2", resultPage.getContent().get(1).getFileName());
 
         verify(fileMetaDataRepository, times(1))
-                .findByVisibility(eq(FileVisibility.PUBLIC), any(Pageable.class));
+                .findByVisibility(eq(FileVisibility.PUBLIC), any(Pageable.class), eq(FileSummaryProjection.class));
     }
 
     @Test
@@ -102,15 +133,20 @@ public class StorageAccessServiceImplTest {
                 .fileId(objectId)
                 .build());
 
-        Page<FileMetadata> mockPage = new PageImpl<>(mockMetadataList);
+        Page<FileSummaryProjection> mockPage = new PageImpl<>(toSummaries(mockMetadataList));
 
-        when(fileMetaDataRepository.findByVisibilityAndTagsIgnoreCase(eq(FileVisibility.PUBLIC),
+        when(fileMetaDataRepository.findByVisibilityAndNormalizedTags(eq(FileVisibility.PUBLIC),
                 eq(tag),
-                any(Pageable.class)))
+                any(Pageable.class), eq(FileSummaryProjection.class)))
                 .thenReturn(mockPage);
 
         // Act
-        Page<FileMetadataDTO> resultPage = storageAccessService.getPublicFiles(page, sortBy, tag, baseUrl);
+        Page<FileMetadataDTO> resultPage = storageAccessService.getPublicFiles(page,
+                null,
+                sortBy,
+                tag,
+                FileFieldSet.SUMMARY,
+                baseUrl);
 
         // Assert
         assertEquals(2, resultPage.getTotalElements());
@@ -118,7 +154,11 @@ public class StorageAccessServiceImplTest {
         assertEquals("file2", resultPage.getContent().get(1).getFileName());
 
         verify(fileMetaDataRepository, times(1))
-                .findByVisibilityAndTagsIgnoreCase(eq(FileVisibility.PUBLIC), eq(tag), any(Pageable.class));
+                .findByVisibilityAndNormalizedTags(eq(FileVisibility.PUBLIC), eq(tag), any(Pageable.class), eq(FileSummaryProjection.class));
+        assertEquals(1, meterRegistry.get("storage.listing")
+                .tags("scope", "public", "filter", "tag", "pagination", "offset")
+                .timer()
+                .count());
     }
 
     @Test
@@ -146,13 +186,19 @@ public class StorageAccessServiceImplTest {
                 .fileId(objectId)
                 .build());
 
-        Page<FileMetadata> mockPage = new PageImpl<>(mockMetadataList);
+        Page<FileSummaryProjection> mockPage = new PageImpl<>(toSummaries(mockMetadataList));
 
-        when(fileMetaDataRepository.findByUserAndTagsIgnoreCase(eq(user), eq(tag), any(Pageable.class)))
+        when(fileMetaDataRepository.findByUserAndNormalizedTags(eq(user), eq(tag), any(Pageable.class), eq(FileSummaryProjection.class)))
                 .thenReturn(mockPage);
 
         // Act
-        Page<FileMetadataDTO> resultPage = storageAccessService.getUserFiles(user, page, sortBy, tag, baseUrl);
+        Page<FileMetadataDTO> resultPage = storageAccessService.getUserFiles(user,
+                page,
+                null,
+                sortBy,
+                tag,
+                FileFieldSet.SUMMARY,
+                baseUrl);
 
         // Assert
         assertEquals(2, resultPage.getTotalElements());
@@ -160,7 +206,7 @@ public class StorageAccessServiceImplTest {
         assertEquals("file2", resultPage.getContent().get(1).getFileName());
 
         verify(fileMetaDataRepository, times(1))
-                .findByUserAndTagsIgnoreCase(eq(user), eq(tag), any(Pageable.class));
+                .findByUserAndNormalizedTags(eq(user), eq(tag), any(Pageable.class), eq(FileSummaryProjection.class));
     }
 
     @Test
@@ -188,13 +234,19 @@ public class StorageAccessServiceImplTest {
                 .fileId(objectId)
                 .build());
 
-        Page<FileMetadata> mockPage = new PageImpl<>(mockMetadataList);
+        Page<FileSummaryProjection> mockPage = new PageImpl<>(toSummaries(mockMetadataList));
 
-        when(fileMetaDataRepository.findByUser(eq(user), any(Pageable.class)))
+        when(fileMetaDataRepository.findByUser(eq(user), any(Pageable.class), eq(FileSummaryProjection.class)))
                 .thenReturn(mockPage);
 
         // Act
-        Page<FileMetadataDTO> resultPage = storageAccessService.getUserFiles(user, page, sortBy, tag, baseUrl);
+        Page<FileMetadataDTO> resultPage = storageAccessService.getUserFiles(user,
+                page,
+                null,
+                sortBy,
+                tag,
+                FileFieldSet.SUMMARY,
+                baseUrl);
 
         // Assert
         assertEquals(2, resultPage.getTotalElements());
@@ -202,6 +254,164 @@ public class StorageAccessServiceImplTest {
         assertEquals("file2", resultPage.getContent().get(1).getFileName());
 
         verify(fileMetaDataRepository, times(1))
-                .findByUser(eq(user), any(Pageable.class));
+                .findByUser(eq(user), any(Pageable.class), eq(FileSummaryProjection.class));
+    }
+
+    @Test
+    void scrollPublicFiles_shouldReturnCursorOfLastElement() {
+        // Arrange
+        String baseUrl = "http://localhost:8080/";
+        ObjectId objectId = new ObjectId("507f1f77bcf86cd799439011");
+
+        List<FileMetadata> mockMetadataList = List.of(
+                FileMetadata.builder().id("1").filename("file1").fileId(objectId).build(),
+                FileMetadata.builder().id("2").filename("file2").fileId(objectId).build());
+        Window<FileSummaryProjection> mockWindow = Window.from(toSummaries(mockMetadataList),
+                index -> ScrollPosition.forward(Map.of("filename", mockMetadataList.get(index).getFilename(),
+                        "id", mockMetadataList.get(index).getId())),
+                true);
+
+        when(fileMetaDataRepository.findByVisibility(eq(FileVisibility.PUBLIC),
+                any(ScrollPosition.class),
+                any(Sort.class),
+                any(Limit.class),
+                eq(FileSummaryProjection.class)))
+                .thenReturn(mockWindow);
+
+        // Act
+        FileListDTO result = storageAccessService.scrollPublicFiles(null,
+                null,
+                "filename",
+                "",
+                FileFieldSet.SUMMARY,
+                false,
+                baseUrl);
+
+        // Assert
+        assertEquals(2, result.getContent().size());
+        assertTrue(result.isHasNext());
+        assertNull(result.getTotalElements());
+        assertEquals(Map.of("filename", "file2", "id", "2"),
+                CursorUtils.decode(result.getNextCursor(), List.of("filename", "id")).getKeys());
+        verify(fileMetaDataRepository, times(1)).findByVisibility(FileVisibility.PUBLIC,
+                ScrollPosition.keyset(),
+                Sort.by(Sort.Direction.ASC, "filename", "id"),
+                Limit.of(5),
+                FileSummaryProjection.class);
+        verify(fileMetaDataRepository, never()).countByVisibility(any());
+    }
+
+    @Test
+    void scrollUserFiles_withTag_shouldContinueFromCursorAndCount() {
+        // Arrange
+        String user = "testuser";
+        String cursor = CursorUtils.encode(ScrollPosition.forward(Map.of("uploadDate", new Date(0), "id", "1")));
+
+        when(fileMetaDataRepository.findByUserAndNormalizedTags(eq(user),
+                eq("tag1"),
+                any(ScrollPosition.class),
+                any(Sort.class),
+                any(Limit.class),
+                eq(FileSummaryProjection.class)))
+                .thenReturn(Window.from(List.of(), ScrollPosition::offset, false));
+        when(fileMetaDataRepository.countByUserAndNormalizedTags(user, "tag1")).thenReturn(1L);
+
+        // Act
+        FileListDTO result = storageAccessService.scrollUserFiles(user,
+                cursor,
+                null,
+                "uploadDate",
+                "Tag1",
+                FileFieldSet.SUMMARY,
+                true,
+                "localhost");
+
+        // Assert
+        assertTrue(result.getContent().isEmpty());
+        assertFalse(result.isHasNext());
+        assertNull(result.getNextCursor());
+        assertEquals(1L, result.getTotalElements());
+        verify(fileMetaDataRepository, times(1)).findByUserAndNormalizedTags(user,
+                "tag1",
+                ScrollPosition.forward(Map.of("uploadDate", new Date(0), "id", "1")),
+                Sort.by(Sort.Direction.ASC, "uploadDate", "id"),
+                Limit.of(5),
+                FileSummaryProjection.class);
+    }
+
+    @Test
+    void getPublicFiles_shouldCapPageSizeAndReturnDetails() {
+        // Arrange
+        ObjectId objectId = new ObjectId("507f1f77bcf86cd799439011");
+        FileDetailsProjection details = projectionFactory.createProjection(FileDetailsProjection.class,
+                FileMetadata.builder()
+                        .filename("file1")
+                        .fileId(objectId)
+                        .fileSize(42)
+                        .contentType("text/plain")
+                        .build());
+
+        when(fileMetaDataRepository.findByVisibility(eq(FileVisibility.PUBLIC),
+                any(Pageable.class),
+                eq(FileDetailsProjection.class)))
+                .thenReturn(new PageImpl<>(List.of(details)));
+
+        // Act
+        Page<FileMetadataDTO> resultPage = storageAccessService.getPublicFiles(0,
+                10000,
+                "filename",
+                null,
+                FileFieldSet.DETAILS,
+                "localhost");
+
+        // Assert
+        assertEquals(100, resultPage.getSize());
+        assertEquals(42L, resultPage.getContent().get(0).getFileSize());
+        assertEquals("text/plain", resultPage.getContent().get(0).getContentType());
+        verify(fileMetaDataRepository, times(1)).findByVisibility(FileVisibility.PUBLIC,
+                PageRequest.of(0, 100, Sort.by(Sort.Direction.ASC, "filename")),
+                FileDetailsProjection.class);
+    }
+
+    @Test
+    void getUserFiles_withLinkFields_shouldOnlySetNameAndLink() {
+        // Arrange
+        FileLinkProjection link = projectionFactory.createProjection(FileLinkProjection.class,
+                FileMetadata.builder()
+                        .filename("file1")
+                        .fileId(new ObjectId("507f1f77bcf86cd799439011"))
+                        .visibility(FileVisibility.PRIVATE)
+                        .build());
+
+        when(fileMetaDataRepository.findByUser(eq("testuser"), any(Pageable.class), eq(FileLinkProjection.class)))
+                .thenReturn(new PageImpl<>(List.of(link)));
+
+        // Act
+        Page<FileMetadataDTO> resultPage = storageAccessService.getUserFiles("testuser",
+                0,
+                20,
+                "filename",
+                "",
+                FileFieldSet.LINK,
+                "localhost");
+
+        // Assert
+        assertEquals(20, resultPage.getSize());
+        assertEquals("file1", resultPage.getContent().get(0).getFileName());
+        assertNotNull(resultPage.getContent().get(0).getDownloadLink());
+        assertNull(resultPage.getContent().get(0).getVisibility());
+        assertThrows(IllegalArgumentException.class, () -> storageAccessService.getUserFiles("testuser",
+                0,
+                0,
+                "filename",
+                "",
+                FileFieldSet.LINK,
+                "localhost"));
+    }
+
+    private List<FileSummaryProjection> toSummaries(List<FileMetadata> fileMetadataList) {
+        return fileMetadataList.stream()
+                .map(fileMetadata -> projectionFactory.createProjection(FileSummaryProjection.class, fileMetadata))
+                .toList();
     }
 }
@@ -0,0 +1,134 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.enums.ArchiveFormat;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileMetadata;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageArchiveServiceImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private StorageDownloadService storageDownloadService;
+
+    private final ExecutorService archiveExecutor = Executors.newFixedThreadPool(2);
+
+    private StorageArchiveServiceImpl storageArchiveService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        storageArchiveService = new StorageArchiveServiceImpl(mongoTemplate, storageDownloadService, archiveExecutor,
+                DataSize.ofBytes(4));
+    }
+
+    @AfterEach
+    void tearDown() {
+        archiveExecutor.shutdownNow();
+    }
+
+    @Test
+    void writeArchive_shouldStreamZipWithUniqueEntryNames() throws IOException {
+        // Arrange
+        FileMetadata first = file("a.txt", "first");
+        FileMetadata second = file("a.txt", "second");
+        FileMetadata third = file("../b", "third");
+        when(mongoTemplate.stream(any(Query.class), eq(FileMetadata.class))).thenReturn(Stream.of(first, second, third));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // Act
+        storageArchiveService.writeArchive(ArchiveFormat.ZIP, null, "testUser", null, outputStream);
+
+        // Assert
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                names.add(zipEntry.getName());
+                contents.add(new String(zipInputStream.readAllBytes()));
+            }
+        }
+        assertEquals(List.of("a.txt", "a (1).txt", ".._b"), names);
+        assertEquals(List.of("first", "second", "third"), contents);
+    }
+
+    @Test
+    void writeArchive_shouldSelectOnlyPublicFilesByTagWithoutUser() throws IOException {
+        // Arrange
+        when(mongoTemplate.stream(any(Query.class), eq(FileMetadata.class))).thenReturn(Stream.empty());
+
+        // Act
+        storageArchiveService.writeArchive(ArchiveFormat.TAR, null, null, "Holiday", new ByteArrayOutputStream());
+
+        // Assert
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(captor.capture(), eq(FileMetadata.class));
+        assertEquals(FileVisibility.PUBLIC, captor.getValue().getQueryObject().get("visibility"));
+        assertEquals("holiday", captor.getValue().getQueryObject().get("normalizedTags"));
+    }
+
+    @Test
+    void writeArchive_shouldNotFinishArchiveWhenFileCannotBeRead() {
+        // Arrange
+        FileMetadata first = file("a.txt", "first");
+        FileMetadata broken = FileMetadata.builder().fileId(new ObjectId()).filename("b.txt").fileSize(3).build();
+        when(mongoTemplate.stream(any(Query.class), eq(FileMetadata.class))).thenReturn(Stream.of(first, broken));
+        when(storageDownloadService.openResource(broken)).thenThrow(new UncheckedIOException(new IOException("gone")));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // Act & Assert
+        assertThrows(IOException.class, () ->
+                storageArchiveService.writeArchive(ArchiveFormat.ZIP, null, "testUser", null, outputStream));
+        assertFalse(containsEndOfCentralDirectory(outputStream.toByteArray()));
+    }
+
+    private boolean containsEndOfCentralDirectory(byte[] archive) {
+        for (int i = 0; i + 3 < archive.length; i++) {
+            if (archive[i] == 'P' && archive[i + 1] == 'K' && archive[i + 2] == 5 && archive[i + 3] == 6) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private FileMetadata file(String filename, String content) {
+        FileMetadata fileMetadata = FileMetadata.builder()
+                .fileId(new ObjectId())
+                .filename(filename)
+                .fileSize(content.length())
+                .build();
+        when(storageDownloadService.openResource(fileMetadata)).thenReturn(new ByteArrayResource(content.getBytes()));
+        return fileMetadata;
+    }
+}
@@ -1,6 +1,11 @@
 package com.muhim.storage.service;
 
-import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.cache.BlobContentCache;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.dto.FileDownloadDTO;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileMetadata;
 import com.muhim.storage.repository.FileMetaDataRepository;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,11 +13,21 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.util.unit.DataSize;
+import org.springframework.core.io.Resource;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class StorageDownloadServiceImplTest {
@@ -22,7 +37,13 @@ class StorageDownloadServiceImplTest {
     private FileMetaDataRepository fileMetaDataRepository;
 
     @Mock
-    private GridFsClient gridFsClient;
+    private BlobStore blobStore;
+
+    @Spy
+    private FileMetadataCache fileMetadataCache = new FileMetadataCache(100, Duration.ofMinutes(1));
+
+    @Spy
+    private BlobContentCache blobContentCache = new BlobContentCache(DataSize.ofKilobytes(1), DataSize.ofKilobytes(4));
 
     @InjectMocks
     private StorageDownloadServiceImpl storageDownloadService;
@@ -30,36 +51,115 @@ class StorageDownloadServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(blobStore.openResource(any(), any(), anyLong(), anyLong())).thenCallRealMethod();
     }
 
     @Test
-    void downloadFileStream_shouldReturnInputStream() {
+    void getFileDownload_shouldDescribeFileWithSingleLookup() throws IOException {
         // Arrange
         String fileId = "507f1f77bcf86cd799439011";
         ObjectId objectId = new ObjectId(fileId);
         byte[] testData = "Hello, World!".getBytes();
-        InputStream mockInputStream = new ByteArrayInputStream(testData);
-
-        when(fileMetaDataRepository.existsByFileId(objectId)).thenReturn(true);
-        when(gridFsClient.openDownloadStream(objectId)).thenReturn(mockInputStream);
+        Date uploadDate = new Date();
+
+        when(fileMetaDataRepository.findByFileId(objectId)).thenReturn(FileMetadata.builder()
+                .fileId(objectId)
+                .filename("hello.txt")
+                .fileSize(testData.length)
+                .contentType("text/plain")
+                .fileRollingHash("hash")
+                .uploadDate(uploadDate)
+                .build());
+        when(blobStore.openDownloadStream(objectId)).thenReturn(new ByteArrayInputStream(testData));
 
         // Act
-        InputStream result = storageDownloadService.downloadFileStream(fileId);
+        FileDownloadDTO result = storageDownloadService.getFileDownload(fileId);
 
         // Assert
-        assertNotNull(result);
+        assertEquals("hello.txt", result.getFilename());
+        assertEquals(testData.length, result.getFileSize());
+        assertEquals("text/plain", result.getContentType());
+        assertEquals("hash", result.getFileRollingHash());
+        assertEquals(testData.length, result.getResource().contentLength());
+        assertEquals(uploadDate.getTime(), result.getResource().lastModified());
+        verify(blobStore, never()).openDownloadStream(any());
+
+        assertArrayEquals(testData, result.getResource().getInputStream().readAllBytes());
+        verify(fileMetaDataRepository, times(1)).findByFileId(objectId);
     }
 
     @Test
-    void downloadFileStream_shouldThrowExceptionIfFileDoesNotExist() {
+    void getFileDownload_shouldThrowExceptionIfFileDoesNotExist() {
         // Arrange
         String fileId = "507f1f77bcf86cd799439011";
         ObjectId objectId = new ObjectId(fileId);
 
-        when(fileMetaDataRepository.existsByFileId(objectId)).thenReturn(false);
+        when(fileMetaDataRepository.findByFileId(objectId)).thenReturn(null);
 
         // Act & Assert
-        assertThrows(IllegalArgumentException.class, () -> storageDownloadService.downloadFileStream(fileId));
+        assertThrows(IllegalArgumentException.class, () -> storageDownloadService.getFileDownload(fileId));
     }
 
-}
\ No newline at end of file
+    @Test
+    void getFileDownload_shouldOpenSharedBlob() throws IOException {
+        // Arrange
+        String fileId = "507f1f77bcf86cd799439011";
+        ObjectId objectId = new ObjectId(fileId);
+        ObjectId blobId = new ObjectId();
+        byte[] testData = "Hello, World!".getBytes();
+
+        when(fileMetaDataRepository.findByFileId(objectId))
+                .thenReturn(FileMetadata.builder().fileId(objectId).blobId(blobId).build());
+        when(blobStore.openDownloadStream(blobId)).thenAnswer(invocation -> new ByteArrayInputStream(testData));
+
+        // Act
+        Resource resource = storageDownloadService.getFileDownload(fileId).getResource();
+
+        // Assert
+        assertArrayEquals(testData, resource.getInputStream().readAllBytes());
+        assertArrayEquals(testData, resource.getInputStream().readAllBytes());
+        verify(blobStore, times(2)).openDownloadStream(blobId);
+    }
+
+    @Test
+    void getFileDownload_shouldServeRepeatedDownloadsFromCache() {
+        // Arrange
+        String fileId = "507f1f77bcf86cd799439011";
+        ObjectId objectId = new ObjectId(fileId);
+
+        when(fileMetaDataRepository.findByFileId(objectId))
+                .thenReturn(FileMetadata.builder().fileId(objectId).filename("hello.txt").build());
+
+        // Act
+        storageDownloadService.getFileDownload(fileId);
+        FileDownloadDTO result = storageDownloadService.getFileDownload(fileId);
+
+        // Assert
+        assertEquals("hello.txt", result.getFilename());
+        verify(fileMetaDataRepository, times(1)).findByFileId(objectId);
+    }
+
+    @Test
+    void getFileDownload_shouldServeSmallPublicFileFromBlobContentCache() throws IOException {
+        // Arrange
+        String fileId = "507f1f77bcf86cd799439011";
+        ObjectId objectId = new ObjectId(fileId);
+        byte[] testData = "Hello, World!".getBytes();
+
+        when(fileMetaDataRepository.findByFileId(objectId)).thenReturn(FileMetadata.builder()
+                .fileId(objectId)
+                .visibility(FileVisibility.PUBLIC)
+                .fileSize(testData.length)
+                .build());
+        when(blobStore.openDownloadStream(objectId)).thenAnswer(invocation -> new ByteArrayInputStream(testData));
+
+        // Act
+        Resource first = storageDownloadService.getFileDownload(fileId).getResource();
+        Resource second = storageDownloadService.getFileDownload(fileId).getResource();
+
+        // Assert
+        assertArrayEquals(testData, first.getInputStream().readAllBytes());
+        assertArrayEquals(testData, second.getInputStream().readAllBytes());
+        verify(blobStore, times(1)).openDownloadStream(objectId);
+    }
+}
@@ -1,18 +1,42 @@
 package com.muhim.storage.service;
 
-import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.cache.BlobContentCache;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.dto.BulkOperationResultDTO;
+import com.muhim.storage.model.FileIdentityProjection;
 import com.muhim.storage.model.FileMetadata;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -23,7 +47,16 @@ class StorageModificationServiceImplTest {
     private FileMetaDataRepository fileMetaDataRepository;
 
     @Mock
-    private GridFsClient gridFsClient;
+    private BlobReferenceService blobReferenceService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Spy
+    private FileMetadataCache fileMetadataCache = new FileMetadataCache(100, Duration.ofMinutes(1));
+
+    @Spy
+    private BlobContentCache blobContentCache = new BlobContentCache(DataSize.ofKilobytes(1), DataSize.ofKilobytes(4));
 
     @InjectMocks
     private StorageModificationServiceImpl storageModificationService;
@@ -46,17 +79,15 @@ class StorageModificationServiceImplTest {
                 .fileId(fileId)
                 .build();
 
-        when(fileMetaDataRepository.existsByUserAndFilename(user, filename)).thenReturn(true);
-        when(fileMetaDataRepository.findByUserAndFilename(user, filename)).thenReturn(mockMetadata);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(FileMetadata.class))).thenReturn(mockMetadata);
 
         // Act
         storageModificationService.deleteFilesByUserAndName(user, filename);
 
         // Assert
-        verify(fileMetaDataRepository, times(1)).existsByUserAndFilename(user, filename);
-        verify(fileMetaDataRepository, times(1)).findByUserAndFilename(user, filename);
-        verify(gridFsClient, times(1)).delete(fileId);
-        verify(fileMetaDataRepository, times(1)).delete(mockMetadata);
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(FileMetadata.class));
+        verify(blobReferenceService, times(1)).release(mockMetadata);
+        verify(fileMetadataCache, times(1)).invalidate(mockMetadata);
     }
 
     @Test
@@ -65,16 +96,100 @@ class StorageModificationServiceImplTest {
         String user = "testuser";
         String filename = "testfile.txt";
 
-        when(fileMetaDataRepository.existsByUserAndFilename(filename, user)).thenReturn(false);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(FileMetadata.class))).thenReturn(null);
 
         // Act & Assert
         assertThrows(IllegalArgumentException.class, () ->
                 storageModificationService.deleteFilesByUserAndName(user, filename));
 
-        verify(fileMetaDataRepository, times(1)).existsByUserAndFilename(user, filename);
-        verify(fileMetaDataRepository, never()).findByUserAndFilename(anyString(), anyString());
-        verify(gridFsClient, never()).delete(any());
-        verify(fileMetaDataRepository, never()).delete(any());
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(FileMetadata.class));
+        verify(blobReferenceService, never()).release(any());
+    }
+
+    @Test
+    void deleteFilesByUserAndName_shouldReleaseBlobOnceWhenDeletedTwice() {
+        // Arrange
+        String user = "testuser";
+        String filename = "testfile.txt";
+
+        FileMetadata mockMetadata = FileMetadata.builder()
+                .user(user)
+                .filename(filename)
+                .contentHash("abc123")
+                .build();
+
+        // the second delete of the same file finds nothing left to remove
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(FileMetadata.class)))
+                .thenReturn(mockMetadata)
+                .thenReturn(null);
+
+        // Act
+        storageModificationService.deleteFilesByUserAndName(user, filename);
+
+        // Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageModificationService.deleteFilesByUserAndName(user, filename));
+        verify(blobReferenceService, times(1)).release(mockMetadata);
+    }
+
+    @Test
+    void deleteFilesByUserAndName_shouldRemoveCachedFileById() {
+        // Arrange
+        String user = "testuser";
+        String filename = "testfile.txt";
+
+        FileMetadata mockMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .fileId(new ObjectId())
+                .user(user)
+                .filename(filename)
+                .contentHash("abc123")
+                .build();
+        fileMetadataCache.getByUserAndFilename(user, filename, (u, f) -> mockMetadata);
+
+        when(mongoTemplate.remove(any(Query.class), eq(FileMetadata.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        // Act
+        storageModificationService.deleteFilesByUserAndName(user, filename);
+
+        // Assert
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).remove(queryCaptor.capture(), eq(FileMetadata.class));
+        assertEquals(mockMetadata.getId(), queryCaptor.getValue().getQueryObject().get("id"));
+        assertEquals(filename, queryCaptor.getValue().getQueryObject().get("filename"));
+        verify(mongoTemplate, never()).findAndRemove(any(Query.class), eq(FileMetadata.class));
+        verify(blobReferenceService, times(1)).release(mockMetadata);
+        assertNull(fileMetadataCache.getIfPresent(user, filename));
+    }
+
+    @Test
+    void deleteFilesByUserAndName_shouldFallBackToDatabaseWhenCachedFileIsStale() {
+        // Arrange
+        String user = "testuser";
+        String filename = "testfile.txt";
+
+        FileMetadata staleMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .user(user)
+                .filename(filename)
+                .build();
+        FileMetadata storedMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .user(user)
+                .filename(filename)
+                .build();
+        fileMetadataCache.getByUserAndFilename(user, filename, (u, f) -> staleMetadata);
+
+        // deleted and uploaded again through another instance
+        when(mongoTemplate.remove(any(Query.class), eq(FileMetadata.class))).thenReturn(DeleteResult.acknowledged(0));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(FileMetadata.class))).thenReturn(storedMetadata);
+
+        // Act
+        storageModificationService.deleteFilesByUserAndName(user, filename);
+
+        // Assert
+        verify(blobReferenceService, times(1)).release(storedMetadata);
+        verify(blobReferenceService, never()).release(staleMetadata);
     }
 
     @Test
@@ -83,22 +198,115 @@ class StorageModificationServiceImplTest {
         String user = "testuser";
         String filename = "testfile.txt";
         String newFilename = "newfile.txt";
+        ObjectId fileId = new ObjectId();
 
         FileMetadata mockMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .fileId(fileId)
                 .user(user)
                 .filename(filename)
                 .build();
+        fileMetadataCache.getByFileId(fileId, id -> mockMetadata);
 
-        when(fileMetaDataRepository.existsByUserAndFilename(user, filename)).thenReturn(true);
         when(fileMetaDataRepository.findByUserAndFilename(user, filename)).thenReturn(mockMetadata);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
 
         // Act
         storageModificationService.renameFile(user, filename, newFilename);
 
         // Assert
-        verify(fileMetaDataRepository, times(1)).existsByUserAndFilename(user, filename);
-        verify(fileMetaDataRepository, times(1)).findByUserAndFilename(user, filename);
-        verify(fileMetaDataRepository, times(1)).save(mockMetadata);
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(1)).updateFirst(queryCaptor.capture(), updateCaptor.capture(), eq(FileMetadata.class));
+        assertEquals(mockMetadata.getId(), queryCaptor.getValue().getQueryObject().get("id"));
+        assertEquals(filename, queryCaptor.getValue().getQueryObject().get("filename"));
+        assertEquals(new Document("filename", newFilename), updateCaptor.getValue().getUpdateObject().get("$set"));
+        verify(fileMetaDataRepository, never()).save(any());
+        assertEquals(filename, mockMetadata.getFilename());
+        assertNull(fileMetadataCache.getByFileId(fileId, id -> null));
+    }
+
+    @Test
+    void renameFile_shouldLookUpCachedFileWithoutQuery() {
+        // Arrange
+        String user = "testuser";
+        String filename = "testfile.txt";
+        String newFilename = "newfile.txt";
+
+        FileMetadata mockMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .fileId(new ObjectId())
+                .user(user)
+                .filename(filename)
+                .build();
+        fileMetadataCache.getByUserAndFilename(user, filename, (u, f) -> mockMetadata);
+
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        // Act
+        storageModificationService.renameFile(user, filename, newFilename);
+
+        // Assert
+        verify(fileMetaDataRepository, never()).findByUserAndFilename(any(), any());
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class));
+        assertEquals(filename, mockMetadata.getFilename());
+        assertNull(fileMetadataCache.getIfPresent(user, filename));
+    }
+
+    @Test
+    void renameFile_shouldRetryWithStoredFileWhenCachedFileIsStale() {
+        // Arrange
+        String user = "testuser";
+        String filename = "testfile.txt";
+
+        FileMetadata staleMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .user(user)
+                .filename(filename)
+                .build();
+        FileMetadata storedMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .user(user)
+                .filename(filename)
+                .build();
+        fileMetadataCache.getByUserAndFilename(user, filename, (u, f) -> staleMetadata);
+
+        when(fileMetaDataRepository.findByUserAndFilename(user, filename)).thenReturn(storedMetadata);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        // Act
+        storageModificationService.renameFile(user, filename, "newfile.txt");
+
+        // Assert
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).updateFirst(queryCaptor.capture(), any(Update.class), eq(FileMetadata.class));
+        assertEquals(storedMetadata.getId(), queryCaptor.getAllValues().get(1).getQueryObject().get("id"));
+    }
+
+    @Test
+    void renameFile_shouldThrowExceptionIfFileChangedConcurrently() {
+        // Arrange
+        String user = "testuser";
+
+        FileMetadata mockMetadata = FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .user(user)
+                .filename("first.txt")
+                .build();
+
+        // renamed or deleted by another request between the read and the update
+        when(fileMetaDataRepository.findByUserAndFilename(user, "first.txt")).thenReturn(mockMetadata);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageModificationService.renameFile(user, "first.txt", "second.txt"));
+        verify(fileMetaDataRepository, never()).save(any());
     }
 
     @Test
@@ -108,14 +316,126 @@ class StorageModificationServiceImplTest {
         String filename = "testfile.txt";
         String newFilename = "newfile.txt";
 
-        when(fileMetaDataRepository.existsByUserAndFilename(user, filename)).thenReturn(false);
+        when(fileMetaDataRepository.findByUserAndFilename(user, filename)).thenReturn(null);
 
         // Act & Assert
         assertThrows(IllegalArgumentException.class, () ->
                 storageModificationService.renameFile(user, filename, newFilename));
 
-        verify(fileMetaDataRepository, times(1)).existsByUserAndFilename(user, filename);
-        verify(fileMetaDataRepository, never()).findByUserAndFilename(anyString(), anyString());
-        verify(fileMetaDataRepository, never()).save(any());
+        verify(fileMetaDataRepository, times(1)).findByUserAndFilename(user, filename);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(FileMetadata.class));
+    }
+
+    @Test
+    void deleteFiles_shouldDeleteInBatchesAndReportMissingFiles() {
+        // Arrange
+        String user = "testuser";
+        List<FileMetadata> firstBatch = IntStream.range(0, StorageModificationServiceImpl.BULK_BATCH_SIZE)
+                .mapToObj(i -> fileMetadata(user, "file" + i))
+                .toList();
+        List<FileMetadata> secondBatch = List.of(fileMetadata(user, "last"));
+        List<String> filenames = new ArrayList<>(firstBatch.stream().map(FileMetadata::getFilename).toList());
+        filenames.add("last");
+        filenames.add("missing");
+
+        when(mongoTemplate.find(any(Query.class), eq(FileMetadata.class)))
+                .thenReturn(firstBatch)
+                .thenReturn(secondBatch);
+        BulkOperations bulkOperations = mockBulkOperations();
+        when(bulkOperations.execute())
+                .thenReturn(BulkWriteResult.acknowledged(0, 0, firstBatch.size(), 0, List.of(), List.of()))
+                .thenReturn(BulkWriteResult.acknowledged(0, 0, 1, 0, List.of(), List.of()));
+
+        // Act
+        BulkOperationResultDTO result = storageModificationService.deleteFiles(user, filenames, null, null, null);
+
+        // Assert
+        assertEquals(firstBatch.size() + 1, result.getSucceededCount());
+        assertEquals(Map.of("missing", "File does not exist!"), result.getFailures());
+        verify(blobReferenceService, times(1)).releaseAll(firstBatch);
+        verify(blobReferenceService, times(1)).releaseAll(secondBatch);
+        verify(bulkOperations, times(2)).execute();
+        verify(fileMetadataCache, times(1)).invalidate(secondBatch.get(0));
+    }
+
+    @Test
+    void deleteFiles_shouldReleaseOnlySharedFilesItRemoved() {
+        // Arrange
+        String user = "testuser";
+        FileMetadata removed = sharedFileMetadata(user, "removed.txt");
+        FileMetadata deletedConcurrently = sharedFileMetadata(user, "concurrent.txt");
+
+        when(mongoTemplate.find(any(Query.class), eq(FileMetadata.class)))
+                .thenReturn(List.of(removed, deletedConcurrently));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(FileMetadata.class)))
+                .thenReturn(removed)
+                .thenReturn(null);
+
+        // Act
+        BulkOperationResultDTO result = storageModificationService.deleteFiles(user,
+                List.of("removed.txt", "concurrent.txt"), null, null, null);
+
+        // Assert
+        assertEquals(1, result.getSucceededCount());
+        assertEquals(Map.of("concurrent.txt", "File does not exist!"), result.getFailures());
+        verify(blobReferenceService, times(1)).releaseAll(List.of(removed));
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(FileMetadata.class));
+    }
+
+    @Test
+    void renameFiles_shouldRenameWithOneBulkWriteAndReportFailures() {
+        // Arrange
+        String user = "testuser";
+        FileIdentityProjection first = identity("a.txt");
+        Map<String, String> renames = new LinkedHashMap<>();
+        renames.put("a.txt", "c.txt");
+        renames.put("b.txt", "d.txt");
+        renames.put("e.txt", "taken.txt");
+
+        when(fileMetaDataRepository.findByUserAndFilenameIn(eq(user), eq(List.of("a.txt", "b.txt", "e.txt"))))
+                .thenReturn(List.of(first, identity("e.txt")));
+        when(fileMetaDataRepository.findByUserAndFilenameIn(eq(user), eq(List.of("c.txt", "d.txt", "taken.txt"))))
+                .thenReturn(List.of(identity("taken.txt")));
+        BulkOperations bulkOperations = mockBulkOperations();
+        when(bulkOperations.execute())
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        // Act
+        BulkOperationResultDTO result = storageModificationService.renameFiles(user, renames);
+
+        // Assert
+        assertEquals(1, result.getSucceededCount());
+        assertEquals(Map.of("b.txt", "File does not exist!", "e.txt", "File already exists!"), result.getFailures());
+        verify(bulkOperations, times(1)).updateOne(any(Query.class), any(Update.class));
+        verify(fileMetadataCache, times(1)).invalidate(first.getFileId());
+        verify(fileMetaDataRepository, times(2)).findByUserAndFilenameIn(eq(user), anyList());
+    }
+
+    private BulkOperations mockBulkOperations() {
+        BulkOperations bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileMetadata.class)).thenReturn(bulkOperations);
+        when(bulkOperations.remove(any(Query.class))).thenReturn(bulkOperations);
+        when(bulkOperations.updateOne(any(Query.class), any(Update.class))).thenReturn(bulkOperations);
+        return bulkOperations;
+    }
+
+    private FileMetadata fileMetadata(String user, String filename) {
+        return FileMetadata.builder()
+                .id(new ObjectId().toHexString())
+                .fileId(new ObjectId())
+                .user(user)
+                .filename(filename)
+                .build();
+    }
+
+    private FileMetadata sharedFileMetadata(String user, String filename) {
+        FileMetadata fileMetadata = fileMetadata(user, filename);
+        fileMetadata.setContentHash("hash-" + filename);
+        return fileMetadata;
+    }
+
+    private FileIdentityProjection identity(String filename) {
+        return new SpelAwareProxyProjectionFactory().createProjection(FileIdentityProjection.class,
+                FileMetadata.builder().fileId(new ObjectId()).filename(filename).build());
     }
-}
\ No newline at end of file
+}
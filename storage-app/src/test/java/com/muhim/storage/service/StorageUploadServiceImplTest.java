@@ -1,37 +1,78 @@
 package com.muhim.storage.service;
 
-import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.dto.BatchUploadResultDTO;
 import com.muhim.storage.dto.FileMetadataDTO;
 import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.hash.MessageDigestHasher;
+import com.muhim.storage.model.FileIdentityProjection;
 import com.muhim.storage.model.FileMetadata;
 import com.muhim.storage.repository.FileMetaDataRepository;
+import com.muhim.storage.utils.FileUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class StorageUploadServiceImplTest {
 
 
     @Mock
-    GridFsClient gridFsClient = mock(GridFsClient.class);
+    BlobStore blobStore = mock(BlobStore.class);
 
     @Mock
     private FileMetaDataRepository fileMetaDataRepository;
 
+    @Mock
+    private BlobReferenceService blobReferenceService;
+
+
+    @Spy
+    private FileMetadataCache fileMetadataCache = new FileMetadataCache(100, Duration.ofMinutes(1));
+
+    @Spy
+    private ContentHasherFactory contentHasherFactory = new ContentHasherFactory("sha-256", Runnable::run);
+
+    @Spy
+    private ExecutorService uploadExecutor = Executors.newFixedThreadPool(2);
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ObservationRegistry observationRegistry = ObservationRegistry.create();
 
     @Mock
     private MultipartFile file;
@@ -42,6 +83,12 @@ class StorageUploadServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdownNow();
     }
 
     @Test
@@ -59,10 +106,7 @@ class StorageUploadServiceImplTest {
         when(file.getOriginalFilename()).thenReturn(filename);
         when(file.getContentType()).thenReturn(contentType);
         when(file.getInputStream()).thenReturn(mock(InputStream.class));
-        when(gridFsClient.store(any(), any(), any())).thenReturn(objectId);
-        String dummyString = "dummyString";
-        InputStream inputStream = new ByteArrayInputStream(dummyString.getBytes());
-        when(gridFsClient.openDownloadStream(any())).thenReturn(inputStream);
+        when(blobStore.store(any(), any(), any(), anyLong())).thenReturn(objectId);
 
         FileMetadata fileMetadata = FileMetadata.builder()
                 .user(user)
@@ -79,7 +123,7 @@ class StorageUploadServiceImplTest {
         when(fileMetaDataRepository.save(any(FileMetadata.class))).thenReturn(fileMetadata);
 
         // Act
-        FileMetadataDTO result = storageUploadServiceImpl.saveFile(user, file, visibility, tags, baseUrl);
+        FileMetadataDTO result = storageUploadServiceImpl.saveFile(user, file, visibility, tags, null, baseUrl);
 
         // Assert
         assertNotNull(result);
@@ -89,6 +133,44 @@ class StorageUploadServiceImplTest {
         assertEquals(tags.stream().sorted().toList(), result.getTags());
 
         verify(fileMetaDataRepository, times(1)).save(any(FileMetadata.class));
+        verify(blobStore, never()).openDownloadStream(any());
+    }
+
+    @Test
+    void saveFile_shouldHashAndCountWhileStoring() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        String user = "testUser";
+        String filename = "testFile.txt";
+        String baseUrl = "localhost:8080";
+        byte[] content = "dummyString".getBytes();
+        ObjectId objectId = new ObjectId();
+
+        when(file.getOriginalFilename()).thenReturn(filename);
+        when(file.getContentType()).thenReturn(null);
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return objectId;
+        });
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        storageUploadServiceImpl.saveFile(user, file, FileVisibility.PRIVATE, List.of(), null, baseUrl);
+
+        // Assert
+        ArgumentCaptor<FileMetadata> captor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(captor.capture());
+        FileMetadata saved = captor.getValue();
+        assertEquals(FileUtils.generateFileRollingHash(new ByteArrayInputStream(content),
+                contentHasherFactory.newHasher()), saved.getFileRollingHash());
+        assertEquals(HashAlgorithm.SHA_256, saved.getHashAlgorithm());
+        assertEquals(content.length, saved.getFileSize());
+        assertEquals("text/plain", saved.getContentType());
+        verify(blobStore, never()).openDownloadStream(any());
+        for (String phase : List.of("validation", "detection", "store", "hash", "duplicate-check", "metadata-save")) {
+            assertEquals(1, meterRegistry.get("storage.upload.phase").tag("phase", phase).timer().count(), phase);
+        }
+        assertEquals(content.length, meterRegistry.get("storage.upload.bytes").counter().count());
     }
 
     @Test
@@ -101,7 +183,385 @@ class StorageUploadServiceImplTest {
 
         // Act & Assert
         assertThrows(IllegalArgumentException.class, () ->
-                storageUploadServiceImpl.saveFile(user, file, visibility, tags, baseUrl));
+                storageUploadServiceImpl.saveFile(user, file, visibility, tags, null, baseUrl));
     }
 
-}
\ No newline at end of file
+    @Test
+    void saveFile_shouldRejectDuplicateFilenameBeforeStoring() throws IOException {
+        // Arrange
+        String user = "testUser";
+        String filename = "testFile.txt";
+
+        when(file.getOriginalFilename()).thenReturn(filename);
+        when(fileMetaDataRepository.existsByUserAndFilename(user, filename)).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageUploadServiceImpl.saveFile(user, file, FileVisibility.PUBLIC, List.of(), null, "localhost"));
+
+        verify(file, never()).getInputStream();
+        verify(blobStore, never()).store(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void saveFile_shouldRejectKnownDigestBeforeStoring() throws IOException {
+        // Arrange
+        String user = "testUser";
+        String fileDigest = "ABCDEF";
+
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(fileMetaDataRepository.existsByUserAndFileRollingHashAndHashAlgorithmIn(user, "abcdef",
+                List.of(HashAlgorithm.SHA_256))).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageUploadServiceImpl.saveFile(user, file, FileVisibility.PUBLIC, List.of(), fileDigest, "localhost"));
+
+        verify(file, never()).getInputStream();
+        verify(blobStore, never()).store(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void saveFile_shouldDeleteStoredFileOnDigestMismatch() throws IOException {
+        // Arrange
+        ObjectId objectId = new ObjectId();
+
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream("dummyString".getBytes()));
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return objectId;
+        });
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageUploadServiceImpl.saveFile("testUser", file, FileVisibility.PUBLIC, List.of(), "abcdef", "localhost"));
+
+        verify(blobStore, times(1)).delete(objectId);
+        verify(fileMetaDataRepository, never()).save(any());
+    }
+
+    @Test
+    void saveFile_shouldReferenceSharedBlobWhenContentAddressed() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId storedId = new ObjectId();
+        ObjectId sharedBlobId = new ObjectId();
+        byte[] content = "dummyString".getBytes();
+
+        when(blobReferenceService.isContentAddressed()).thenReturn(true);
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return storedId;
+        });
+        when(blobReferenceService.acquire(anyString(), eq(storedId), eq((long) content.length))).thenReturn(sharedBlobId);
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        storageUploadServiceImpl.saveFile("testUser", file, FileVisibility.PUBLIC, List.of(), null, "localhost");
+
+        // Assert
+        ArgumentCaptor<FileMetadata> captor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(captor.capture());
+        FileMetadata saved = captor.getValue();
+        assertEquals(sharedBlobId, saved.getStorageId());
+        assertNotEquals(sharedBlobId, saved.getFileId());
+        assertEquals(64, saved.getContentHash().length());
+        // the sha-256 rolling hash is taken from the content hash
+        assertEquals(saved.getContentHash(), saved.getFileRollingHash());
+    }
+
+    @Test
+    void saveFile_shouldReleaseSharedBlobWhenSaveFails() throws IOException {
+        // Arrange
+        ObjectId storedId = new ObjectId();
+        ObjectId sharedBlobId = new ObjectId();
+
+        when(blobReferenceService.isContentAddressed()).thenReturn(true);
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream("dummyString".getBytes()));
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return storedId;
+        });
+        when(blobReferenceService.acquire(anyString(), eq(storedId), anyLong())).thenReturn(sharedBlobId);
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenThrow(new IllegalStateException("write failed"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () ->
+                storageUploadServiceImpl.saveFile("testUser", file, FileVisibility.PUBLIC, List.of(), null, "localhost"));
+
+        verify(blobReferenceService).release(argThat(released -> sharedBlobId.equals(released.getStorageId()) &&
+                released.getContentHash() != null));
+    }
+
+    @Test
+    void saveFile_shouldReferenceKnownDigestWithoutStoring() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId sharedBlobId = new ObjectId();
+        byte[] content = "dummyString".getBytes();
+        String fileDigest = FileUtils.generateFileRollingHash(new ByteArrayInputStream(content),
+                new MessageDigestHasher("SHA-256"));
+
+        when(blobReferenceService.isContentAddressed()).thenReturn(true);
+        when(blobReferenceService.acquireExisting(fileDigest)).thenReturn(sharedBlobId);
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        storageUploadServiceImpl.saveFile("testUser", file, FileVisibility.PUBLIC, List.of(), fileDigest.toUpperCase(),
+                "localhost");
+
+        // Assert
+        ArgumentCaptor<FileMetadata> captor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(captor.capture());
+        assertEquals(sharedBlobId, captor.getValue().getStorageId());
+        assertEquals(fileDigest, captor.getValue().getContentHash());
+        verify(blobStore, never()).store(any(), any(), any(), anyLong());
+        verify(blobReferenceService, never()).acquire(any(), any(), anyLong());
+    }
+
+    @Test
+    void saveFile_shouldReleaseKnownDigestNotMatchingTheContent() throws IOException {
+        // Arrange
+        ObjectId sharedBlobId = new ObjectId();
+        String fileDigest = FileUtils.generateFileRollingHash(new ByteArrayInputStream("otherString".getBytes()),
+                new MessageDigestHasher("SHA-256"));
+
+        when(blobReferenceService.isContentAddressed()).thenReturn(true);
+        when(blobReferenceService.acquireExisting(fileDigest)).thenReturn(sharedBlobId);
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream("dummyString".getBytes()));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageUploadServiceImpl.saveFile("testUser", file, FileVisibility.PUBLIC, List.of(), fileDigest,
+                        "localhost"));
+
+        verify(blobReferenceService).release(argThat(released -> sharedBlobId.equals(released.getStorageId()) &&
+                fileDigest.equals(released.getContentHash())));
+        verify(blobStore, never()).delete(any());
+        verify(fileMetaDataRepository, never()).save(any());
+    }
+
+    @Test
+    void saveFile_shouldShareBlobsBySha256WhenHashingWithXxh64() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId storedId = new ObjectId();
+        byte[] content = "dummyString".getBytes();
+
+        doReturn(HashAlgorithm.XXH64).when(contentHasherFactory).getAlgorithm();
+        doReturn(HashAlgorithm.XXH64.newHasher(Runnable::run)).when(contentHasherFactory).newHasher();
+        when(blobReferenceService.isContentAddressed()).thenReturn(true);
+        when(file.getOriginalFilename()).thenReturn("testFile.txt");
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return storedId;
+        });
+        when(blobReferenceService.acquire(anyString(), eq(storedId), anyLong())).thenReturn(storedId);
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        storageUploadServiceImpl.saveFile("testUser", file, FileVisibility.PUBLIC, List.of(), null, "localhost");
+
+        // Assert
+        String sha256 = FileUtils.generateFileRollingHash(new ByteArrayInputStream(content),
+                new MessageDigestHasher("SHA-256"));
+        String xxh64 = FileUtils.generateFileRollingHash(new ByteArrayInputStream(content),
+                HashAlgorithm.XXH64.newHasher(Runnable::run));
+        verify(blobReferenceService).acquire(sha256, storedId, content.length);
+        verify(fileMetaDataRepository).existsByUserAndFileRollingHashAndHashAlgorithmIn("testUser", xxh64,
+                List.of(HashAlgorithm.XXH64));
+        ArgumentCaptor<FileMetadata> captor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(captor.capture());
+        assertEquals(sha256, captor.getValue().getContentHash());
+        assertEquals(xxh64, captor.getValue().getFileRollingHash());
+        assertEquals(HashAlgorithm.XXH64, captor.getValue().getHashAlgorithm());
+    }
+
+    @Test
+    void saveFile_fromStream_shouldDetectContentTypeAndStore() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId objectId = new ObjectId();
+        byte[] content = "dummyString".getBytes();
+
+        when(blobStore.store(any(), eq("stream.txt"), eq("text/plain"), eq((long) content.length))).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return objectId;
+        });
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        FileMetadataDTO result = storageUploadServiceImpl.saveFile("testUser",
+                "stream.txt",
+                null,
+                new ByteArrayInputStream(content),
+                content.length,
+                FileVisibility.PUBLIC,
+                List.of("tag1"),
+                null,
+                "localhost");
+
+        // Assert
+        assertEquals("stream.txt", result.getFileName());
+        ArgumentCaptor<FileMetadata> captor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(captor.capture());
+        assertEquals(content.length, captor.getValue().getFileSize());
+    }
+
+    @Test
+    void saveComposedFile_shouldHashPartsAndComposeWithoutStoring() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId composedBlobId = new ObjectId();
+        List<ObjectId> partIds = List.of(new ObjectId(), new ObjectId());
+        byte[] content = "Hello World".getBytes();
+
+        when(blobStore.compose(partIds, "hello.txt", "text/plain")).thenReturn(composedBlobId);
+        when(fileMetaDataRepository.save(any(FileMetadata.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        storageUploadServiceImpl.saveComposedFile("testUser",
+                "hello.txt",
+                "text/plain",
+                partIds,
+                new ByteArrayInputStream(content),
+                FileVisibility.PUBLIC,
+                List.of(),
+                null,
+                "localhost");
+
+        // Assert
+        ArgumentCaptor<FileMetadata> captor = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetaDataRepository).save(captor.capture());
+        assertEquals(composedBlobId, captor.getValue().getFileId());
+        assertEquals(content.length, captor.getValue().getFileSize());
+        assertEquals(rollingHash("Hello World"), captor.getValue().getFileRollingHash());
+        verify(blobStore, never()).store(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void saveFile_fromStream_shouldRejectDuplicateBeforeReading() throws IOException {
+        // Arrange
+        InputStream inputStream = mock(InputStream.class);
+        when(fileMetaDataRepository.existsByUserAndFilename("testUser", "stream.txt")).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> storageUploadServiceImpl.saveFile("testUser",
+                "stream.txt",
+                null,
+                inputStream,
+                -1,
+                FileVisibility.PUBLIC,
+                List.of(),
+                null,
+                "localhost"));
+
+        verify(inputStream, never()).read(any(byte[].class), anyInt(), anyInt());
+        verify(blobStore, never()).store(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void saveFiles_shouldCheckDuplicatesInBulkAndInsertOnce() throws IOException {
+        // Arrange
+        String user = "testUser";
+        MultipartFile first = mockFile("first.txt", "first content");
+        MultipartFile sameName = mockFile("first.txt", "other content");
+        MultipartFile existingName = mockFile("existing.txt", "existing content");
+        MultipartFile sameContent = mockFile("copy.txt", "first content");
+        MultipartFile knownContent = mockFile("known.txt", "known content");
+        ObjectId[] blobIds = {new ObjectId(), new ObjectId(), new ObjectId()};
+
+        when(fileMetaDataRepository.findByUserAndFilenameIn(eq(user), any()))
+                .thenReturn(List.of(identity("existing.txt", "hash")));
+        when(fileMetaDataRepository.findByUserAndFileRollingHashInAndHashAlgorithmIn(eq(user), any(),
+                eq(List.of(HashAlgorithm.SHA_256))))
+                .thenReturn(List.of(identity("known.txt", rollingHash("known content"))));
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return switch (invocation.getArgument(1, String.class)) {
+                case "first.txt" -> blobIds[0];
+                case "copy.txt" -> blobIds[1];
+                default -> blobIds[2];
+            };
+        });
+        when(fileMetaDataRepository.insert(anyCollection()))
+                .thenAnswer(invocation -> new ArrayList<>(invocation.getArgument(0, Collection.class)));
+
+        // Act
+        List<BatchUploadResultDTO> results = storageUploadServiceImpl.saveFiles(user,
+                List.of(first, sameName, existingName, sameContent, knownContent),
+                FileVisibility.PUBLIC,
+                List.of("Tag"),
+                "localhost");
+
+        // Assert
+        assertEquals(List.of(true, false, false, false, false),
+                results.stream().map(BatchUploadResultDTO::isSuccess).toList());
+        assertEquals("first.txt", results.get(0).getFile().getFileName());
+        assertEquals("File already exists", results.get(1).getError());
+        verify(fileMetaDataRepository, times(1)).findByUserAndFilenameIn(eq(user), any());
+        verify(fileMetaDataRepository, times(1)).findByUserAndFileRollingHashInAndHashAlgorithmIn(eq(user), any(), any());
+        verify(fileMetaDataRepository, times(1)).insert(anyCollection());
+        verify(fileMetaDataRepository, never()).save(any());
+        verify(blobStore, times(3)).store(any(), any(), any(), anyLong());
+        verify(blobStore).delete(blobIds[1]);
+        verify(blobStore).delete(blobIds[2]);
+        verify(blobStore, never()).delete(blobIds[0]);
+    }
+
+    @Test
+    void saveFiles_shouldReportFailedFileAndStoreTheOthers() throws IOException {
+        // Arrange
+        MultipartFile broken = mockFile("broken.txt", "");
+        when(broken.getInputStream()).thenThrow(new IOException("Stream closed"));
+        MultipartFile valid = mockFile("valid.txt", "valid content");
+
+        when(blobStore.store(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return new ObjectId();
+        });
+        when(fileMetaDataRepository.insert(anyCollection()))
+                .thenAnswer(invocation -> new ArrayList<>(invocation.getArgument(0, Collection.class)));
+
+        // Act
+        List<BatchUploadResultDTO> results = storageUploadServiceImpl.saveFiles("testUser",
+                List.of(broken, valid),
+                FileVisibility.PRIVATE,
+                List.of(),
+                "localhost");
+
+        // Assert
+        assertFalse(results.get(0).isSuccess());
+        assertEquals("Stream closed", results.get(0).getError());
+        assertTrue(results.get(1).isSuccess());
+        verify(fileMetaDataRepository, times(1)).insert(argThat((Collection<FileMetadata> fileMetadata) ->
+                fileMetadata.size() == 1));
+    }
+
+    private MultipartFile mockFile(String filename, String content) throws IOException {
+        MultipartFile multipartFile = mock(MultipartFile.class);
+        when(multipartFile.getOriginalFilename()).thenReturn(filename);
+        when(multipartFile.getContentType()).thenReturn("text/plain");
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(content.getBytes()));
+        return multipartFile;
+    }
+
+    private FileIdentityProjection identity(String filename, String fileRollingHash) {
+        return new SpelAwareProxyProjectionFactory().createProjection(FileIdentityProjection.class,
+                FileMetadata.builder().filename(filename).fileRollingHash(fileRollingHash).build());
+    }
+
+    private String rollingHash(String content) throws IOException {
+        return FileUtils.generateFileRollingHash(new ByteArrayInputStream(content.getBytes()),
+                new MessageDigestHasher("SHA-256"));
+    }
+}
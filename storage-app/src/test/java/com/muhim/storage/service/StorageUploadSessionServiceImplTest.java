@@ -0,0 +1,220 @@
+package com.muhim.storage.service;
+
+import com.muhim.storage.clients.BlobStore;
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.dto.UploadSessionDTO;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.hash.MessageDigestHasher;
+import com.muhim.storage.model.UploadSession;
+import com.muhim.storage.model.UploadSession.UploadChunk;
+import com.muhim.storage.repository.UploadSessionRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageUploadSessionServiceImplTest {
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private StorageUploadService storageUploadService;
+
+    @Mock
+    private BlobGarbageCollector blobGarbageCollector;
+
+    @Spy
+    private ContentHasherFactory contentHasherFactory = new ContentHasherFactory("sha-256", Runnable::run);
+
+    @InjectMocks
+    private StorageUploadSessionServiceImpl storageUploadSessionService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void createSession_shouldValidateAndSaveSession() {
+        // Arrange
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        UploadSessionDTO result = storageUploadSessionService.createSession("testUser",
+                "video.mp4",
+                null,
+                FileVisibility.PRIVATE,
+                List.of("tag1"),
+                3);
+
+        // Assert
+        verify(storageUploadService, times(1)).validateUpload("testUser", "video.mp4", List.of("tag1"), null);
+        assertEquals(3, result.getTotalChunks());
+        assertEquals(List.of(), result.getReceivedChunks());
+    }
+
+    @Test
+    void putChunk_shouldStoreChunkAndTombstoneReplacedChunk() throws NoSuchAlgorithmException {
+        // Arrange
+        ObjectId replacedBlobId = new ObjectId();
+        ObjectId blobId = new ObjectId();
+        Map<String, UploadChunk> chunks = new HashMap<>();
+        chunks.put("1", UploadChunk.builder().blobId(replacedBlobId).size(3).build());
+        UploadSession uploadSession = UploadSession.builder().id("session").filename("video.mp4").chunks(chunks).build();
+
+        when(uploadSessionRepository.findById("session")).thenReturn(Optional.of(uploadSession));
+        when(blobStore.store(any(), anyString(), any(), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).readAllBytes();
+            return blobId;
+        });
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(UploadSession.class))).thenReturn(uploadSession);
+
+        // Act
+        UploadSessionDTO result = storageUploadSessionService.putChunk("session", 1,
+                new ByteArrayInputStream("chunk".getBytes()));
+
+        // Assert
+        verify(blobGarbageCollector, times(1)).markForDeletion(List.of(replacedBlobId));
+        verify(blobStore, never()).delete(any());
+        assertEquals(List.of(1), result.getReceivedChunks());
+        assertEquals(5, result.getReceivedBytes());
+    }
+
+    @Test
+    void commitSession_shouldComposeVerifiedChunksInOrder() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId firstBlobId = new ObjectId();
+        ObjectId secondBlobId = new ObjectId();
+        Map<String, UploadChunk> chunks = new HashMap<>();
+        chunks.put("1", chunk(secondBlobId, "World"));
+        chunks.put("0", chunk(firstBlobId, "Hello "));
+        UploadSession uploadSession = UploadSession.builder()
+                .id("session")
+                .user("testUser")
+                .filename("hello.txt")
+                .visibility(FileVisibility.PUBLIC)
+                .tags(List.of())
+                .chunks(chunks)
+                .build();
+        FileMetadataDTO fileMetadataDTO = FileMetadataDTO.builder().fileName("hello.txt").build();
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(UploadSession.class))).thenReturn(uploadSession);
+        when(blobStore.openDownloadStream(firstBlobId)).thenReturn(new ByteArrayInputStream("Hello ".getBytes()));
+        when(blobStore.openDownloadStream(secondBlobId)).thenReturn(new ByteArrayInputStream("World".getBytes()));
+        when(storageUploadService.saveComposedFile(eq("testUser"), eq("hello.txt"), any(),
+                eq(List.of(firstBlobId, secondBlobId)), any(InputStream.class), eq(FileVisibility.PUBLIC), eq(List.of()),
+                any(), eq("localhost")))
+                .thenAnswer(invocation -> {
+                    assertEquals("Hello World", new String(invocation.getArgument(4, InputStream.class).readAllBytes()));
+                    return fileMetadataDTO;
+                });
+
+        // Act
+        FileMetadataDTO result = storageUploadSessionService.commitSession("session", null, "localhost");
+
+        // Assert
+        assertSame(fileMetadataDTO, result);
+        verify(blobGarbageCollector, times(1)).markForDeletion(List.of(firstBlobId, secondBlobId));
+        verify(uploadSessionRepository, times(1)).deleteById("session");
+    }
+
+    @Test
+    void commitSession_shouldRejectMissingChunk() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        Map<String, UploadChunk> chunks = new HashMap<>();
+        chunks.put("0", UploadChunk.builder().blobId(new ObjectId()).size(6).build());
+        UploadSession uploadSession = UploadSession.builder().id("session").totalChunks(2).chunks(chunks).build();
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(UploadSession.class))).thenReturn(uploadSession);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageUploadSessionService.commitSession("session", null, "localhost"));
+
+        verify(storageUploadService, never()).saveComposedFile(any(), any(), any(), any(), any(InputStream.class),
+                any(), any(), any(), any());
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(UploadSession.class));
+        verify(uploadSessionRepository, never()).deleteById(any());
+    }
+
+    @Test
+    void commitSession_shouldRejectCorruptedChunkAndKeepSession() throws IOException, NoSuchAlgorithmException {
+        // Arrange
+        ObjectId blobId = new ObjectId();
+        Map<String, UploadChunk> chunks = new HashMap<>();
+        chunks.put("0", chunk(blobId, "Hello"));
+        UploadSession uploadSession = UploadSession.builder()
+                .id("session")
+                .user("testUser")
+                .filename("hello.txt")
+                .chunks(chunks)
+                .build();
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(UploadSession.class))).thenReturn(uploadSession);
+        when(blobStore.openDownloadStream(blobId)).thenReturn(new ByteArrayInputStream("Jello".getBytes()));
+        when(storageUploadService.saveComposedFile(any(), any(), any(), any(), any(InputStream.class), any(), any(),
+                any(), any()))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(4, InputStream.class).readAllBytes();
+                    return null;
+                });
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                storageUploadSessionService.commitSession("session", null, "localhost"));
+
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(UploadSession.class));
+        verify(uploadSessionRepository, never()).deleteById(any());
+        verify(blobGarbageCollector, never()).markForDeletion(any());
+    }
+
+    private UploadChunk chunk(ObjectId blobId, String content) {
+        MessageDigestHasher hasher = new MessageDigestHasher("SHA-256");
+        hasher.update(content.getBytes(), 0, content.length());
+        return UploadChunk.builder()
+                .blobId(blobId)
+                .size(content.length())
+                .chunkHash(hasher.getHexDigest())
+                .build();
+    }
+}
@@ -0,0 +1,61 @@
+package com.muhim.storage.utils;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+class CursorUtilsTest {
+
+    private static final List<String> SORT_KEYS = List.of("filename", "id");
+
+    @Test
+    void encodeAndDecode_shouldKeepTypesOfSortKeys() {
+        Map<String, Object> keys = Map.of(
+                "uploadDate", new Date(1719630785781L),
+                "fileSize", 4294967296L,
+                "fileId", new ObjectId("507f1f77bcf86cd799439011"),
+                "id", "667f7bc1ca763c166bea7c64");
+
+        String cursor = CursorUtils.encode(ScrollPosition.forward(keys));
+        KeysetScrollPosition position = CursorUtils.decode(cursor, keys.keySet());
+
+        Assertions.assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+        Assertions.assertEquals(keys, position.getKeys());
+    }
+
+    @Test
+    void decode_shouldRejectInvalidCursor() {
+        Assertions.assertTrue(CursorUtils.decode(null, SORT_KEYS).isInitial());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CursorUtils.decode("not a cursor", SORT_KEYS));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CursorUtils.decode("e30", SORT_KEYS));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CursorUtils.decode(encode("[1]"), SORT_KEYS));
+    }
+
+    @Test
+    void decode_shouldRejectCursorOfAnotherSort() {
+        String cursor = CursorUtils.encode(ScrollPosition.forward(Map.of("uploadDate", new Date(), "id", "a")));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CursorUtils.decode(cursor, SORT_KEYS));
+        Assertions.assertThrows(IllegalArgumentException.class, () ->
+                CursorUtils.decode(encode("{\"filename\": \"a\"}"), SORT_KEYS));
+    }
+
+    @Test
+    void decode_shouldRejectOperatorValues() {
+        String cursor = encode("{\"filename\": {\"$regex\": \".*\"}, \"id\": \"a\"}");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CursorUtils.decode(cursor, SORT_KEYS));
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
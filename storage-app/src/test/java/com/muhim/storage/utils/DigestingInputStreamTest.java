@@ -0,0 +1,28 @@
+package com.muhim.storage.utils;
+
+import com.muhim.storage.hash.XxHash64Hasher;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+
+class DigestingInputStreamTest {
+
+    @Test
+    void digestAndCountMatchConsumedBytes() throws IOException {
+        byte[] content = "dummyString".getBytes();
+        DigestingInputStream inputStream =
+                new DigestingInputStream(new ByteArrayInputStream(content), new XxHash64Hasher());
+
+        Assertions.assertEquals(content[0], inputStream.read());
+        Assertions.assertEquals(2, inputStream.skip(2));
+        inputStream.readAllBytes();
+
+        Assertions.assertEquals(content.length, inputStream.getByteCount());
+        Assertions.assertEquals(FileUtils.generateFileRollingHash(new ByteArrayInputStream(content),
+                new XxHash64Hasher()), inputStream.getHexDigest());
+        Assertions.assertEquals(inputStream.getHexDigest(), inputStream.getHexDigest());
+    }
+}
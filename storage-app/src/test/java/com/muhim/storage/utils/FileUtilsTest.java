@@ -1,12 +1,12 @@
 package com.muhim.storage.utils;
 
+import com.muhim.storage.hash.MessageDigestHasher;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 
 
 class FileUtilsTest {
@@ -23,11 +23,19 @@ class FileUtilsTest {
     }
 
     @Test
-    void generateFileRollingHash() throws IOException, NoSuchAlgorithmException {
+    void generateFileRollingHash() throws IOException {
         String dummyString = "dummyString";
-        String rollingHash = FileUtils.generateFileRollingHash(new ByteArrayInputStream(dummyString.getBytes()));
+        String rollingHash = FileUtils.generateFileRollingHash(new ByteArrayInputStream(dummyString.getBytes()),
+                new MessageDigestHasher("SHA-256"));
 
         Assertions.assertNotNull(rollingHash);
         Assertions.assertFalse(rollingHash.isEmpty());
+        Assertions.assertEquals(64, rollingHash.length());
+    }
+
+    @Test
+    void toHexString() {
+        Assertions.assertEquals("00017f80ff", FileUtils.toHexString(new byte[]{0, 1, 127, -128, -1}));
+        Assertions.assertEquals("", FileUtils.toHexString(new byte[0]));
     }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.muhim.storage.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+class ReadAheadInputStreamTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void readSkipAndTransferReturnTheSourceContent() throws IOException {
+        byte[] content = new byte[10 * 1024 + 7];
+        new Random(42).nextBytes(content);
+        BufferPool bufferPool = new BufferPool(1024, 2);
+
+        try (InputStream inputStream = ReadAheadInputStream.readAhead(new ByteArrayInputStream(content), bufferPool,
+                executor)) {
+            Assertions.assertInstanceOf(ReadAheadInputStream.class, inputStream);
+            Assertions.assertEquals(content[0] & 0xff, inputStream.read());
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 1, 1500), inputStream.readNBytes(1499));
+            Assertions.assertEquals(3000, inputStream.skip(3000));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            Assertions.assertEquals(content.length - 4500, inputStream.transferTo(outputStream));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 4500, content.length), outputStream.toByteArray());
+            Assertions.assertEquals(-1, inputStream.read());
+        }
+    }
+
+    @Test
+    void closeReturnsTheBuffersAndClosesTheSource() throws IOException {
+        BufferPool bufferPool = new BufferPool(16, 2);
+        AtomicBoolean sourceClosed = new AtomicBoolean();
+        InputStream source = new ByteArrayInputStream(new byte[100]) {
+            @Override
+            public void close() {
+                sourceClosed.set(true);
+            }
+        };
+
+        // the next buffer is filled right away, so both buffers are back in the pool when close returns
+        InputStream inputStream = ReadAheadInputStream.readAhead(source, bufferPool, Runnable::run);
+        Assertions.assertSame(source, ReadAheadInputStream.readAhead(source, bufferPool, Runnable::run));
+        inputStream.read();
+        inputStream.close();
+
+        Assertions.assertThrows(IOException.class, inputStream::read);
+        Assertions.assertNotNull(bufferPool.acquire());
+        Assertions.assertNotNull(bufferPool.acquire());
+        Assertions.assertTrue(sourceClosed.get());
+    }
+}
@@ -0,0 +1,91 @@
+package com.muhim.storage.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON results, e.g. of the previous and the upcoming release, and exits with 1
+ * if any benchmark got slower than the threshold:
+ * <pre>
+ * java -cp target/benchmarks.jar com.muhim.storage.benchmark.BenchmarkComparison baseline.json current.json 10
+ * </pre>
+ * Benchmarks are matched by name and parameters, a benchmark missing from either result is reported but not failed
+ *
+ * @author muhim
+ */
+public class BenchmarkComparison {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [threshold percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, Score> baseline = readScores(new File(args[0]));
+        Map<String, Score> current = readScores(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> benchmark : new TreeMap<>(current).entrySet()) {
+            Score baselineScore = baseline.get(benchmark.getKey());
+            if (baselineScore == null) {
+                System.out.printf("NEW         %s %.3f %s%n", benchmark.getKey(), benchmark.getValue().score(),
+                        benchmark.getValue().unit());
+                continue;
+            }
+            double slowdown = benchmark.getValue().slowdownPercent(baselineScore);
+            boolean regressed = slowdown > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-11s %s %.3f -> %.3f %s (%+.1f%% slower)%n", regressed ? "REGRESSION" : "OK",
+                    benchmark.getKey(), baselineScore.score(), benchmark.getValue().score(),
+                    benchmark.getValue().unit(), slowdown);
+        }
+        baseline.keySet().stream()
+                .filter(benchmark -> !current.containsKey(benchmark))
+                .forEach(benchmark -> System.out.println("MISSING     " + benchmark));
+
+        System.out.printf("%d regression(s) above %.1f%%%n", regressions, threshold);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    private static Map<String, Score> readScores(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            JsonNode params = result.get("params");
+            if (params != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            JsonNode metric = result.get("primaryMetric");
+            scores.put(key.toString(), new Score(metric.get("score").asDouble(),
+                    metric.get("scoreUnit").asText(),
+                    "thrpt".equals(result.get("mode").asText())));
+        }
+        return scores;
+    }
+
+    private record Score(double score, String unit, boolean higherIsBetter) {
+
+        /**
+         * @return how much slower this score is than the baseline in percent, negative if it is faster
+         */
+        double slowdownPercent(Score baseline) {
+            double change = (score - baseline.score()) / baseline.score() * 100;
+            return higherIsBetter ? -change : change;
+        }
+    }
+}
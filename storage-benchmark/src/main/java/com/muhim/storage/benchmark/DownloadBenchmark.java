@@ -0,0 +1,88 @@
+package com.muhim.storage.benchmark;
+
+import com.muhim.storage.enums.FileVisibility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download of a stored file the way the response is written: metadata lookup through
+ * {@link com.muhim.storage.service.StorageDownloadServiceImpl#getFileDownload} and the content
+ * transferred from GridFS to a discarding output stream, with and without read-ahead
+ *
+ * @author muhim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DownloadBenchmark {
+
+    @Param({"1048576", "67108864"})
+    private int fileSize;
+
+    /**
+     * `storage.blob-store.gridfs.read-ahead-size`, 0 disables read-ahead
+     */
+    @Param({"0B", "1MB"})
+    private String readAheadSize;
+
+    private StorageFixture storageFixture;
+    private String fileId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        storageFixture = new StorageFixture(DataSize.parse(readAheadSize));
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        // private files are never served from the blob content cache
+        storageFixture.storageUploadService.saveFile("user",
+                "file.bin",
+                "application/octet-stream",
+                new ByteArrayInputStream(content),
+                content.length,
+                FileVisibility.PRIVATE,
+                List.of(),
+                null,
+                "");
+        fileId = storageFixture.fileMetaDataRepository.findByUserAndFilename("user", "file.bin")
+                .getFileId()
+                .toHexString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageFixture.close();
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        try (InputStream inputStream = storageFixture.storageDownloadService.getFileDownload(fileId)
+                .getResource()
+                .getInputStream()) {
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.muhim.storage.benchmark;
+
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.FileFieldSet;
+import com.muhim.storage.enums.FileVisibility;
+import com.muhim.storage.model.FileMetadata;
+import com.muhim.storage.utils.FileUtils;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing of public files through {@link com.muhim.storage.service.StorageAccessServiceImpl#getPublicFiles},
+ * the query with its projection, the count and the mapping to DTOs, per page size and field set
+ *
+ * @author muhim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+    private static final int FILE_COUNT = 10_000;
+
+    @Param({"20", "1000"})
+    private int pageSize;
+
+    @Param({"LINK", "DETAILS"})
+    private FileFieldSet fields;
+
+    private StorageFixture storageFixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storageFixture = new StorageFixture(DataSize.ofMegabytes(1));
+        List<FileMetadata> files = new ArrayList<>(FILE_COUNT);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            List<String> tags = List.of("tag" + i % 10, "Benchmark");
+            files.add(FileMetadata.builder()
+                    .user("user" + i % 100)
+                    .filename(String.format("file%05d.txt", i))
+                    .fileId(new ObjectId())
+                    .visibility(FileVisibility.PUBLIC)
+                    .tags(tags)
+                    .normalizedTags(FileUtils.normalizeTags(tags))
+                    .fileSize(1024L * i)
+                    .contentType("text/plain")
+                    .uploadDate(new Date())
+                    .fileRollingHash(Integer.toHexString(i))
+                    .build());
+        }
+        storageFixture.fileMetaDataRepository.insert(files);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageFixture.close();
+    }
+
+    @Benchmark
+    public Page<FileMetadataDTO> firstPage() {
+        return storageFixture.storageAccessService.getPublicFiles(0, pageSize, "filename", null, fields,
+                "http://localhost:8080");
+    }
+
+    /**
+     * Offset pagination skips over all previous pages
+     */
+    @Benchmark
+    public Page<FileMetadataDTO> lastPage() {
+        return storageFixture.storageAccessService.getPublicFiles(FILE_COUNT / pageSize - 1, pageSize, "filename",
+                null, fields, "http://localhost:8080");
+    }
+}
@@ -0,0 +1,115 @@
+package com.muhim.storage.benchmark;
+
+import com.muhim.storage.enums.HashAlgorithm;
+import com.muhim.storage.utils.DigestingInputStream;
+import com.muhim.storage.utils.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing of file content per `storage.hashing.algorithm`: {@link FileUtils#generateFileRollingHash}
+ * as used by the hash migration, and the {@link DigestingInputStream} of uploads read with the buffer size
+ * of the blob store. `sha-256-tree` hashes its leaves on one thread per core.
+ * The score is the time to hash 16MB
+ *
+ * @author muhim
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RollingHashBenchmark {
+
+    private static final int CONTENT_SIZE = 16 * 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class Content {
+
+        byte[] content;
+
+        byte[] digest;
+
+        @Setup
+        public void setUp() {
+            content = new byte[CONTENT_SIZE];
+            new Random(42).nextBytes(content);
+            digest = new byte[32];
+            new Random(42).nextBytes(digest);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Hashing {
+
+        @Param({"md5", "sha-256", "sha-256-tree", "xxh64"})
+        String algorithm;
+
+        HashAlgorithm hashAlgorithm;
+
+        ExecutorService executor;
+
+        @Setup
+        public void setUp() {
+            hashAlgorithm = HashAlgorithm.fromValue(algorithm);
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+
+        @TearDown
+        public void tearDown() {
+            executor.shutdown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Buffer {
+
+        @Param({"8192", "65536", "261120"})
+        int bufferSize;
+
+        byte[] buffer;
+
+        @Setup
+        public void setUp() {
+            buffer = new byte[bufferSize];
+        }
+    }
+
+    @Benchmark
+    public String generateFileRollingHash(Content content, Hashing hashing) throws IOException {
+        return FileUtils.generateFileRollingHash(new ByteArrayInputStream(content.content),
+                hashing.hashAlgorithm.newHasher(hashing.executor));
+    }
+
+    @Benchmark
+    public String digestingInputStream(Content content, Hashing hashing, Buffer buffer) throws IOException {
+        DigestingInputStream inputStream = new DigestingInputStream(new ByteArrayInputStream(content.content),
+                hashing.hashAlgorithm.newHasher(hashing.executor));
+        while (inputStream.read(buffer.buffer, 0, buffer.buffer.length) != -1) {
+            // only the digest is of interest
+        }
+        return inputStream.getHexDigest();
+    }
+
+    @Benchmark
+    public String toHexString(Content content) {
+        return FileUtils.toHexString(content.digest);
+    }
+}
@@ -0,0 +1,104 @@
+package com.muhim.storage.benchmark;
+
+import com.muhim.storage.cache.BlobContentCache;
+import com.muhim.storage.cache.FileMetadataCache;
+import com.muhim.storage.clients.GridFsClient;
+import com.muhim.storage.hash.ContentHasherFactory;
+import com.muhim.storage.repository.FileMetaDataRepository;
+import com.muhim.storage.service.BlobReferenceServiceImpl;
+import com.muhim.storage.service.StorageAccessServiceImpl;
+import com.muhim.storage.service.StorageDownloadServiceImpl;
+import com.muhim.storage.service.StorageUploadServiceImpl;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The services under benchmark wired like the application does, against an in-process MongoDB stand-in.
+ * The stand-in has no query planner and keeps everything in memory, so absolute numbers are not those
+ * of a real deployment, the benchmarks compare releases and settings with each other
+ *
+ * @author muhim
+ */
+class StorageFixture implements AutoCloseable {
+
+    private static final String DATABASE = "storagedb";
+
+    private final MongoServer mongoServer;
+    private final MongoClient mongoClient;
+    private final ExecutorService executor;
+
+    final MongoTemplate mongoTemplate;
+    final FileMetaDataRepository fileMetaDataRepository;
+    final GridFsClient gridFsClient;
+    final FileMetadataCache fileMetadataCache;
+    final StorageUploadServiceImpl storageUploadService;
+    final StorageDownloadServiceImpl storageDownloadService;
+    final StorageAccessServiceImpl storageAccessService;
+
+    /**
+     * @param readAheadSize read-ahead of downloads, see `storage.blob-store.gridfs.read-ahead-size`
+     */
+    StorageFixture(DataSize readAheadSize) {
+        mongoServer = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = mongoServer.bind();
+        mongoClient = MongoClients.create("mongodb://" + address.getHostString() + ":" + address.getPort());
+        executor = Executors.newFixedThreadPool(4);
+
+        SimpleMongoClientDatabaseFactory databaseFactory = new SimpleMongoClientDatabaseFactory(mongoClient, DATABASE);
+        mongoTemplate = new MongoTemplate(databaseFactory);
+        fileMetaDataRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(FileMetaDataRepository.class);
+        gridFsClient = new GridFsClient(databaseFactory,
+                new GridFsTemplate(databaseFactory, mongoTemplate.getConverter()),
+                2,
+                "64MB=1MB,1GB=4MB",
+                readAheadSize,
+                DataSize.ofMegabytes(64),
+                executor);
+        fileMetadataCache = new FileMetadataCache(10_000, Duration.ofMinutes(5));
+        // timers are recorded like in the application, so their overhead is part of the results
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BlobContentCache blobContentCache = new BlobContentCache(DataSize.ofKilobytes(256), DataSize.ofMegabytes(64));
+
+        storageUploadService = new StorageUploadServiceImpl(gridFsClient,
+                fileMetaDataRepository,
+                new BlobReferenceServiceImpl(mongoTemplate, null, false),
+                fileMetadataCache,
+                new ContentHasherFactory("sha-256", executor),
+                executor,
+                meterRegistry,
+                ObservationRegistry.NOOP);
+        storageDownloadService = new StorageDownloadServiceImpl(gridFsClient,
+                fileMetaDataRepository,
+                fileMetadataCache,
+                blobContentCache);
+        storageAccessService = new StorageAccessServiceImpl(fileMetaDataRepository, 5, 1000, meterRegistry);
+    }
+
+    /**
+     * Removes all files and their content
+     */
+    void clear() {
+        mongoClient.getDatabase(DATABASE).drop();
+    }
+
+    @Override
+    public void close() {
+        mongoClient.close();
+        mongoServer.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,82 @@
+package com.muhim.storage.benchmark;
+
+import com.muhim.storage.dto.FileMetadataDTO;
+import com.muhim.storage.enums.FileVisibility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link com.muhim.storage.service.StorageUploadServiceImpl#saveFile} of a streamed upload:
+ * duplicate checks, content type detection, storing and hashing the content and saving the metadata.
+ * Every upload is made by another user, so none of them is rejected as a duplicate
+ *
+ * @author muhim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UploadBenchmark {
+
+    @Param({"65536", "4194304"})
+    private int fileSize;
+
+    private StorageFixture storageFixture;
+    private byte[] content;
+    private long uploadCount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storageFixture = new StorageFixture(DataSize.ofMegabytes(1));
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+    }
+
+    /**
+     * The stand-in keeps all content in memory
+     */
+    @TearDown(Level.Iteration)
+    public void clear() {
+        storageFixture.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageFixture.close();
+    }
+
+    @Benchmark
+    public FileMetadataDTO saveFile() throws IOException, NoSuchAlgorithmException {
+        uploadCount++;
+        return storageFixture.storageUploadService.saveFile("user" + uploadCount,
+                "file" + uploadCount + ".bin",
+                null,
+                new ByteArrayInputStream(content),
+                content.length,
+                FileVisibility.PRIVATE,
+                List.of("benchmark"),
+                null,
+                "http://localhost:8080");
+    }
+}
@@ -0,0 +1,98 @@
+package com.muhim.storage.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and error counts per operation, recorded concurrently by the load test clients
+ *
+ * @author muhim
+ */
+class LatencyReport {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> errors = new LinkedHashMap<>();
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+    /**
+     * @param operations names of the operations, in report order
+     */
+    LatencyReport(Iterable<String> operations) {
+        for (String operation : operations) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    void record(String operation, long latencyNanos, boolean success) {
+        if (success) {
+            recorders.get(operation).recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS));
+        } else {
+            errors.get(operation).incrementAndGet();
+        }
+    }
+
+    /**
+     * Discards everything recorded so far, e.g. at the end of the warm-up
+     */
+    void reset() {
+        recorders.values().forEach(Recorder::reset);
+        errors.values().forEach(error -> error.set(0));
+    }
+
+    /**
+     * Takes the latencies recorded since the last reset, called once at the end of the run
+     */
+    void complete() {
+        recorders.forEach((operation, recorder) -> histograms.put(operation, recorder.getIntervalHistogram()));
+    }
+
+    /**
+     * Summary table with throughput and latency percentiles in milliseconds
+     *
+     * @param seconds measured duration
+     */
+    void printSummary(PrintStream out, double seconds) {
+        out.printf("%-14s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max");
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        long totalErrors = 0;
+        for (Map.Entry<String, Histogram> operation : histograms.entrySet()) {
+            long operationErrors = errors.get(operation.getKey()).get();
+            printRow(out, operation.getKey(), operation.getValue(), operationErrors, seconds);
+            total.add(operation.getValue());
+            totalErrors += operationErrors;
+        }
+        printRow(out, "total", total, totalErrors, seconds);
+    }
+
+    /**
+     * Full percentile distribution per operation in the HdrHistogram `.hgrm` format, which can be plotted
+     */
+    void printDistributions(PrintStream out) {
+        for (Map.Entry<String, Histogram> operation : histograms.entrySet()) {
+            out.printf("%n# %s, latency in milliseconds%n", operation.getKey());
+            if (operation.getValue().getTotalCount() > 0) {
+                operation.getValue().outputPercentileDistribution(out, 1e6);
+            }
+        }
+    }
+
+    private static void printRow(PrintStream out, String operation, Histogram histogram, long errors, double seconds) {
+        out.printf("%-14s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", operation, histogram.getTotalCount(), errors,
+                (histogram.getTotalCount() + errors) / seconds,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6);
+    }
+}
@@ -0,0 +1,113 @@
+package com.muhim.storage.loadtest;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application started from its executable jar in a separate JVM, against an in-process MongoDB stand-in,
+ * so a load test needs neither a database nor a running instance.
+ * The stand-in keeps all content in memory, in the heap of the load test
+ *
+ * @author muhim
+ */
+class LocalStorageStack implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final MongoServer mongoServer;
+    private final Process application;
+    private final URI baseUrl;
+
+    private LocalStorageStack(MongoServer mongoServer, Process application, URI baseUrl) {
+        this.mongoServer = mongoServer;
+        this.application = application;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * @param applicationJar executable jar of storage-app
+     * @param port           server port of the application
+     * @param extraArguments further application arguments, e.g. `--spring.profiles.active=virtual`
+     * @param log            the application output is written to
+     */
+    static LocalStorageStack start(Path applicationJar, int port, List<String> extraArguments, Path log)
+            throws IOException, InterruptedException {
+        if (!Files.isRegularFile(applicationJar)) {
+            throw new IllegalArgumentException(applicationJar + " does not exist, " +
+                    "build it with `mvn package` in storage-app");
+        }
+        MongoServer mongoServer = new MongoServer(new MemoryBackend());
+        InetSocketAddress mongoAddress = mongoServer.bind();
+
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-jar", applicationJar.toString(),
+                "--server.port=" + port,
+                "--spring.data.mongodb.uri=mongodb://" + mongoAddress.getHostString() + ":" + mongoAddress.getPort() +
+                        "/storagedb",
+                "--spring.servlet.multipart.max-file-size=-1",
+                "--spring.servlet.multipart.max-request-size=-1"));
+        command.addAll(extraArguments);
+        Files.createDirectories(log.toAbsolutePath().getParent());
+        Process application = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+
+        LocalStorageStack stack = new LocalStorageStack(mongoServer, application, URI.create("http://localhost:" + port));
+        try {
+            stack.awaitStartup(log.toFile());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            stack.close();
+            throw e;
+        }
+        return stack;
+    }
+
+    URI getBaseUrl() {
+        return baseUrl;
+    }
+
+    private void awaitStartup(File log) throws IOException, InterruptedException {
+        HttpClient httpClient = HttpClient.newHttpClient();
+        HttpRequest probe = HttpRequest.newBuilder(baseUrl.resolve("/api/storage/v1/files/public?size=1")).build();
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!application.isAlive()) {
+                throw new IllegalStateException("Application exited with " + application.exitValue() + ", see " + log);
+            }
+            try {
+                if (httpClient.send(probe, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Application did not start within " + STARTUP_TIMEOUT + ", see " + log);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        application.destroy();
+        if (!application.waitFor(30, TimeUnit.SECONDS)) {
+            application.destroyForcibly();
+        }
+        mongoServer.shutdownNow();
+    }
+}
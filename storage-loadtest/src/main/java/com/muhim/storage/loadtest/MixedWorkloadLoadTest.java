@@ -0,0 +1,399 @@
+package com.muhim.storage.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a mix of uploads of varying sizes, hot and cold downloads, deep-page listings and deletes
+ * against the REST API and reports requests per second and latency percentiles per operation.
+ * Without `--url` the application is started from its executable jar against an in-process MongoDB stand-in:
+ * <pre>
+ * mvn -q compile exec:java -Dexec.mainClass=com.muhim.storage.loadtest.MixedWorkloadLoadTest \
+ *     -Dexec.args="--mix upload=20,download-hot=35,download-cold=15,list-deep=20,delete=10 --clients 32"
+ * </pre>
+ * With `--rate` requests are started on a fixed schedule and latency is measured from the scheduled start,
+ * so a stalled server is not hidden by clients which wait for it. Without it every client sends
+ * its next request as soon as the previous one is answered
+ *
+ * @author muhim
+ */
+public class MixedWorkloadLoadTest {
+
+    private static final String API = "/api/storage/v1";
+    private static final String BOUNDARY = "loadtest-boundary";
+    private static final Pattern FILE_ID = Pattern.compile("/files/([0-9a-f]{24})/download");
+    private static final int HOT_FILE_COUNT = 10;
+    private static final int USER_COUNT = 16;
+
+    enum Operation {
+        UPLOAD("upload"),
+        DOWNLOAD_HOT("download-hot"),
+        DOWNLOAD_COLD("download-cold"),
+        LIST_DEEP("list-deep"),
+        DELETE("delete");
+
+        private final String optionName;
+
+        Operation(String optionName) {
+            this.optionName = optionName;
+        }
+
+        static Operation of(String optionName) {
+            return Arrays.stream(values())
+                    .filter(operation -> operation.optionName.equals(optionName))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + optionName));
+        }
+    }
+
+    private final URI baseUrl;
+    private final Map<Operation, Integer> mix;
+    private final int clients;
+    private final double rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int[] uploadSizes;
+    private final int seedFiles;
+    private final int pageSize;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final byte[] content;
+    private final AtomicLong fileCounter = new AtomicLong();
+    private final AtomicLong publicFileCount = new AtomicLong();
+    private final List<String> hotFileIds = new ArrayList<>();
+    private final List<String> coldFileIds = new ArrayList<>();
+    private final Queue<UploadedFile> deletableFiles = new ConcurrentLinkedQueue<>();
+
+    MixedWorkloadLoadTest(URI baseUrl, Map<Operation, Integer> mix, int clients, double rate, Duration warmup,
+                          Duration duration, int[] uploadSizes, int seedFiles, int pageSize) {
+        this.baseUrl = baseUrl;
+        this.mix = mix;
+        this.clients = clients;
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.uploadSizes = uploadSizes;
+        this.seedFiles = seedFiles;
+        this.pageSize = pageSize;
+        this.content = new byte[Arrays.stream(uploadSizes).max().orElse(0)];
+        new Random(42).nextBytes(content);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options.containsKey("help")) {
+            System.err.println("Usage: MixedWorkloadLoadTest [--url <base url of a running instance>] " +
+                    "[--app-jar ../storage-app/target/storage-0.0.1-SNAPSHOT-exec.jar] [--port 18080] " +
+                    "[--app-args \"--spring.profiles.active=virtual\"] " +
+                    "[--mix upload=20,download-hot=35,download-cold=15,list-deep=20,delete=10] [--clients 16] " +
+                    "[--rate <requests per second>] [--warmup PT10S] [--duration PT60S] " +
+                    "[--upload-sizes 4KB,64KB,1MB,8MB] [--seed-files 200] [--page-size 50] " +
+                    "[--report target/loadtest-report.txt]");
+            System.exit(2);
+        }
+        Path report = Path.of(options.getOrDefault("report", "target/loadtest-report.txt"));
+
+        LocalStorageStack stack = null;
+        URI baseUrl;
+        if (options.containsKey("url")) {
+            baseUrl = URI.create(options.get("url"));
+        } else {
+            String appArgs = options.getOrDefault("app-args", "").trim();
+            stack = LocalStorageStack.start(
+                    Path.of(options.getOrDefault("app-jar", "../storage-app/target/storage-0.0.1-SNAPSHOT-exec.jar")),
+                    Integer.parseInt(options.getOrDefault("port", "18080")),
+                    appArgs.isEmpty() ? List.of() : List.of(appArgs.split("\\s+")),
+                    report.resolveSibling("loadtest-app.log"));
+            baseUrl = stack.getBaseUrl();
+        }
+
+        try {
+            MixedWorkloadLoadTest loadTest = new MixedWorkloadLoadTest(baseUrl,
+                    parseMix(options.getOrDefault("mix", "upload=20,download-hot=35,download-cold=15,list-deep=20,delete=10")),
+                    Integer.parseInt(options.getOrDefault("clients", "16")),
+                    Double.parseDouble(options.getOrDefault("rate", "0")),
+                    Duration.parse(options.getOrDefault("warmup", "PT10S")),
+                    Duration.parse(options.getOrDefault("duration", "PT60S")),
+                    Arrays.stream(options.getOrDefault("upload-sizes", "4KB,64KB,1MB,8MB").split(","))
+                            .mapToInt(MixedWorkloadLoadTest::parseSize)
+                            .toArray(),
+                    Integer.parseInt(options.getOrDefault("seed-files", "200")),
+                    Integer.parseInt(options.getOrDefault("page-size", "50")));
+            LatencyReport latencyReport = loadTest.run();
+
+            double seconds = loadTest.duration.toMillis() / 1000.0;
+            latencyReport.printSummary(System.out, seconds);
+            Files.createDirectories(report.toAbsolutePath().getParent());
+            try (PrintStream out = new PrintStream(Files.newOutputStream(report), false, StandardCharsets.UTF_8)) {
+                out.printf("# %s, clients %d, rate %s, duration %s, mix %s%n", baseUrl, loadTest.clients,
+                        loadTest.rate > 0 ? loadTest.rate + "/s" : "closed loop", loadTest.duration, loadTest.mix);
+                latencyReport.printSummary(out, seconds);
+                latencyReport.printDistributions(out);
+            }
+            System.out.println("Report written to " + report.toAbsolutePath());
+        } finally {
+            if (stack != null) {
+                stack.close();
+            }
+        }
+    }
+
+    LatencyReport run() throws InterruptedException {
+        seed();
+        Operation[] schedule = schedule();
+        LatencyReport report = new LatencyReport(mix.keySet().stream().map(operation -> operation.optionName).toList());
+
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        AtomicBoolean running = new AtomicBoolean(true);
+        long start = System.nanoTime();
+        // each client sends its share of the rate, with the clients evenly staggered
+        long intervalNanos = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+        try {
+            for (int i = 0; i < clients; i++) {
+                long firstStart = start + intervalNanos * i / clients;
+                clientThreads.execute(() -> runClient(schedule, firstStart, intervalNanos, running, report));
+            }
+            Thread.sleep(warmup.toMillis());
+            report.reset();
+            Thread.sleep(duration.toMillis());
+            report.complete();
+            return report;
+        } finally {
+            running.set(false);
+            clientThreads.shutdown();
+            clientThreads.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Uploads the files downloaded by the hot and cold downloads, half of them public
+     */
+    private void seed() {
+        for (int i = 0; i < seedFiles; i++) {
+            UploadedFile file = upload(uploadSizes[i % uploadSizes.length], i % 2 == 0);
+            if (file == null) {
+                throw new IllegalStateException("Seeding failed, is the server up and are uploads accepted?");
+            }
+            (hotFileIds.size() < HOT_FILE_COUNT ? hotFileIds : coldFileIds).add(file.fileId());
+        }
+        if (coldFileIds.isEmpty()) {
+            coldFileIds.addAll(hotFileIds);
+        }
+    }
+
+    /**
+     * Operations weighted by the mix, one is picked at random per request
+     */
+    private Operation[] schedule() {
+        List<Operation> schedule = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                schedule.add(operation);
+            }
+        });
+        if (schedule.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operations");
+        }
+        return schedule.toArray(new Operation[0]);
+    }
+
+    private void runClient(Operation[] schedule, long firstStart, long intervalNanos, AtomicBoolean running,
+                           LatencyReport report) {
+        long scheduledStart = firstStart;
+        try {
+            while (running.get()) {
+                long startNanos = System.nanoTime();
+                if (intervalNanos > 0) {
+                    long delayNanos = scheduledStart - startNanos;
+                    if (delayNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delayNanos);
+                    }
+                    startNanos = scheduledStart;
+                    scheduledStart += intervalNanos;
+                }
+                Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+                Result result = execute(operation);
+                report.record(result.operation().optionName, System.nanoTime() - startNanos, result.success());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Result execute(Operation operation) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (operation) {
+            case UPLOAD:
+                break;
+            case DOWNLOAD_HOT:
+                return new Result(operation, download(hotFileIds.get(random.nextInt(hotFileIds.size()))));
+            case DOWNLOAD_COLD:
+                return new Result(operation, download(coldFileIds.get(random.nextInt(coldFileIds.size()))));
+            case LIST_DEEP:
+                long lastPage = Math.max(0, (publicFileCount.get() - 1) / pageSize);
+                return new Result(operation, listPublicFiles(lastPage - random.nextLong(Math.min(5, lastPage + 1))));
+            case DELETE:
+                UploadedFile file = deletableFiles.poll();
+                if (file != null) {
+                    return new Result(operation, delete(file));
+                }
+                // nothing uploaded yet which could be deleted
+                break;
+        }
+        UploadedFile uploadedFile = upload(uploadSizes[random.nextInt(uploadSizes.length)], true);
+        if (uploadedFile != null) {
+            deletableFiles.add(uploadedFile);
+        }
+        return new Result(Operation.UPLOAD, uploadedFile != null);
+    }
+
+    /**
+     * Multipart upload, the content starts with a unique counter so it is never rejected as a duplicate
+     *
+     * @return the uploaded file, null if the upload failed
+     */
+    private UploadedFile upload(int size, boolean isPublic) {
+        long counter = fileCounter.incrementAndGet();
+        String user = "loadtest-user-" + counter % USER_COUNT;
+        String filename = "file-" + counter + ".bin";
+        byte[] uniquePrefix = ByteBuffer.allocate(Long.BYTES).putLong(counter).array();
+        int prefixLength = Math.min(size, uniquePrefix.length);
+
+        byte[] partHeader = ("--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] partFooter = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(uri("/files/upload?user=" + user +
+                        "&visibility=" + (isPublic ? "PUBLIC" : "PRIVATE") + "&tags=loadtest"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofByteArray(partHeader),
+                        HttpRequest.BodyPublishers.ofByteArray(uniquePrefix, 0, prefixLength),
+                        HttpRequest.BodyPublishers.ofByteArray(content, 0, size - prefixLength),
+                        HttpRequest.BodyPublishers.ofByteArray(partFooter)))
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Matcher fileId = FILE_ID.matcher(response.body());
+            if (response.statusCode() != 200 || !fileId.find()) {
+                return null;
+            }
+            if (isPublic) {
+                publicFileCount.incrementAndGet();
+            }
+            return new UploadedFile(user, filename, fileId.group(1), isPublic);
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private boolean download(String fileId) throws InterruptedException {
+        return send(HttpRequest.newBuilder(uri("/files/" + fileId + "/download")).build());
+    }
+
+    private boolean listPublicFiles(long page) throws InterruptedException {
+        return send(HttpRequest.newBuilder(uri("/files/public?page=" + page + "&size=" + pageSize)).build());
+    }
+
+    private boolean delete(UploadedFile file) throws InterruptedException {
+        boolean deleted = send(HttpRequest.newBuilder(uri("/files/delete?user=" + file.user() +
+                        "&filename=" + URLEncoder.encode(file.filename(), StandardCharsets.UTF_8)))
+                .DELETE()
+                .build());
+        if (deleted && file.isPublic()) {
+            publicFileCount.decrementAndGet();
+        }
+        return deleted;
+    }
+
+    /**
+     * @return true if the response is 200, the body is read completely and discarded
+     */
+    private boolean send(HttpRequest request) throws InterruptedException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private URI uri(String path) {
+        return baseUrl.resolve(API + path);
+    }
+
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] operationAndWeight = entry.trim().split("=");
+            weights.put(Operation.of(operationAndWeight[0]), Integer.parseInt(operationAndWeight[1]));
+        }
+        return weights;
+    }
+
+    /**
+     * @param size like `64KB` or `8MB`
+     * @return the size in bytes
+     */
+    static int parseSize(String size) {
+        String normalized = size.trim().toUpperCase(Locale.ROOT);
+        if (normalized.endsWith("MB")) {
+            return Integer.parseInt(normalized.substring(0, normalized.length() - 2)) * 1024 * 1024;
+        }
+        if (normalized.endsWith("KB")) {
+            return Integer.parseInt(normalized.substring(0, normalized.length() - 2)) * 1024;
+        }
+        return Integer.parseInt(normalized.replace("B", ""));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--help")) {
+                options.put("help", "");
+            } else if (i + 1 < args.length) {
+                options.put(args[i].replaceFirst("^--", ""), args[++i]);
+            }
+        }
+        return options;
+    }
+
+    private record UploadedFile(String user, String filename, String fileId, boolean isPublic) {
+    }
+
+    private record Result(Operation operation, boolean success) {
+    }
+}
@@ -0,0 +1,246 @@
+package com.muhim.storage.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Opens many concurrent downloads which are read slowly, like mobile clients on a bad network,
+ * and reports how many of them the server answers and how long the first byte takes.
+ * While the slow downloads are open, a probe request is sent periodically to see whether
+ * other requests are still served.
+ * Run it once against the servlet stack and once against the `reactive` profile to compare them:
+ * <pre>
+ * mvn -q exec:java -Dexec.args="--url http://localhost:8080/api/storage/v1/files/{id}/download --connections 1000"
+ * </pre>
+ *
+ * @author muhim
+ */
+public class SlowClientLoadTest {
+
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024;
+
+    private final URI url;
+    private final URI probeUrl;
+    private final int connections;
+    private final int readRate;
+    private final Duration duration;
+    private final Duration firstByteTimeout;
+
+    SlowClientLoadTest(URI url, URI probeUrl, int connections, int readRate, Duration duration,
+                       Duration firstByteTimeout) {
+        this.url = url;
+        this.probeUrl = probeUrl;
+        this.connections = connections;
+        this.readRate = readRate;
+        this.duration = duration;
+        this.firstByteTimeout = firstByteTimeout;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (!options.containsKey("url")) {
+            System.err.println("Usage: SlowClientLoadTest --url <download url> [--probe-url <url>] " +
+                    "[--connections 500] [--read-rate 16384] [--duration PT60S] [--first-byte-timeout PT10S]");
+            System.exit(2);
+        }
+        URI url = URI.create(options.get("url"));
+        SlowClientLoadTest loadTest = new SlowClientLoadTest(url,
+                URI.create(options.getOrDefault("probe-url", url.toString())),
+                Integer.parseInt(options.getOrDefault("connections", "500")),
+                Integer.parseInt(options.getOrDefault("read-rate", "16384")),
+                Duration.parse(options.getOrDefault("duration", "PT60S")),
+                Duration.parse(options.getOrDefault("first-byte-timeout", "PT10S")));
+        loadTest.run().print(System.out);
+    }
+
+    Report run() throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(connections + 1);
+        CountDownLatch started = new CountDownLatch(connections);
+        AtomicBoolean running = new AtomicBoolean(true);
+        long deadline = System.nanoTime() + duration.toNanos();
+        try {
+            List<Future<ClientResult>> results = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                results.add(clients.submit(() -> {
+                    started.countDown();
+                    return slowDownload(deadline);
+                }));
+            }
+            started.await();
+            Future<List<Long>> probes = clients.submit(() -> probe(running));
+
+            Report report = new Report(connections);
+            for (Future<ClientResult> result : results) {
+                report.add(getResult(result));
+            }
+            running.set(false);
+            report.probeLatencies.addAll(getResult(probes));
+            return report;
+        } finally {
+            running.set(false);
+            clients.shutdownNow();
+            clients.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Reads the response at `readRate` bytes per second until it ends or the deadline is reached
+     */
+    private ClientResult slowDownload(long deadline) {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            // a small receive window makes the server wait for the client instead of buffering the response
+            socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+            socket.connect(address(url), (int) firstByteTimeout.toMillis());
+            socket.setSoTimeout((int) firstByteTimeout.toMillis());
+            sendGet(socket.getOutputStream(), url);
+
+            InputStream inputStream = socket.getInputStream();
+            byte[] buffer = new byte[Math.max(1, Math.min(readRate / 10, RECEIVE_BUFFER_SIZE))];
+            int bytesRead = inputStream.read(buffer);
+            if (bytesRead < 0) {
+                return ClientResult.failed("closed");
+            }
+            long firstByteNanos = System.nanoTime() - start;
+            String statusLine = new String(buffer, 0, bytesRead, StandardCharsets.ISO_8859_1).split("\r\n", 2)[0];
+            long totalBytes = bytesRead;
+            while (System.nanoTime() < deadline && (bytesRead = inputStream.read(buffer)) >= 0) {
+                totalBytes += bytesRead;
+                Thread.sleep(bytesRead * 1000L / readRate);
+            }
+            return statusLine.startsWith("HTTP/1.1 200") ? ClientResult.served(firstByteNanos, totalBytes) :
+                    ClientResult.failed(statusLine);
+        } catch (SocketTimeoutException e) {
+            return ClientResult.failed("timeout");
+        } catch (IOException e) {
+            return ClientResult.failed("io");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ClientResult.failed("interrupted");
+        }
+    }
+
+    /**
+     * Time to the first byte of a fresh request, sent twice a second while the slow downloads are open
+     */
+    private List<Long> probe(AtomicBoolean running) throws InterruptedException {
+        List<Long> latencies = new ArrayList<>();
+        while (running.get()) {
+            long start = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(address(probeUrl), (int) firstByteTimeout.toMillis());
+                socket.setSoTimeout((int) firstByteTimeout.toMillis());
+                sendGet(socket.getOutputStream(), probeUrl);
+                if (socket.getInputStream().read() >= 0) {
+                    latencies.add(System.nanoTime() - start);
+                }
+            } catch (IOException e) {
+                latencies.add(-1L);
+            }
+            Thread.sleep(500);
+        }
+        return latencies;
+    }
+
+    private static void sendGet(OutputStream outputStream, URI uri) throws IOException {
+        String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+        outputStream.write(("GET " + path + " HTTP/1.1\r\n" +
+                "Host: " + uri.getHost() + "\r\n" +
+                "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        outputStream.flush();
+    }
+
+    private static InetSocketAddress address(URI uri) {
+        return new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 80 : uri.getPort());
+    }
+
+    private static <T> T getResult(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        return options;
+    }
+
+    record ClientResult(boolean served, long firstByteNanos, long totalBytes, String failure) {
+        static ClientResult served(long firstByteNanos, long totalBytes) {
+            return new ClientResult(true, firstByteNanos, totalBytes, null);
+        }
+
+        static ClientResult failed(String failure) {
+            return new ClientResult(false, -1, 0, failure);
+        }
+    }
+
+    static class Report {
+        private final int connections;
+        private final List<Long> firstByteLatencies = new ArrayList<>();
+        private final List<Long> probeLatencies = new ArrayList<>();
+        private final Map<String, Integer> failures = new HashMap<>();
+        private long totalBytes;
+
+        Report(int connections) {
+            this.connections = connections;
+        }
+
+        void add(ClientResult result) {
+            if (result.served()) {
+                firstByteLatencies.add(result.firstByteNanos());
+                totalBytes += result.totalBytes();
+            } else {
+                failures.merge(result.failure(), 1, Integer::sum);
+            }
+        }
+
+        void print(PrintStream out) {
+            List<Long> probeSuccesses = probeLatencies.stream().filter(latency -> latency >= 0).toList();
+            out.printf("connections: %d, served: %d, failed: %s%n", connections, firstByteLatencies.size(), failures);
+            out.printf("time to first byte ms: %s%n", percentiles(firstByteLatencies));
+            out.printf("probe requests: %d, answered: %d, time to first byte ms: %s%n", probeLatencies.size(),
+                    probeSuccesses.size(), percentiles(probeSuccesses));
+            out.printf("bytes read: %d%n", totalBytes);
+        }
+
+        private static String percentiles(List<Long> latencies) {
+            if (latencies.isEmpty()) {
+                return "-";
+            }
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return String.format("p50 %.1f, p99 %.1f, max %.1f",
+                    percentile(sorted, 0.5), percentile(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6);
+        }
+
+        private static double percentile(List<Long> sorted, double percentile) {
+            return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1) / 1e6;
+        }
+    }
+}